@@ -23,6 +23,7 @@ package com.littlesaints.protean.functions.maths;
 import com.littlesaints.protean.functions.ToIntIntBiFunction;
 
 import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Factory of functions performing Math operations.
@@ -54,4 +55,33 @@ public interface Mathematician {
 	 */
 	IntPredicate isPowerOfTwo = n -> (n & (n - 1)) == 0;
 
+	/**
+	 * <pre>
+	 * A function to spread the bits of a hash code, so that both it's lower and higher bits depend on all the input bits.
+	 * It's the finalizer of MurmurHash3 and is useful to reduce the collisions of poor hash codes, before reducing them to a range.
+	 * </pre>
+	 * @param h the hash code
+	 * @return the mixed hash code
+	 */
+	IntUnaryOperator mixHash = h -> {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		return h ^ (h >>> 16);
+	};
+
+	/**
+	 * <pre>
+	 * A function to map a (well-mixed) hash code to the range [0, n), using a multiplication and a shift instead of the '%' operator.
+	 * It's the alternative to {@link #moduloForPowerOfTwo}, when n is not a power of 2.
+	 *
+	 * Unlike a modulo, it depends on the higher bits of the hash code, hence the hash code should be mixed e.g. using {@link #mixHash}.
+	 * </pre>
+	 * @param hash the hash code
+	 * @param n the size of the range
+	 * @return a value in the range [0, n)
+	 */
+	ToIntIntBiFunction reduceToRange = (hash, n) -> (int) (((hash & 0xffffffffL) * n) >>> 32);
+
 }
@@ -0,0 +1,327 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <pre>
+ * A policy to handle an input for a fork, whose exchange is full i.e. when the fork is slower than the producer.
+ *
+ * With a bounded exchange, a slow fork would otherwise block the producer and hence, every other fork.
+ * A policy is configured per fork, using {@link ForkJoin#forkWithBackpressure(java.util.function.Predicate, Consumer, Backpressure)}.
+ *
+ * - {@link #block()}: wait for space. This is the default behaviour of a fork.
+ * - {@link #block(long, TimeUnit)}: wait for space up to a timeout, after which the input is dropped.
+ * - {@link #dropNewest()}: drop the input.
+ * - {@link #dropOldest()}: drop the oldest input in the exchange, to make space.
+ * - {@link #sample(int)}: drop all but every n-th input, which waits for space.
+ * - {@link #spill(Path, Function)}: append the input to a local file, which can be read using {@link #readSpilled(Path, Function)}.
+ *
+ * Once the policy is closed, i.e. the fork is closed or it's stream processor failed, the inputs are dropped instead of waiting for space.
+ * A producer waiting for space also gives up, dropping the input, if it's interrupted.
+ *
+ * The number of dropped and spilled inputs are available via {@link #getDropped()} and {@link #getSpilled()}.
+ * The counters are striped, so they're cheap to update from concurrent producers.
+ *
+ * Usage:
+ * {@code
+ *     final Backpressure<Event> auditBackpressure = Backpressure.dropOldest();
+ *     ForkJoin.<Event>ofRingBuffer(1024)
+ *         .forkWithBackpressure(Event::isAudit, stream -> stream.forEach(auditor), auditBackpressure)
+ *         .fork(stream -> stream.forEach(processor));
+ *
+ *     log.info("Dropped audit events: {}", auditBackpressure.getDropped());
+ * }
+ * </pre>
+ *
+ * @param <T> the type of inputs
+ * @author Varun Anand
+ * @see BoundedExchange
+ * @since 1.2.4
+ */
+@Log4j2
+public class Backpressure<T> implements AutoCloseable {
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder spilled = new LongAdder();
+
+    private final BiFunction<Backpressure<T>, BoundedExchange<T>, Consumer<T>> writerProvider;
+
+    private final AutoCloseable resource;
+
+    private volatile boolean isClosed;
+
+    private Backpressure(BiFunction<Backpressure<T>, BoundedExchange<T>, Consumer<T>> writerProvider, AutoCloseable resource) {
+        this.writerProvider = writerProvider;
+        this.resource = resource;
+    }
+
+    private Backpressure(BiFunction<Backpressure<T>, BoundedExchange<T>, Consumer<T>> writerProvider) {
+        this(writerProvider, () -> {});
+    }
+
+    /**
+     * Wait for space in the exchange.
+     */
+    public static <T> Backpressure<T> block() {
+        return new Backpressure<>((bp, q) -> t -> {
+            if (!put(bp, q, t)) {
+                bp.dropped.increment();
+            }
+        });
+    }
+
+    /**
+     * Wait for space in the exchange up to the given timeout, after which the input is dropped.
+     */
+    public static <T> Backpressure<T> block(long timeout, TimeUnit unit) {
+        return new Backpressure<>((bp, q) -> t -> {
+            if (!q.offer(t, timeout, unit)) {
+                bp.dropped.increment();
+            }
+        });
+    }
+
+    /**
+     * Drop the input, if the exchange is full.
+     */
+    public static <T> Backpressure<T> dropNewest() {
+        return new Backpressure<>((bp, q) -> t -> {
+            if (!q.offer(t)) {
+                bp.dropped.increment();
+            }
+        });
+    }
+
+    /**
+     * <pre>
+     * Drop the oldest inputs in the exchange, to make space for the input.
+     * The end-of-stream marker of a closing fork isn't dropped, but the input is, as the fork's stream ends before it anyway.
+     * </pre>
+     */
+    public static <T> Backpressure<T> dropOldest() {
+        return new Backpressure<>((bp, q) -> t -> {
+            while (!q.offer(t)) {
+                final T oldest = q.poll();
+                if (oldest == ForkJoin.END_OF_STREAM) {
+                    // put back, as the last input the fork reads.
+                    put(bp, q, oldest);
+                    bp.dropped.increment();
+                    return;
+                }
+                if (oldest != null) {
+                    bp.dropped.increment();
+                }
+            }
+        });
+    }
+
+    /**
+     * While the exchange is full, drop all but every n-th input, which waits for space.
+     *
+     * @param n the sampling interval.
+     */
+    public static <T> Backpressure<T> sample(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be >= 1 !!");
+        }
+        return new Backpressure<>((bp, q) -> {
+            final AtomicLong overflows = new AtomicLong();
+            return t -> {
+                if (!q.offer(t)) {
+                    if (overflows.incrementAndGet() % n != 0 || !put(bp, q, t)) {
+                        bp.dropped.increment();
+                    }
+                }
+            };
+        });
+    }
+
+    /**
+     * <pre>
+     * Append the input to a local file, if the exchange is full.
+     * Every input is written as it's length followed by it's serialized bytes. The file is closed upon {@link #close()}.
+     * An input that can't be written to the file, is dropped.
+     * </pre>
+     *
+     * @param file the file to append to. It's created, if it doesn't exist.
+     * @param serializer the function to serialize an input.
+     * @see #readSpilled(Path, Function)
+     */
+    public static <T> Backpressure<T> spill(Path file, Function<T, byte[]> serializer) {
+        final Spill spill = new Spill(file);
+        return new Backpressure<>((bp, q) -> t -> {
+            if (!q.offer(t)) {
+                if (spill.append(serializer.apply(t))) {
+                    bp.spilled.increment();
+                } else {
+                    bp.dropped.increment();
+                }
+            }
+        }, spill);
+    }
+
+    /**
+     * Read the inputs spilled by {@link #spill(Path, Function)}.
+     *
+     * @param file the spill file.
+     * @param deserializer the function to deserialize an input.
+     * @return a stream of the inputs, which should be closed to close the file.
+     * @throws IOException if the file can't be opened.
+     */
+    public static <T> Stream<T> readSpilled(Path file, Function<byte[], T> deserializer) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        final Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                final byte[] bytes;
+                try {
+                    bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    return false;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                action.accept(deserializer.apply(bytes));
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.warn("Error closing the spill file: {}", file, e);
+            }
+        });
+    }
+
+    /**
+     * @return the number of inputs dropped.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the number of inputs spilled to a file.
+     */
+    public long getSpilled() {
+        return spilled.sum();
+    }
+
+    Consumer<T> writerOf(BoundedExchange<T> exchange) {
+        final Consumer<T> writer = writerProvider.apply(this, exchange);
+        return t -> {
+            if (isClosed) {
+                dropped.increment();
+            } else {
+                writer.accept(t);
+            }
+        };
+    }
+
+    /**
+     * Close the policy, after which the inputs are dropped.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        try {
+            resource.close();
+        } catch (Exception e) {
+            log.warn("Error closing the backpressure policy.", e);
+        }
+    }
+
+    /**
+     * Wait for space in the exchange, unless the policy is closed or the thread is interrupted.
+     *
+     * @return true, if the input was inserted or false, if the wait was given up.
+     */
+    private static <T> boolean put(Backpressure<T> bp, BoundedExchange<T> exchange, T t) {
+        for (int tries = 0; !exchange.offer(t); ) {
+            if (bp.isClosed || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            tries = WaitStrategy.DEFAULT.idle(tries);
+        }
+        return true;
+    }
+
+    private static final class Spill implements AutoCloseable {
+
+        private final Path file;
+
+        private FileChannel channel;
+
+        private Spill(Path file) {
+            this.file = file;
+        }
+
+        private synchronized boolean append(byte[] bytes) {
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+                buffer.putInt(bytes.length).put(bytes).flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                return true;
+            } catch (IOException e) {
+                log.warn("Error spilling to file: {}", file, e);
+                return false;
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * The non-blocking operations of an exchange, that a {@link Backpressure} policy needs to handle a full exchange.
+ *
+ * {@link RingBuffer} implements it and any {@link BlockingQueue} can be adapted using {@link #of(BlockingQueue)}.
+ * A custom exchange of a {@link ForkJoin} can implement it, to support {@link Backpressure} policies.
+ * </pre>
+ *
+ * @param <T> the type of elements
+ * @author Varun Anand
+ * @see Backpressure
+ * @since 1.2.4
+ */
+public interface BoundedExchange<T> {
+
+    /**
+     * Insert an element, if there's space.
+     *
+     * @param t the element
+     * @return true, if the element was inserted or false, if the exchange is full.
+     */
+    boolean offer(T t);
+
+    /**
+     * Remove the oldest element, if any.
+     *
+     * @return the element or {@code null}, if the exchange is empty.
+     */
+    T poll();
+
+    /**
+     * Insert an element, waiting up to the given timeout for space, if the exchange is full.
+     *
+     * @param t the element
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the timeout.
+     * @return true, if the element was inserted or false, if the exchange remained full.
+     */
+    default boolean offer(T t, long timeout, TimeUnit unit) {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int tries = 0; !offer(t); ) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            tries = WaitStrategy.DEFAULT.idle(tries);
+        }
+        return true;
+    }
+
+    /**
+     * Remove the available elements, up to the given maximum, into the given collection.
+     *
+     * @param collection the collection to add the elements to.
+     * @param maxElements the maximum number of elements to remove.
+     * @return the number of elements removed.
+     */
+    default int drainTo(Collection<? super T> collection, int maxElements) {
+        int count = 0;
+        T t;
+        while (count < maxElements && (t = poll()) != null) {
+            collection.add(t);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Adapt a {@link BlockingQueue}.
+     *
+     * @param queue the queue
+     * @param <T> the type of elements
+     * @return the adapted exchange
+     */
+    static <T> BoundedExchange<T> of(BlockingQueue<T> queue) {
+        return new BoundedExchange<T>() {
+            @Override
+            public boolean offer(T t) {
+                return queue.offer(t);
+            }
+
+            @Override
+            public T poll() {
+                return queue.poll();
+            }
+
+            @Override
+            public int drainTo(Collection<? super T> collection, int maxElements) {
+                return queue.drainTo(collection, maxElements);
+            }
+
+            @Override
+            public boolean offer(T t, long timeout, TimeUnit unit) {
+                try {
+                    return queue.offer(t, timeout, unit);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        };
+    }
+}
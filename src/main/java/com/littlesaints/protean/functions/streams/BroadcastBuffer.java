@@ -0,0 +1,378 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import com.littlesaints.protean.functions.maths.Mathematician;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * <pre>
+ * A bounded, lock-free exchange that broadcasts every element to all of it's subscribers, from a single preallocated array.
+ *
+ * Every subscriber reads the same slots using it's own {@link Cursor}, so publishing an element costs a single write, irrespective of the number of subscribers.
+ * The producers wait on the slowest subscriber, once the buffer is full.
+ * A subscriber only receives elements published after it subscribed.
+ *
+ * It's used by {@link ForkJoin#broadcast(int)}, where the forks evaluate their predicates on their own threads, instead of the producer.
+ *
+ * Note:
+ * - Slots are not cleared upon reading, so the last 'capacity' elements remain reachable until overwritten.
+ * - {@code null} elements are not permitted.
+ * </pre>
+ *
+ * @param <T> the type of elements
+ * @author Varun Anand
+ * @see ForkJoin#broadcast(int)
+ * @since 1.2.4
+ */
+public class BroadcastBuffer<T> {
+
+    private static final Sequence[] NO_CURSORS = new Sequence[0];
+
+    private final int capacity;
+
+    private final WaitStrategy waitStrategy;
+
+    private final Object[] elements;
+
+    /**
+     * The sequence published in each slot.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * The next sequence to be claimed by a producer.
+     */
+    private final Sequence next = new Sequence(0);
+
+    /**
+     * The last known sequence of the slowest subscriber, to avoid scanning all cursors on every publish.
+     */
+    private final Sequence gatingCache = new Sequence(0);
+
+    private volatile Sequence[] cursors = NO_CURSORS;
+
+    private BroadcastBuffer(int capacity, WaitStrategy waitStrategy) {
+        RingBuffer.validateCapacity(capacity);
+        this.capacity = capacity;
+        this.waitStrategy = Objects.requireNonNull(waitStrategy);
+        this.elements = new Object[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            // as if the round before the first was published, see publish().
+            published.lazySet(i, i - capacity);
+        }
+    }
+
+    /**
+     * Create a BroadcastBuffer.
+     *
+     * @param capacity the number of slots, which must be a power of 2.
+     * @param <T> the type of elements
+     * @return a BroadcastBuffer instance
+     */
+    public static <T> BroadcastBuffer<T> of(int capacity) {
+        return new BroadcastBuffer<>(capacity, WaitStrategy.DEFAULT);
+    }
+
+    /**
+     * Create a BroadcastBuffer.
+     *
+     * @param capacity the number of slots, which must be a power of 2.
+     * @param waitStrategy the strategy to wait for the slowest subscriber in {@link #put(Object)} or an element in {@link Cursor#take()}.
+     * @param <T> the type of elements
+     * @return a BroadcastBuffer instance
+     */
+    public static <T> BroadcastBuffer<T> of(int capacity, WaitStrategy waitStrategy) {
+        return new BroadcastBuffer<>(capacity, waitStrategy);
+    }
+
+    /**
+     * Publish an element to all subscribers, waiting for the slowest subscriber if the buffer is full.
+     *
+     * @param t the element
+     */
+    public void put(T t) {
+        Objects.requireNonNull(t);
+        publish(claim(1), t);
+    }
+
+    /**
+     * Publish an element to all subscribers, waiting up to the given timeout for the slowest subscriber, if the buffer is full.
+     *
+     * @param t the element
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the timeout.
+     * @return true, if the element was published or false, if the buffer remained full.
+     */
+    public boolean offer(T t, long timeout, TimeUnit unit) {
+        Objects.requireNonNull(t);
+        final long sequence = claim(System.nanoTime() + unit.toNanos(timeout));
+        if (sequence < 0) {
+            return false;
+        }
+        publish(sequence, t);
+        return true;
+    }
+
+    /**
+     * Publish the elements to all subscribers, claiming the slots for up to 'capacity' elements at once.
+     *
+     * @param ts the elements
+     */
+    public void putAll(Collection<? extends T> ts) {
+        ts.forEach(Objects::requireNonNull);
+        final Iterator<? extends T> iterator = ts.iterator();
+        for (int remaining = ts.size(); remaining > 0; ) {
+            final int n = Math.min(remaining, capacity);
+            final long first = claim(n);
+            for (long sequence = first; sequence < first + n; sequence++) {
+                publish(sequence, iterator.next());
+            }
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Claim the next 'n' sequences, waiting for the slowest subscriber if the buffer is full.
+     *
+     * @return the first claimed sequence.
+     */
+    private long claim(int n) {
+        final long sequence = next.getAndAdd(n);
+        final long wrapPoint = sequence + n - 1 - capacity;
+        if (wrapPoint >= gatingCache.get()) {
+            Sequence[] scanned;
+            long minimum;
+            for (int tries = 0; wrapPoint >= (minimum = minimumSequence(scanned = cursors, sequence)); ) {
+                tries = waitStrategy.idle(tries);
+            }
+            cacheGatingSequence(minimum, scanned, sequence);
+        }
+        return sequence;
+    }
+
+    /**
+     * <pre>
+     * Claim the next sequence, waiting up to the deadline for the slowest subscriber if the buffer is full.
+     * Unlike {@link #claim(int)}, the sequence is claimed only once it's slot is free, so that a producer timing out doesn't leave a gap.
+     * </pre>
+     *
+     * @return the claimed sequence or -1, if the buffer remained full until the deadline.
+     */
+    private long claim(long deadline) {
+        for (int tries = 0; ; ) {
+            final long sequence = next.get();
+            final long wrapPoint = sequence - capacity;
+            if (wrapPoint >= gatingCache.get()) {
+                final Sequence[] scanned = cursors;
+                final long minimum = minimumSequence(scanned, sequence);
+                if (wrapPoint >= minimum) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        return -1;
+                    }
+                    tries = waitStrategy.idle(tries);
+                    continue;
+                }
+                cacheGatingSequence(minimum, scanned, sequence);
+            }
+            if (next.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    private void cacheGatingSequence(long minimum, Sequence[] scanned, long sequence) {
+        gatingCache.set(minimum);
+        // a subscriber that joined during the scan may be behind the minimum, so the cache is lowered again.
+        if (cursors != scanned) {
+            lowerGatingCache(minimumSequence(cursors, sequence));
+        }
+    }
+
+    /**
+     * Lower the cached sequence of the slowest subscriber to the given sequence, unless it's lower already.
+     */
+    private void lowerGatingCache(long sequence) {
+        long cached;
+        while (sequence < (cached = gatingCache.get()) && !gatingCache.compareAndSet(cached, sequence)) {
+            // raised or lowered concurrently, so retry.
+        }
+    }
+
+    /**
+     * <pre>
+     * Publish an element in the slot of a claimed sequence, after the element of the previous round of the slot.
+     *
+     * The producers wait for the subscribers before claiming a slot and the subscribers never pass an unpublished slot,
+     * so the previous round is usually published already.
+     * But a producer can claim it's slot without waiting, if there's no subscriber yet or the only one subscribed after it's claim,
+     * while the producer of the previous round is still writing to it. Waiting for it keeps that older element from overwriting this one.
+     * </pre>
+     */
+    private void publish(long sequence, T t) {
+        final int index = index(sequence);
+        for (int tries = 0; published.get(index) != sequence - capacity; ) {
+            tries = waitStrategy.idle(tries);
+        }
+        elements[index] = t;
+        published.lazySet(index, sequence);
+    }
+
+    /**
+     * Subscribe to the elements published hereafter.
+     *
+     * @return a new cursor, which should be closed once not needed, to stop the producers from waiting on it.
+     */
+    public synchronized Cursor subscribe() {
+        final Sequence sequence = new Sequence(next.get());
+        final Sequence[] current = cursors;
+        final Sequence[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = sequence;
+        cursors = updated;
+        // after publishing the cursor, so that a producer caching a minimum of the old cursors sees them change and re-scans.
+        lowerGatingCache(sequence.get());
+        // the producers that claimed a sequence before the cursor and the cache were published may not wait for it, so it starts after them.
+        // Every sequence claimed hereafter sees the cursor, on scanning or via the lowered cache, so it's slot isn't overwritten until read.
+        sequence.set(next.get());
+        return new Cursor(sequence);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int getSubscriberCount() {
+        return cursors.length;
+    }
+
+    private synchronized void unsubscribe(Sequence sequence) {
+        final Sequence[] current = cursors;
+        final Sequence[] updated = Arrays.stream(current).filter(s -> s != sequence).toArray(Sequence[]::new);
+        cursors = updated.length == 0 ? NO_CURSORS : updated;
+    }
+
+    private static long minimumSequence(Sequence[] cursors, long defaultValue) {
+        long minimum = defaultValue;
+        for (Sequence cursor : cursors) {
+            minimum = Math.min(minimum, cursor.get());
+        }
+        return minimum;
+    }
+
+    private int index(long sequence) {
+        return Mathematician.moduloForPowerOfTwo.applyAsInt((int) sequence, capacity);
+    }
+
+    /**
+     * A subscriber's position in a {@link BroadcastBuffer}. It's a {@link Supplier} that waits for the next element.
+     * Instances of this class are NOT thread-safe i.e. a cursor should be read by a single thread.
+     */
+    public class Cursor implements Supplier<T>, AutoCloseable {
+
+        private final Sequence sequence;
+
+        private Cursor(Sequence sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Read the next element, if published.
+         *
+         * @return the element or {@code null}, if there's none.
+         */
+        @SuppressWarnings("unchecked")
+        public T poll() {
+            long current = sequence.get();
+            while (true) {
+                final int index = index(current);
+                final long available = published.get(index);
+                if (available < current) {
+                    return null;
+                }
+                final T t = (T) elements[index];
+                if (available == current && published.get(index) == current) {
+                    sequence.lazySet(current + 1);
+                    return t;
+                }
+                // overwritten, which the producers waiting for this cursor prevent, but it's skipped rather than returned out of order.
+                sequence.lazySet(++current);
+            }
+        }
+
+        /**
+         * Read the published elements, up to the given maximum, into the given collection.
+         *
+         * @param collection the collection to add the elements to.
+         * @param maxElements the maximum number of elements to read.
+         * @return the number of elements read.
+         */
+        public int drainTo(Collection<? super T> collection, int maxElements) {
+            int count = 0;
+            T t;
+            while (count < maxElements && (t = poll()) != null) {
+                collection.add(t);
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Read the next element, waiting for one to be published.
+         *
+         * @return the element or {@code null}, if the thread is interrupted while waiting. The interrupt status is retained.
+         */
+        public T take() {
+            T t;
+            for (int tries = 0; (t = poll()) == null; ) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+                tries = waitStrategy.idle(tries);
+            }
+            return t;
+        }
+
+        @Override
+        public T get() {
+            return take();
+        }
+
+        /**
+         * @return the number of published elements, not read yet.
+         */
+        public long lag() {
+            return Math.max(0, next.get() - sequence.get());
+        }
+
+        @Override
+        public void close() {
+            unsubscribe(sequence);
+        }
+    }
+}
@@ -20,19 +20,30 @@
 
 package com.littlesaints.protean.functions.streams;
 
+import com.littlesaints.protean.functions.trial.Trial;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
 /**
@@ -97,6 +108,73 @@ import java.util.stream.Stream;
  *
  *   IntStream.range(- 10, 0).boxed().forEach(forkJoin);
  *   IntStream.range(0, 10).boxed().forEach(forkJoin);
+ *
+ * Threads:
+ *
+ *   Every fork runs it's stream on a thread of the ForkJoin's {@link ExecutorService}, which waits on the fork's exchange for the next input.
+ *   By default, a cached thread pool is created and shut down upon {@link #close()}.
+ *   The application can instead supply a {@link ThreadFactory}, e.g. {@link ThreadFactories#virtual(String)} to run the forks on virtual threads on JDK 21+,
+ *   which are then run by a thread-per-task executor instead of a pool, or it's own {@link ExecutorService}, whose lifecycle remains with the application.
+ *   A fork blocks on it's empty exchange by default. {@link #waitStrategy(WaitStrategy)} makes it poll instead, e.g. spin for a low latency hand-off.
+ *
+ *   Usage:
+ *
+ *   {@code
+ *   ForkJoin<Integer, BlockingQueue<Integer>> forkJoin = ForkJoin. < Integer > newInstance (ThreadFactories.virtual("fork-"))
+ *          .fork(stream -> stream.map(Objects::toString).map("always true:: "::concat).forEach(System.out::println));
+ *   }
+ *
+ * Exchanges:
+ *
+ *   By default, every fork has an unbounded {@link LinkedTransferQueue}, to which the matching inputs are written.
+ *   - {@link #of(Supplier)} accepts any other {@link BlockingQueue}.
+ *   - {@link #ofRingBuffer(int)} uses a bounded, lock-free {@link RingBuffer} per fork.
+ *   - {@link #broadcast(int)} publishes every input once in a {@link BroadcastBuffer} shared by all forks, which evaluate their predicates themselves.
+ *   - {@link #ofMappedExchange(Path, MappedExchange.Codec)} appends the inputs to memory-mapped files, which survive a restart.
+ *   - {@link #of(Supplier, Function, Function)} accepts any custom exchange.
+ *
+ *   A fork can handle a full exchange using a {@link Backpressure} policy, instead of blocking the producer,
+ *   if it's exchange is a {@link BlockingQueue} or a {@link BoundedExchange}, e.g. {@link RingBuffer}.
+ *
+ * Adding and removing forks:
+ *
+ *   Forks can be added and removed while inputs are being accepted, e.g. to scale the consumers with the load.
+ *   The routing table is immutable and swapped atomically upon every change, so {@link #accept(Object)} reads it without locking.
+ *   {@link #addFork(Predicate, Consumer)} and it's variants return a {@link Fork}, whose {@link Fork#remove(long, TimeUnit)} drains and closes it.
+ *
+ *   Usage:
+ *
+ *   {@code
+ *   ForkJoin<Order, BlockingQueue<Order>>.Fork workers = forkJoin.addWorkers(4, order -> true, stream -> stream.forEach(sink));
+ *   ...
+ *   workers.remove(30, TimeUnit.SECONDS);
+ *   }
+ *
+ * Failures:
+ *
+ *   If the stream processor of a fork throws, the fork stops reading it's exchange, while the inputs routed to it pile up.
+ *   {@link #supervision(Supervision)} configures a policy to restart the processor with a backoff, dead-letter the failing input or remove the fork.
+ *
+ * Closing:
+ *
+ *   {@link #close()} stops the forks immediately, discarding the inputs still in their exchanges.
+ *   {@link #closeAndAwait(long, TimeUnit)} instead writes an end-of-stream marker to every exchange, after the inputs already accepted.
+ *   Every fork's stream ends upon reading it, so it's terminal operation completes normally, after processing all the inputs.
+ *   Either way, no more inputs are accepted and the producers should be stopped first, as an input accepted concurrently may be discarded.
+ *
+ *   Usage:
+ *
+ *   {@code
+ *   producer.forEach(forkJoin);
+ *   if (!forkJoin.closeAndAwait(30, TimeUnit.SECONDS)) {
+ *       log.warn("The forks didn't complete in time.");
+ *   }
+ *   }
+ *
+ * Metrics:
+ *
+ *   {@link #recordMetrics()} records the {@link ForkMetrics} of every fork, e.g. it's queue depth and the share of time it spends waiting for inputs.
+ *   They're polled using {@link #metrics()}, or published over JMX by {@link #registerMBean()}.
  * </pre>
  *
  * @author Varun Anand
@@ -105,10 +183,28 @@ import java.util.stream.Stream;
 @Log4j2
 public class ForkJoin<T, Q> implements Consumer<T>, AutoCloseable {
 
+    static final Object END_OF_STREAM = new Object();
+
+    /**
+     * The maximum number of inputs read at once by a fork, from an exchange that can be drained.
+     */
+    private static final int MAX_BATCH_SIZE = 256;
+
+    /**
+     * The ids of the ForkJoin instances in this process, to tell apart the MBeans of the instances sharing a {@link #name}.
+     */
+    private static final AtomicInteger INSTANCE_IDS = new AtomicInteger();
+
     @Getter
     private final String name = String.valueOf(System.currentTimeMillis());
 
-    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final int instanceId = INSTANCE_IDS.getAndIncrement();
+
+    private final ExecutorService executor;
+
+    private final boolean isExecutorOwned;
+
+    private final boolean isBroadcast;
 
     private final Supplier<Q> exchangeProvider;
 
@@ -116,23 +212,81 @@ public class ForkJoin<T, Q> implements Consumer<T>, AutoCloseable {
 
     private final Function<Q, Consumer<T>> exchangeWriterProvider;
 
-    private final Map <Predicate <T>, Consumer <T>> predicates = new LinkedHashMap <>(1);
+    private volatile Router<T> router = Router.empty();
+
+    private final Collection<Fork> forks = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger forkIds = new AtomicInteger();
+
+    private volatile boolean isClosing;
 
-    private final Collection<Future<?>> forks = new ArrayList <>(2);
+    private WaitStrategy waitStrategy = WaitStrategy.blocking();
 
-    private final Collection<Stream<T>> streams = new ArrayList <>(2);
+    private boolean isRecordingMetrics;
+
+    private Supervision<T> supervision;
+
+    /**
+     * The arrivals of the inputs in the exchange shared by all forks of a broadcast.
+     */
+    private final ForkMetrics.Arrivals broadcastArrivals = new ForkMetrics.Arrivals();
+
+    /**
+     * The name of the {@link ForkJoinMXBean} registered by {@link #registerMBean()}, or null if it's not registered.
+     */
+    @Getter
+    private ObjectName mBeanName;
 
     private final Consumer <T> acceptAction;
 
+    private final Consumer <Collection<? extends T>> acceptAllAction;
+
     private ForkJoin(Supplier <Q> exchangeProvider, Function <Q, Supplier <T>> exchangeReaderProvider,
-                     Function <Q, Consumer <T>> exchangeWriterProvider) {
+                     Function <Q, Consumer <T>> exchangeWriterProvider, ExecutorService executor, boolean isExecutorOwned) {
+        this(exchangeProvider, exchangeReaderProvider, exchangeWriterProvider, executor, isExecutorOwned, false);
+    }
+
+    private ForkJoin(Supplier <Q> exchangeProvider, Function <Q, Supplier <T>> exchangeReaderProvider,
+                     Function <Q, Consumer <T>> exchangeWriterProvider, ExecutorService executor, boolean isExecutorOwned,
+                     boolean isBroadcast) {
+        this.executor = executor;
+        this.isExecutorOwned = isExecutorOwned;
+        this.isBroadcast = isBroadcast;
         this.exchangeProvider = exchangeProvider;
         this.exchangeReaderProvider = exchangeReaderProvider;
         this.exchangeWriterProvider = exchangeWriterProvider;
-        this.acceptAction = t -> predicates.entrySet().stream().sequential()
-            .filter(e -> e.getKey().test(t))
-            .map(Entry::getValue)
-            .forEach(c -> c.accept(t));
+        if (isBroadcast) {
+            final Q messageExchange = exchangeProvider.get();
+            final Consumer<T> writer = exchangeWriterProvider.apply(messageExchange);
+            this.acceptAction = t -> {
+                if (isRecordingMetrics) {
+                    broadcastArrivals.record();
+                }
+                writer.accept(t);
+            };
+            final Consumer<Collection<? extends T>> allWriter;
+            if (messageExchange instanceof BroadcastBuffer) {
+                @SuppressWarnings("unchecked")
+                final BroadcastBuffer<T> buffer = (BroadcastBuffer<T>) messageExchange;
+                allWriter = buffer::putAll;
+            } else {
+                allWriter = ts -> ts.forEach(writer);
+            }
+            this.acceptAllAction = ts -> {
+                if (isRecordingMetrics) {
+                    broadcastArrivals.record(ts.size());
+                }
+                allWriter.accept(ts);
+            };
+        } else {
+            this.acceptAction = t -> router.accept(t);
+            this.acceptAllAction = ts -> {
+                final Router<T> router = this.router;
+                for (T t : ts) {
+                    router.accept(t);
+                }
+            };
+        }
     }
 
     /**
@@ -145,6 +299,29 @@ public class ForkJoin<T, Q> implements Consumer<T>, AutoCloseable {
         return ForkJoin.of(LinkedTransferQueue::new);
     }
 
+    /**
+     * Create a ForkJoin instance, whose forks run on threads created by the given factory.
+     *
+     * @param threadFactory the factory of threads for the forks. e.g. {@link ThreadFactories#virtual(String)}.
+     * @param <T>
+     * @return a ForkJoin instance
+     */
+    public static <T> ForkJoin<T, BlockingQueue<T>> newInstance(ThreadFactory threadFactory) {
+        return ForkJoin.of(LinkedTransferQueue::new, threadFactory);
+    }
+
+    /**
+     * Create a ForkJoin instance, whose forks run on the given executor.
+     * The executor is NOT shut down upon {@link #close()}.
+     *
+     * @param executor the executor to run the forks.
+     * @param <T>
+     * @return a ForkJoin instance
+     */
+    public static <T> ForkJoin<T, BlockingQueue<T>> newInstance(ExecutorService executor) {
+        return ForkJoin.of(LinkedTransferQueue::new, executor);
+    }
+
     /**
      * Create a ForkJoin instance.
      *
@@ -154,13 +331,43 @@ public class ForkJoin<T, Q> implements Consumer<T>, AutoCloseable {
      * @return a ForkJoin instance
      */
     public static <T> ForkJoin<T, BlockingQueue<T>> of(Supplier<BlockingQueue<T>> exchangeProvider) {
+        return ForkJoin.of(exchangeProvider, Executors.newCachedThreadPool(), true);
+    }
+
+    /**
+     * Create a ForkJoin instance.
+     *
+     * @param exchangeProvider a supplier for the BlockingQueue to be used for input exchange between the source {@link Stream}
+     * and the target 'matching' {@link Stream}s of the forks.
+     * @param threadFactory the factory of threads for the forks. e.g. {@link ThreadFactories#virtual(String)}.
+     * @param <T>
+     * @return a ForkJoin instance
+     */
+    public static <T> ForkJoin<T, BlockingQueue<T>> of(Supplier<BlockingQueue<T>> exchangeProvider, ThreadFactory threadFactory) {
+        return ForkJoin.of(exchangeProvider, ThreadFactories.newExecutor(threadFactory), true);
+    }
+
+    /**
+     * Create a ForkJoin instance.
+     *
+     * @param exchangeProvider a supplier for the BlockingQueue to be used for input exchange between the source {@link Stream}
+     * and the target 'matching' {@link Stream}s of the forks.
+     * @param executor the executor to run the forks. It's NOT shut down upon {@link #close()}.
+     * @param <T>
+     * @return a ForkJoin instance
+     */
+    public static <T> ForkJoin<T, BlockingQueue<T>> of(Supplier<BlockingQueue<T>> exchangeProvider, ExecutorService executor) {
+        return ForkJoin.of(exchangeProvider, executor, false);
+    }
+
+    private static <T> ForkJoin<T, BlockingQueue<T>> of(Supplier<BlockingQueue<T>> exchangeProvider, ExecutorService executor,
+                                                        boolean isExecutorOwned) {
         final Function<BlockingQueue<T>, Supplier<T>> reader = q -> () -> {
-            while (true) {
-                try {
-                    return q.take();
-                } catch (InterruptedException e) {
-                    log.warn("Error during thread sleep.", e);
-                }
+            try {
+                return q.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
             }
         };
         final Function<BlockingQueue<T>, Consumer<T>> writer = q -> t -> {
@@ -173,12 +380,133 @@ public class ForkJoin<T, Q> implements Consumer<T>, AutoCloseable {
                 }
             }
         };
-        return ForkJoin.of(exchangeProvider, reader, writer);
+        return new ForkJoin<>(exchangeProvider, reader, writer, executor, isExecutorOwned);
     }
 
-    private static <T, Q> ForkJoin<T, Q> of(Supplier<Q> exchangeProvider, Function<Q, Supplier<T>> exchangeReaderProvider,
-                                            Function<Q, Consumer<T>> exchangeWriterProvider) {
-        return new ForkJoin<>(exchangeProvider, exchangeReaderProvider, exchangeWriterProvider);
+    /**
+     * Create a ForkJoin instance, whose forks exchange inputs through a {@link RingBuffer}.
+     * The producer waits for a free slot, when the {@link RingBuffer} of a matching fork is full.
+     *
+     * @param capacity the capacity of the {@link RingBuffer} of each fork, which must be a power of 2.
+     * @param <T>
+     * @return a ForkJoin instance
+     */
+    public static <T> ForkJoin<T, RingBuffer<T>> ofRingBuffer(int capacity) {
+        RingBuffer.validateCapacity(capacity);
+        return ForkJoin.of(() -> RingBuffer.of(capacity), q -> q::take, q -> q::put);
+    }
+
+    /**
+     * <pre>
+     * Create a ForkJoin instance, whose forks exchange inputs through a durable {@link MappedExchange} each.
+     * The exchange of a fork is in a sub-directory of the given directory, numbered in the order the forks are configured.
+     * Upon a restart, the forks resume from the inputs they hadn't processed.
+     * </pre>
+     *
+     * @param directory the parent directory of the exchanges.
+     * @param codec the codec of the inputs.
+     * @param <T>
+     * @return a ForkJoin instance
+     */
+    public static <T> ForkJoin<T, MappedExchange<T>> ofMappedExchange(Path directory, MappedExchange.Codec<T> codec) {
+        return ForkJoin.ofMappedExchange(directory, codec, MappedExchange.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Create a ForkJoin instance, whose forks exchange inputs through a durable {@link MappedExchange} each.
+     *
+     * @param segmentSize the size of a segment file of an exchange in bytes.
+     * @see #ofMappedExchange(Path, MappedExchange.Codec)
+     */
+    public static <T> ForkJoin<T, MappedExchange<T>> ofMappedExchange(Path directory, MappedExchange.Codec<T> codec, int segmentSize) {
+        return ForkJoin.of(MappedExchange.provider(directory, codec, segmentSize), MappedExchange::reader, q -> q::put);
+    }
+
+    /**
+     * <pre>
+     * Create a ForkJoin instance, whose forks read every input from a single, shared {@link BroadcastBuffer}.
+     *
+     * An input is published once, irrespective of the number of forks, and every fork evaluates it's predicate on it's own thread.
+     * This makes the cost of {@link #accept(Object)} almost independent of the number of forks, at the cost of every fork reading every input.
+     * The producer waits for the slowest fork, when the {@link BroadcastBuffer} is full.
+     *
+     * A fork only receives inputs accepted after it's configured.
+     * </pre>
+     *
+     * @param capacity the capacity of the shared {@link BroadcastBuffer}, which must be a power of 2.
+     * @param <T>
+     * @return a ForkJoin instance
+     */
+    public static <T> ForkJoin<T, BroadcastBuffer<T>> broadcast(int capacity) {
+        return ForkJoin.broadcast(capacity, Executors.newCachedThreadPool(), true);
+    }
+
+    /**
+     * Create a broadcasting ForkJoin instance, whose forks run on threads created by the given factory.
+     *
+     * @see #broadcast(int)
+     */
+    public static <T> ForkJoin<T, BroadcastBuffer<T>> broadcast(int capacity, ThreadFactory threadFactory) {
+        return ForkJoin.broadcast(capacity, ThreadFactories.newExecutor(threadFactory), true);
+    }
+
+    /**
+     * Create a broadcasting ForkJoin instance, whose forks run on the given executor.
+     * The executor is NOT shut down upon {@link #close()}.
+     *
+     * @see #broadcast(int)
+     */
+    public static <T> ForkJoin<T, BroadcastBuffer<T>> broadcast(int capacity, ExecutorService executor) {
+        return ForkJoin.broadcast(capacity, executor, false);
+    }
+
+    private static <T> ForkJoin<T, BroadcastBuffer<T>> broadcast(int capacity, ExecutorService executor, boolean isExecutorOwned) {
+        final BroadcastBuffer<T> buffer = BroadcastBuffer.of(capacity);
+        return new ForkJoin<>(() -> buffer, BroadcastBuffer::subscribe, q -> q::put, executor, isExecutorOwned, true);
+    }
+
+    /**
+     * <pre>
+     * Create a ForkJoin instance with a custom exchange between the source {@link Stream} and the target 'matching' {@link Stream}s of the forks.
+     *
+     * An exchange is created for every fork. The fork's stream reads from it and the ForkJoin writes the matching inputs to it.
+     * The reader should wait for an input, if the exchange is empty. The fork's stream ends, if the reader returns {@code null}.
+     * The exchange must pass on the end-of-stream marker written by {@link #closeAndAwait(long, TimeUnit)} as is.
+     * If the reader is {@link AutoCloseable}, it's closed along with the fork's stream.
+     * </pre>
+     *
+     * @param exchangeProvider a supplier for the exchange of a fork. e.g. {@link RingBuffer}.
+     * @param exchangeReaderProvider a function to create the reader of an exchange.
+     * @param exchangeWriterProvider a function to create the writer of an exchange.
+     * @param <T>
+     * @param <Q> the type of the exchange
+     * @return a ForkJoin instance
+     */
+    public static <T, Q> ForkJoin<T, Q> of(Supplier<Q> exchangeProvider, Function<Q, Supplier<T>> exchangeReaderProvider,
+                                           Function<Q, Consumer<T>> exchangeWriterProvider) {
+        return new ForkJoin<>(exchangeProvider, exchangeReaderProvider, exchangeWriterProvider, Executors.newCachedThreadPool(), true);
+    }
+
+    /**
+     * Create a ForkJoin instance with a custom exchange, whose forks run on threads created by the given factory.
+     *
+     * @see #of(Supplier, Function, Function)
+     */
+    public static <T, Q> ForkJoin<T, Q> of(Supplier<Q> exchangeProvider, Function<Q, Supplier<T>> exchangeReaderProvider,
+                                           Function<Q, Consumer<T>> exchangeWriterProvider, ThreadFactory threadFactory) {
+        return new ForkJoin<>(exchangeProvider, exchangeReaderProvider, exchangeWriterProvider,
+            ThreadFactories.newExecutor(threadFactory), true);
+    }
+
+    /**
+     * Create a ForkJoin instance with a custom exchange, whose forks run on the given executor.
+     * The executor is NOT shut down upon {@link #close()}.
+     *
+     * @see #of(Supplier, Function, Function)
+     */
+    public static <T, Q> ForkJoin<T, Q> of(Supplier<Q> exchangeProvider, Function<Q, Supplier<T>> exchangeReaderProvider,
+                                           Function<Q, Consumer<T>> exchangeWriterProvider, ExecutorService executor) {
+        return new ForkJoin<>(exchangeProvider, exchangeReaderProvider, exchangeWriterProvider, executor, false);
     }
 
     /**
@@ -189,14 +517,586 @@ public class ForkJoin<T, Q> implements Consumer<T>, AutoCloseable {
      * @return this ForkJoin instance
      */
     public ForkJoin<T, Q> fork(Predicate <T> predicate, Consumer <Stream <T>> streamProcessor) {
-        final Q messageExchange = exchangeProvider.get();
-        final Stream<T> stream = StreamSource.<T>builder().provider(exchangeReaderProvider.apply(messageExchange)).build().get();
-        streams.add(stream);
-        predicates.put(predicate, exchangeWriterProvider.apply(messageExchange));
-        forks.add(executor.submit(() -> streamProcessor.accept(stream)));
+        addFork(predicate, streamProcessor);
+        return this;
+    }
+
+    /**
+     * <pre>
+     * Add a match case or fork, which can be removed at runtime using {@link Fork#remove(long, TimeUnit)}.
+     *
+     * It's safe to add or remove forks while inputs are being accepted, as the routing table is swapped atomically.
+     * </pre>
+     *
+     * @param predicate the matching condition or filter.
+     * @param streamProcessor The processing on the {@link Stream} that will have the input value of the predicate matches.
+     * @return the added fork.
+     * @see #fork(Predicate, Consumer)
+     */
+    public Fork addFork(Predicate <T> predicate, Consumer <Stream <T>> streamProcessor) {
+        final Fork fork = startFork(1, false, predicate, streamProcessor, null);
+        route(router -> router.withRoute(predicate, fork.writer));
+        return fork;
+    }
+
+    /**
+     * <pre>
+     * Configure a match case or fork, with a policy to handle the inputs when it's exchange is full.
+     *
+     * The exchange must be a {@link BlockingQueue} or a {@link BoundedExchange}, e.g. {@link RingBuffer}.
+     * A {@link #broadcast(int)} ForkJoin shares one exchange among all forks, hence doesn't support a policy per fork.
+     * The policy is closed upon {@link #close()}.
+     * </pre>
+     *
+     * @param predicate the matching condition or filter.
+     * @param streamProcessor The processing on the {@link Stream} that will have the input value of the predicate matches.
+     * @param backpressure the policy to handle the inputs when the fork's exchange is full.
+     * @return this ForkJoin instance
+     */
+    public ForkJoin<T, Q> forkWithBackpressure(Predicate <T> predicate, Consumer <Stream <T>> streamProcessor, Backpressure<T> backpressure) {
+        addForkWithBackpressure(predicate, streamProcessor, backpressure);
+        return this;
+    }
+
+    /**
+     * Add a match case or fork, with a policy to handle the inputs when it's exchange is full, which can be removed at runtime.
+     *
+     * @return the added fork.
+     * @see #forkWithBackpressure(Predicate, Consumer, Backpressure)
+     * @see #addFork(Predicate, Consumer)
+     */
+    public Fork addForkWithBackpressure(Predicate <T> predicate, Consumer <Stream <T>> streamProcessor, Backpressure<T> backpressure) {
+        Objects.requireNonNull(backpressure);
+        if (isBroadcast) {
+            throw new UnsupportedOperationException("A broadcast can't apply backpressure per fork !!");
+        }
+        final Fork fork = startFork(1, false, predicate, streamProcessor, backpressure);
+        route(router -> router.withRoute(predicate, fork.writer));
+        return fork;
+    }
+
+    /**
+     * Configure a fork, with a policy to handle the inputs when it's exchange is full.
+     *
+     * @see #forkWithBackpressure(Predicate, Consumer, Backpressure)
+     */
+    public ForkJoin<T, Q> forkWithBackpressure(Consumer <Stream <T>> streamProcessor, Backpressure<T> backpressure) {
+        return forkWithBackpressure(Router.always(), streamProcessor, backpressure);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> BoundedExchange<T> boundedExchangeOf(Object messageExchange) {
+        if (messageExchange instanceof BoundedExchange) {
+            return (BoundedExchange<T>) messageExchange;
+        }
+        if (messageExchange instanceof BlockingQueue) {
+            return BoundedExchange.of((BlockingQueue<T>) messageExchange);
+        }
+        throw new UnsupportedOperationException("The exchange must be a BlockingQueue or BoundedExchange, to apply backpressure !!");
+    }
+
+    /**
+     * <pre>
+     * Configure a fork for the inputs with the given key.
+     *
+     * Instead of testing a predicate per fork, the key is extracted once per input and the matching forks are looked up.
+     * Hence, it's preferable to predicates, when there are many forks matching on the value of a property.
+     * The forks should share the same keyExtractor instance, for the key to be extracted once.
+     *
+     * Usage:
+     *
+     * {@code
+     * final Function<Order, String> country = Order::getCountry;
+     * forkJoin.fork(country, "IN", stream -> ...)
+     *     .fork(country, "GB", stream -> ...);
+     * }
+     * </pre>
+     *
+     * @param keyExtractor the function to extract the key of an input.
+     * @param key the key of the inputs for this fork.
+     * @param streamProcessor The processing on the {@link Stream} that will have the inputs with the given key.
+     * @param <K> the type of the key
+     * @return this ForkJoin instance
+     */
+    public <K> ForkJoin<T, Q> fork(Function<T, K> keyExtractor, K key, Consumer <Stream <T>> streamProcessor) {
+        addFork(keyExtractor, key, streamProcessor);
         return this;
     }
 
+    /**
+     * Add a fork for the inputs with the given key, which can be removed at runtime.
+     *
+     * @return the added fork.
+     * @see #fork(Function, Object, Consumer)
+     * @see #addFork(Predicate, Consumer)
+     */
+    public <K> Fork addFork(Function<T, K> keyExtractor, K key, Consumer <Stream <T>> streamProcessor) {
+        Objects.requireNonNull(key);
+        final Fork fork = startFork(1, false, t -> key.equals(keyExtractor.apply(t)), streamProcessor, null);
+        route(router -> router.withKeyRoute(keyExtractor, key, fork.writer));
+        return fork;
+    }
+
+    /**
+     * <pre>
+     * Configure 'n' partitioned forks, with the same processing.
+     *
+     * Every input is sent to exactly one of the forks, selected by the hash of it's key.
+     * Hence, the inputs with the same key are processed by the same fork, in the order they're accepted.
+     * It's useful to use the forks as a pool of workers, sharded by a key.
+     *
+     * The hash of the key is mixed and mapped to a fork using {@link com.littlesaints.protean.functions.maths.Mathematician#moduloForPowerOfTwo},
+     * if 'n' is a power of 2, or {@link com.littlesaints.protean.functions.maths.Mathematician#reduceToRange} otherwise.
+     *
+     * Usage:
+     *
+     * {@code
+     * forkJoin.forkPartitions(8, Order::getCustomerId, stream -> stream.forEach(this::process));
+     * }
+     * </pre>
+     *
+     * @param partitions the number of forks.
+     * @param keyExtractor the function to extract the key of an input.
+     * @param streamProcessor The processing on the {@link Stream} of each fork.
+     * @return this ForkJoin instance
+     */
+    public ForkJoin<T, Q> forkPartitions(int partitions, Function<T, ?> keyExtractor, Consumer <Stream <T>> streamProcessor) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions must be >= 1 !!");
+        }
+        final Consumer<T>[] writers = Router.newArray(Consumer.class, partitions);
+        for (int i = 0; i < partitions; i++) {
+            final int partition = i;
+            writers[i] = startFork(1, false, t -> Router.partitionOf(keyExtractor.apply(t), partitions) == partition, streamProcessor,
+                null).writer;
+        }
+        return route(router -> router.withPartitionRoute(keyExtractor, writers));
+    }
+
+    /**
+     * Create a ForkJoin instance with 'n' partitioned forks.
+     *
+     * @see #forkPartitions(int, Function, Consumer)
+     */
+    public static <T> ForkJoin<T, BlockingQueue<T>> partitioned(int partitions, Function<T, ?> keyExtractor,
+                                                                Consumer <Stream <T>> streamProcessor) {
+        return ForkJoin.<T>newInstance().forkPartitions(partitions, keyExtractor, streamProcessor);
+    }
+
+    /**
+     * Swap the routing table with an updated copy, as {@link #accept(Object)} reads it without locking.
+     */
+    private synchronized ForkJoin<T, Q> route(UnaryOperator<Router<T>> routeUpdater) {
+        if (!isBroadcast) {
+            router = routeUpdater.apply(router);
+        }
+        return this;
+    }
+
+    /**
+     * <pre>
+     * Configure 'n' forks with the same processing, competing for the matching inputs of a single, shared exchange.
+     *
+     * Unlike other forks, an input is processed by only one of the workers i.e. whichever is free to read it.
+     * It's useful to spread stateless and CPU intensive processing across cores, without partitioning the inputs.
+     * A slow worker doesn't hold back the others, as long as the exchange isn't full.
+     *
+     * The exchange must support concurrent readers, e.g. a {@link BlockingQueue} or {@link RingBuffer}.
+     * Hence, it's not supported by a {@link #broadcast(int)} ForkJoin.
+     *
+     * Usage:
+     *
+     * {@code
+     * forkJoin.forkWorkers(Runtime.getRuntime().availableProcessors(), stream -> stream.map(this::transform).forEach(sink));
+     * }
+     * </pre>
+     *
+     * @param workers the number of forks.
+     * @param predicate the matching condition or filter.
+     * @param streamProcessor The processing on the {@link Stream} of each worker.
+     * @return this ForkJoin instance
+     */
+    public ForkJoin<T, Q> forkWorkers(int workers, Predicate <T> predicate, Consumer <Stream <T>> streamProcessor) {
+        addWorkers(workers, predicate, streamProcessor);
+        return this;
+    }
+
+    /**
+     * Add 'n' workers, competing for the matching inputs of a single, shared exchange, which can be removed together at runtime.
+     *
+     * @return the added fork of the workers.
+     * @see #forkWorkers(int, Predicate, Consumer)
+     * @see #addFork(Predicate, Consumer)
+     */
+    public Fork addWorkers(int workers, Predicate <T> predicate, Consumer <Stream <T>> streamProcessor) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be >= 1 !!");
+        }
+        if (isBroadcast) {
+            throw new UnsupportedOperationException("Workers can't compete for the inputs of a broadcast !!");
+        }
+        final Fork fork = startFork(workers, true, predicate, streamProcessor, null);
+        route(router -> router.withRoute(predicate, fork.writer));
+        return fork;
+    }
+
+    /**
+     * <pre>
+     * Configure a fork, whose matching inputs are processed by 'n' threads, to scale a CPU intensive fork across cores.
+     * The threads compete for the inputs of the fork's exchange, so the inputs aren't processed in order.
+     * </pre>
+     *
+     * @param predicate the matching condition or filter.
+     * @param streamProcessor The processing on the {@link Stream} of each thread.
+     * @param parallelism the number of threads.
+     * @return this ForkJoin instance
+     * @see #forkWorkers(int, Predicate, Consumer)
+     */
+    public ForkJoin<T, Q> fork(Predicate <T> predicate, Consumer <Stream <T>> streamProcessor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 !!");
+        }
+        return parallelism == 1 ? fork(predicate, streamProcessor) : forkWorkers(parallelism, predicate, streamProcessor);
+    }
+
+    /**
+     * <pre>
+     * Configure a fork, whose matching inputs are processed by 'n' threads, keeping the order of the inputs with the same key.
+     *
+     * The fork is sub-partitioned by the hash of the key, as in {@link #forkPartitions(int, Function, Consumer)},
+     * i.e. every thread reads it's own exchange, so the inputs with the same key are processed by the same thread, in the order they're accepted.
+     * A hot key caps the fork at one core, as it's inputs can't be spread.
+     * </pre>
+     *
+     * @param predicate the matching condition or filter.
+     * @param streamProcessor The processing on the {@link Stream} of each thread.
+     * @param parallelism the number of threads.
+     * @param keyExtractor the function to extract the key of an input, whose order is kept.
+     * @return this ForkJoin instance
+     */
+    public ForkJoin<T, Q> fork(Predicate <T> predicate, Consumer <Stream <T>> streamProcessor, int parallelism, Function<T, ?> keyExtractor) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 !!");
+        }
+        Objects.requireNonNull(keyExtractor);
+        final Consumer<T>[] writers = Router.newArray(Consumer.class, parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            final int partition = i;
+            writers[i] = startFork(1, false, predicate.and(t -> Router.partitionOf(keyExtractor.apply(t), parallelism) == partition),
+                streamProcessor, null).writer;
+        }
+        return route(router -> router.withRoute(predicate, Router.partitioned(keyExtractor, writers)));
+    }
+
+    /**
+     * Configure 'n' forks with the same processing, competing for all inputs.
+     *
+     * @see #forkWorkers(int, Predicate, Consumer)
+     */
+    public ForkJoin<T, Q> forkWorkers(int workers, Consumer <Stream <T>> streamProcessor) {
+        return forkWorkers(workers, Router.always(), streamProcessor);
+    }
+
+    /**
+     * <pre>
+     * Configure how the forks configured hereafter wait for inputs, when their exchange is empty.
+     *
+     * By default, a fork blocks on it's exchange, e.g. {@link BlockingQueue#take()}, which costs a park and unpark per hand-off.
+     * With any other {@link WaitStrategy}, the fork polls it's exchange instead, trading CPU for the latency of the hand-off.
+     * It applies to exchanges that are a {@link BlockingQueue}, a {@link BoundedExchange} or a {@link BroadcastBuffer}.
+     * </pre>
+     *
+     * @param waitStrategy the strategy to wait for inputs.
+     * @return this ForkJoin instance
+     */
+    public ForkJoin<T, Q> waitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = Objects.requireNonNull(waitStrategy);
+        return this;
+    }
+
+    /**
+     * <pre>
+     * Configure how the forks configured hereafter handle a failure of their stream processor.
+     *
+     * By default, a failed fork stops reading it's exchange, while the inputs routed to it pile up.
+     * A {@link Supervision} policy instead restarts the processor, dead-letters the failing input or removes the fork.
+     * </pre>
+     *
+     * @param supervision the policy to handle the failures.
+     * @return this ForkJoin instance
+     */
+    public ForkJoin<T, Q> supervision(Supervision<T> supervision) {
+        this.supervision = Objects.requireNonNull(supervision);
+        return this;
+    }
+
+    /**
+     * <pre>
+     * Record the {@link ForkMetrics} of the forks configured hereafter.
+     *
+     * The recording is lock-free and cheap enough to keep on in production, but costs a few atomic updates per input and per read.
+     * </pre>
+     *
+     * @return this ForkJoin instance
+     * @see #metrics()
+     */
+    public ForkJoin<T, Q> recordMetrics() {
+        this.isRecordingMetrics = true;
+        return this;
+    }
+
+    /**
+     * Poll the metrics of the forks configured after {@link #recordMetrics()}.
+     *
+     * @return a snapshot of the metrics of every fork, keyed by {@link #getName()} and the fork's id, e.g. "1538412345678#0".
+     */
+    public Map<String, ForkMetrics.Snapshot> metrics() {
+        final Map<String, ForkMetrics.Snapshot> snapshots = new LinkedHashMap<>();
+        for (Fork fork : forks) {
+            if (fork.metrics != null) {
+                snapshots.put(fork.id, fork.metrics.snapshot());
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Register a {@link ForkJoinMXBean} with the platform MBean server, to publish the {@link #metrics()} over JMX.
+     * It's unregistered upon {@link #close()}.
+     *
+     * @return this ForkJoin instance
+     * @throws IllegalStateException if the MBean can't be registered, e.g. if it's already registered.
+     */
+    public synchronized ForkJoin<T, Q> registerMBean() {
+        try {
+            final ObjectName objectName = new ObjectName(ForkJoinMXBean.DOMAIN + ":type=ForkJoin,name=" + name + ",id=" + instanceId);
+            final ForkJoinMXBean mBean = new ForkJoinMXBean() {
+                @Override
+                public String getName() {
+                    return name;
+                }
+
+                @Override
+                public List<ForkMetrics.Snapshot> getForks() {
+                    return new ArrayList<>(metrics().values());
+                }
+            };
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(mBean, ForkJoinMXBean.class, true), objectName);
+            mBeanName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Error registering the MBean of ForkJoin " + name + " !!", e);
+        }
+        return this;
+    }
+
+    private synchronized void unregisterMBean() {
+        if (mBeanName == null) {
+            return;
+        }
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(mBeanName);
+        } catch (JMException e) {
+            log.warn("Error unregistering the MBean of ForkJoin {}.", name, e);
+        }
+        mBeanName = null;
+    }
+
+    /**
+     * Start a fork with it's own exchange, read by the given number of threads.
+     */
+    private Fork startFork(int readers, boolean isShared, Predicate<T> predicate, Consumer<Stream<T>> streamProcessor,
+                           Backpressure<T> backpressure) {
+        final Fork fork = new Fork(name + "#" + forkIds.getAndIncrement(), exchangeProvider.get(), backpressure);
+        for (int i = 0; i < readers; i++) {
+            startReader(fork, isShared, predicate, streamProcessor);
+        }
+        forks.add(fork);
+        return fork;
+    }
+
+    /**
+     * <pre>
+     * Start a thread of the fork, reading from it's exchange, with the predicate evaluated by the fork itself in case of a broadcast.
+     *
+     * The fork reads the inputs in batches, if the exchange can be drained and isn't shared by competing workers.
+     * A worker doesn't batch, so that it doesn't hold back inputs that the other workers are free to process.
+     * The fork polls the exchange, waiting as per the {@link #waitStrategy(WaitStrategy)}, unless it's blocking or the exchange can't be drained.
+     * </pre>
+     */
+    private void startReader(Fork fork, boolean isShared, Predicate<T> predicate, Consumer<Stream<T>> streamProcessor) {
+        final Q messageExchange = fork.messageExchange;
+        final ForkMetrics metrics = fork.metrics;
+        final ReaderTask task = new ReaderTask(fork, predicate, streamProcessor);
+        final Supplier<T> reader = exchangeReaderProvider.apply(messageExchange);
+        final ObjIntConsumer<List<T>> drainer = drainerOf(messageExchange, reader);
+        final boolean isBlocking = WaitStrategies.isBlocking(waitStrategy);
+        final int batchSize = isShared ? 1 : MAX_BATCH_SIZE;
+        final StreamSource.StreamSourceBuilder<T> sourceBuilder = StreamSource.<T>builder().endOfStream(ForkJoin::isEndOfStream);
+        if (drainer == null || isShared && isBlocking) {
+            sourceBuilder.provider(metrics == null ? reader : metrics.instrument(reader, ForkJoin::isEndOfStream));
+        } else {
+            final Consumer<List<T>> batchProvider;
+            if (isBlocking) {
+                batchProvider = batch -> {
+                    final T t = reader.get();
+                    batch.add(t);
+                    if (!isEndOfStream(t)) {
+                        drainer.accept(batch, batchSize - 1);
+                    }
+                };
+            } else {
+                batchProvider = batch -> drainer.accept(batch, batchSize);
+                sourceBuilder.waitStrategy(waitStrategy);
+            }
+            sourceBuilder.batchProvider(task.resumable(
+                metrics == null ? batchProvider : metrics.instrument(batchProvider, ForkJoin::isEndOfStream)));
+        }
+        final StreamSource<T> source = sourceBuilder.build();
+        task.source = source;
+        fork.closers.add(() -> {
+            source.close();
+            if (reader instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) reader).close();
+                } catch (Exception e) {
+                    log.warn("Error closing the exchange reader of a fork.", e);
+                }
+            }
+        });
+        fork.readers.add(executor.submit(task));
+    }
+
+    /**
+     * <pre>
+     * Runs the stream processor of a reader of a fork, restarting it on a new stream from the same source upon a failure,
+     * as per the {@link Supervision} of the fork.
+     *
+     * If supervised, the inputs read from the source are tracked, to pass on the failing one and the rest of it's batch to the restarted stream.
+     * </pre>
+     */
+    private final class ReaderTask implements Runnable {
+
+        private final Fork fork;
+
+        private final Predicate<T> predicate;
+
+        private final Consumer<Stream<T>> streamProcessor;
+
+        private final Supervision<T> supervision = ForkJoin.this.supervision;
+
+        private StreamSource<T> source;
+
+        /**
+         * The inputs left unread in the batch of a failed stream, to be read first by the restarted one.
+         */
+        private final List<T> leftovers = new ArrayList<>(0);
+
+        private List<T> batch;
+
+        private int batchReads;
+
+        private int reads;
+
+        private T input;
+
+        /**
+         * The number of consecutive failures, without processing any input in between.
+         */
+        private int attempt;
+
+        /**
+         * The latest failure of the stream processor, after which it's restarted.
+         */
+        private Supervision.Failure<T> failure;
+
+        private ReaderTask(Fork fork, Predicate<T> predicate, Consumer<Stream<T>> streamProcessor) {
+            this.fork = fork;
+            this.predicate = predicate;
+            this.streamProcessor = streamProcessor;
+        }
+
+        private Consumer<List<T>> resumable(Consumer<List<T>> batchProvider) {
+            if (supervision == null) {
+                return batchProvider;
+            }
+            return batch -> {
+                if (leftovers.isEmpty()) {
+                    batchProvider.accept(batch);
+                } else {
+                    batch.addAll(leftovers);
+                    leftovers.clear();
+                }
+                this.batch = batch;
+                batchReads = 0;
+            };
+        }
+
+        private void read(T t) {
+            input = t;
+            reads++;
+            batchReads++;
+        }
+
+        @Override
+        public void run() {
+            if (supervision == null) {
+                process();
+                return;
+            }
+            final Trial<Supervision.Failure<T>> restarts = supervision.restartsOf(this::process, () -> reads <= 1);
+            do {
+                // a failure after processing inputs isn't consecutive, so it starts a new trial.
+                failure = restarts == null ? process() : restarts.get();
+            } while (failure != null && restarts != null && reads > 1);
+            if (failure != null) {
+                log.error("Removing fork {}, as it's stream processor failed.", fork.id, failure.getCause());
+                final Supervision.Failure<T> removed = failure;
+                fork.discard(() -> supervision.onRemove(removed));
+            }
+        }
+
+        /**
+         * Run the stream processor on a new stream, restarting it after the latest failure, if any.
+         *
+         * @return the failure of the processor, or {@code null}, if it completed or the fork is closed.
+         */
+        private Supervision.Failure<T> process() {
+            if (failure != null) {
+                if (fork.isClosed) {
+                    return null;
+                }
+                log.warn("Restarting the stream processor of fork {}, after {} consecutive failure(s).", fork.id, failure.getAttempt(),
+                    failure.getCause());
+                supervision.onRestart(failure);
+            }
+            reads = 0;
+            input = null;
+            final Stream<T> source = supervision == null ? this.source.get() : this.source.get().peek(this::read);
+            try {
+                streamProcessor.accept(isBroadcast ? source.filter(predicate) : source);
+                return null;
+            } catch (RuntimeException e) {
+                if (supervision == null || fork.isClosed) {
+                    log.error("The stream processor of fork {} failed.", fork.id, e);
+                    if (fork.backpressure != null) {
+                        // nothing reads the exchange anymore, so the producers shouldn't wait for space in it.
+                        fork.backpressure.close();
+                    }
+                    throw e;
+                }
+                if (batch != null && batchReads < batch.size()) {
+                    leftovers.addAll(batch.subList(batchReads, batch.size()));
+                }
+                batch = null;
+                attempt = reads > 1 ? 1 : attempt + 1;
+                failure = new Supervision.Failure<>(fork.id, e, input, attempt);
+                supervision.onFailure(failure);
+                return failure;
+            }
+        }
+    }
+
     /**
      * <pre>
      * Configure a fork.
@@ -205,18 +1105,279 @@ public class ForkJoin<T, Q> implements Consumer<T>, AutoCloseable {
      * @return this ForkJoin instance
      */
     public ForkJoin<T, Q> fork(Consumer <Stream <T>> streamProcessor) {
-        fork(t -> true, streamProcessor);
-        return this;
+        return fork(Router.always(), streamProcessor);
+    }
+
+    /**
+     * @return a function to drain the available inputs of the exchange, up to a maximum, without waiting,
+     * or {@code null}, if the exchange can't be drained.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> ObjIntConsumer<List<T>> drainerOf(Object messageExchange, Supplier<T> reader) {
+        if (reader instanceof BroadcastBuffer.Cursor) {
+            final BroadcastBuffer<T>.Cursor cursor = (BroadcastBuffer<T>.Cursor) reader;
+            return cursor::drainTo;
+        }
+        if (messageExchange instanceof BoundedExchange || messageExchange instanceof BlockingQueue) {
+            final BoundedExchange<T> exchange = boundedExchangeOf(messageExchange);
+            return exchange::drainTo;
+        }
+        return null;
     }
 
+    private static boolean isEndOfStream(Object t) {
+        return t == null || t == END_OF_STREAM;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T endOfStream() {
+        return (T) END_OF_STREAM;
+    }
+
+    /**
+     * Accept an input, writing it to the exchanges of the matching forks.
+     *
+     * @param t the input
+     * @throws IllegalStateException if this ForkJoin is closing or closed.
+     */
     @Override
     public void accept(T t) {
+        if (isClosing) {
+            throw new IllegalStateException("ForkJoin is closing !!");
+        }
         acceptAction.accept(t);
     }
 
+    /**
+     * <pre>
+     * Accept a batch of inputs.
+     *
+     * It's equivalent to accepting each input, but the routing table is read once per batch.
+     * A {@link #broadcast(int)} ForkJoin publishes the batch by claiming the slots for all it's inputs at once.
+     * </pre>
+     *
+     * @param inputs the inputs
+     * @throws IllegalStateException if this ForkJoin is closing or closed.
+     */
+    public void acceptAll(Collection<? extends T> inputs) {
+        if (isClosing) {
+            throw new IllegalStateException("ForkJoin is closing !!");
+        }
+        acceptAllAction.accept(inputs);
+    }
+
+    /**
+     * <pre>
+     * Close gracefully, i.e. after the forks have processed all the inputs already accepted.
+     *
+     * No more inputs are accepted. An end-of-stream marker is written to the exchange of every fork, after which the fork's stream ends.
+     * This waits up to the given timeout for the markers to be written and the terminal operations of the forks to complete.
+     * Then, it {@link #close()}s, discarding any inputs left.
+     * It should be invoked after the producers have stopped, as an input accepted concurrently may be written after the marker and discarded.
+     * </pre>
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the timeout.
+     * @return true, if all the forks completed in time or false, otherwise.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean closeAndAwait(long timeout, TimeUnit unit) throws InterruptedException {
+        isClosing = true;
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            if (!signalEndOfStream(deadline)) {
+                return false;
+            }
+            for (Fork fork : forks) {
+                if (!fork.await(deadline)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Write the end-of-stream marker for every reader, waiting for space in the exchanges until the deadline, if possible.
+     *
+     * @return true, if all markers were written.
+     */
+    private boolean signalEndOfStream(long deadline) {
+        if (isBroadcast) {
+            final Q messageExchange = exchangeProvider.get();
+            if (messageExchange instanceof BroadcastBuffer) {
+                @SuppressWarnings("unchecked")
+                final BroadcastBuffer<T> buffer = (BroadcastBuffer<T>) messageExchange;
+                return buffer.offer(endOfStream(), Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            exchangeWriterProvider.apply(messageExchange).accept(endOfStream());
+            return true;
+        }
+        for (Fork fork : forks) {
+            if (!fork.signalEndOfStream(deadline)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <pre>
+     * Close immediately, discarding the inputs still in the exchanges of the forks. No more inputs are accepted.
+     *
+     * It should be invoked after the producers have stopped, as an input accepted concurrently may still be written to
+     * the exchange of a closed fork and discarded.
+     * </pre>
+     */
     @Override
     public void close() {
-        streams.forEach(Stream::close);
-        forks.forEach(f -> f.cancel(true));
+        isClosing = true;
+        forks.forEach(Fork::close);
+        unregisterMBean();
+        if (isExecutorOwned) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * <pre>
+     * A fork of this ForkJoin, with it's own exchange read by one or more threads, e.g. {@link #addWorkers(int, Predicate, Consumer)}.
+     * It's id is the key of it's {@link #metrics()}.
+     * </pre>
+     */
+    public final class Fork {
+
+        @Getter
+        private final String id;
+
+        private final Q messageExchange;
+
+        private final Backpressure<T> backpressure;
+
+        private final ForkMetrics metrics;
+
+        /**
+         * The writer to the fork's exchange, which is routed to.
+         */
+        private final Consumer<T> writer;
+
+        private final Collection<Future<?>> readers = new ArrayList<>(1);
+
+        /**
+         * The actions to close the sources of the readers.
+         */
+        private final Collection<Runnable> closers = new ArrayList<>(1);
+
+        private volatile boolean isClosed;
+
+        private Fork(String id, Q messageExchange, Backpressure<T> backpressure) {
+            this.id = id;
+            this.messageExchange = messageExchange;
+            this.backpressure = backpressure;
+            this.metrics = isRecordingMetrics
+                ? new ForkMetrics(id, isBroadcast ? broadcastArrivals : new ForkMetrics.Arrivals(), backpressure) : null;
+            final Consumer<T> writer = backpressure == null
+                ? exchangeWriterProvider.apply(messageExchange) : backpressure.writerOf(boundedExchangeOf(messageExchange));
+            this.writer = metrics == null ? writer : metrics.instrument(writer);
+        }
+
+        /**
+         * <pre>
+         * Remove the fork, after it has processed the inputs already routed to it. The other forks are unaffected.
+         *
+         * The fork is removed from the routing table, so that the inputs accepted hereafter aren't routed to it.
+         * Then, like {@link #closeAndAwait(long, TimeUnit)}, an end-of-stream marker is written to it's exchange,
+         * it's stream ends upon reading it and it's closed.
+         * An input accepted concurrently with the removal may still be routed to the fork and discarded.
+         *
+         * A fork of a {@link #broadcast(int)} shares it's exchange with the others, hence it's closed immediately.
+         * </pre>
+         *
+         * @param timeout the maximum time to wait.
+         * @param unit the unit of the timeout.
+         * @return true, if the fork completed in time or was already removed, or false, otherwise.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        public boolean remove(long timeout, TimeUnit unit) throws InterruptedException {
+            if (!forks.remove(this)) {
+                return true;
+            }
+            route(router -> router.without(writer));
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            try {
+                return isBroadcast || signalEndOfStream(deadline) && await(deadline);
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * @return the number of threads reading the fork's exchange.
+         */
+        public int getReaders() {
+            return readers.size();
+        }
+
+        /**
+         * Write the end-of-stream marker for every reader of the fork.
+         */
+        private boolean signalEndOfStream(long deadline) {
+            for (int i = 0; i < readers.size(); i++) {
+                if (messageExchange instanceof BoundedExchange || messageExchange instanceof BlockingQueue) {
+                    final long remaining = Math.max(0, deadline - System.nanoTime());
+                    if (!ForkJoin.<T>boundedExchangeOf(messageExchange).offer(endOfStream(), remaining, TimeUnit.NANOSECONDS)) {
+                        return false;
+                    }
+                } else {
+                    exchangeWriterProvider.apply(messageExchange).accept(endOfStream());
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Wait until the deadline for the terminal operations of the fork's streams to complete.
+         */
+        private boolean await(long deadline) throws InterruptedException {
+            for (Future<?> reader : readers) {
+                try {
+                    reader.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException e) {
+                    log.warn("Error processing the stream of fork {}.", id, e.getCause());
+                } catch (CancellationException e) {
+                    log.warn("The stream of fork {} was cancelled.", id, e);
+                } catch (TimeoutException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Remove the fork from the routing table and close it, discarding the inputs in it's exchange.
+         *
+         * @param onRemoved invoked after removing the route, before closing the fork.
+         */
+        private void discard(Runnable onRemoved) {
+            if (forks.remove(this)) {
+                route(router -> router.without(writer));
+                try {
+                    onRemoved.run();
+                } finally {
+                    close();
+                }
+            }
+        }
+
+        private void close() {
+            isClosed = true;
+            closers.forEach(Runnable::run);
+            readers.forEach(f -> f.cancel(true));
+            if (backpressure != null) {
+                backpressure.close();
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,45 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import java.util.List;
+
+/**
+ * <pre>
+ * The JMX view of the {@link ForkMetrics} of a {@link ForkJoin}, registered by {@link ForkJoin#registerMBean()}
+ * as "com.littlesaints.protean.functions.streams:type=ForkJoin,name=" followed by {@link ForkJoin#getName()},
+ * and ",id=" followed by a number unique to the ForkJoin instance in this process, see {@link ForkJoin#getMBeanName()}.
+ * </pre>
+ *
+ * @author Varun Anand
+ * @since 1.2.4
+ */
+public interface ForkJoinMXBean {
+
+    String DOMAIN = "com.littlesaints.protean.functions.streams";
+
+    String getName();
+
+    /**
+     * @return a snapshot of the metrics of every fork.
+     */
+    List<ForkMetrics.Snapshot> getForks();
+}
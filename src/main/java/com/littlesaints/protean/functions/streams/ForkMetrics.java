@@ -0,0 +1,336 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * <pre>
+ * The metrics of a fork of a {@link ForkJoin}, recorded if enabled by {@link ForkJoin#recordMetrics()}.
+ *
+ * - enqueued / dequeued: the number of inputs written to / read from the fork's exchange, hence their rates between two snapshots.
+ * - depth: the number of inputs waiting in the fork's exchange.
+ * - wait / processing time: the time the fork's thread(s) spent waiting for inputs vs processing them.
+ * - latency: a histogram of the time from {@link ForkJoin#accept(Object)} until the fork read the input, sampled 1 in {@value #SAMPLING_INTERVAL} inputs.
+ *
+ * Recording is lock-free. The counters are striped, except the sequence of the inputs written to an exchange, which pairs the
+ * accept and read of a sampled input. The pairing assumes the exchange is FIFO, hence the latency is approximate with concurrent producers
+ * or a {@link Backpressure} policy that drops inputs.
+ *
+ * The competing workers of {@link ForkJoin#forkWorkers(int, java.util.function.Predicate, Consumer)} are measured as one fork.
+ * For a {@link ForkJoin#broadcast(int)}, every fork reads every input, before evaluating it's predicate.
+ * </pre>
+ *
+ * @author Varun Anand
+ * @see ForkJoin#metrics()
+ * @since 1.2.4
+ */
+public final class ForkMetrics {
+
+    static final int SAMPLING_INTERVAL = 16;
+
+    private static final int SAMPLING_MASK = SAMPLING_INTERVAL - 1;
+
+    private static final int BUCKETS = Long.SIZE;
+
+    @Getter
+    private final String id;
+
+    private final Arrivals arrivals;
+
+    /**
+     * The sequence of the first input for this fork, which is not 0 for a fork subscribing to a running broadcast.
+     */
+    private final long firstSequence;
+
+    private final Backpressure<?> backpressure;
+
+    private final AtomicLong dequeued = new AtomicLong();
+
+    private final LongAdder waitNanos = new LongAdder();
+
+    private final LongAdder processingNanos = new LongAdder();
+
+    /**
+     * The latencies in [2^i, 2^(i + 1)) nanos are counted in the i'th bucket.
+     */
+    private final LongAdder[] latencies = new LongAdder[BUCKETS];
+
+    ForkMetrics(String id, Arrivals arrivals, Backpressure<?> backpressure) {
+        this.id = id;
+        this.arrivals = arrivals;
+        this.firstSequence = arrivals.count.get();
+        this.backpressure = backpressure;
+        for (int i = 0; i < BUCKETS; i++) {
+            latencies[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return a writer, that records the arrival of every input before writing it.
+     */
+    <T> Consumer<T> instrument(Consumer<T> writer) {
+        return t -> {
+            arrivals.record();
+            writer.accept(t);
+        };
+    }
+
+    /**
+     * @return a reader, that records the time spent waiting for an input and the inputs read.
+     */
+    <T> Supplier<T> instrument(Supplier<T> reader, Predicate<Object> isEndOfStream) {
+        final Reads reads = new Reads();
+        return () -> {
+            final long start = reads.start();
+            final T t = reader.get();
+            final boolean isInput = t != null && !isEndOfStream.test(t);
+            final long end = reads.end(start, isInput);
+            if (isInput) {
+                dequeued(1, end);
+            }
+            return t;
+        };
+    }
+
+    /**
+     * @return a batch reader, that records the time spent waiting for inputs and the inputs read.
+     */
+    <T> Consumer<List<T>> instrument(Consumer<List<T>> batchReader, Predicate<Object> isEndOfStream) {
+        final Reads reads = new Reads();
+        return batch -> {
+            final long start = reads.start();
+            batchReader.accept(batch);
+            int inputs = 0;
+            while (inputs < batch.size() && !isEndOfStream.test(batch.get(inputs))) {
+                inputs++;
+            }
+            dequeued(inputs, reads.end(start, inputs > 0));
+        };
+    }
+
+    private void dequeued(int inputs, long now) {
+        if (inputs == 0) {
+            return;
+        }
+        final long first = firstSequence + dequeued.getAndAdd(inputs);
+        for (long sequence = (first + SAMPLING_MASK) & ~SAMPLING_MASK; sequence < first + inputs; sequence += SAMPLING_INTERVAL) {
+            final long arrival = arrivals.timestampOf(sequence);
+            if (arrival != Long.MIN_VALUE) {
+                latencies[bucketOf(now - arrival)].increment();
+            }
+        }
+    }
+
+    static int bucketOf(long nanos) {
+        return nanos <= 1 ? 0 : BUCKETS - 1 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * @return a point-in-time snapshot of the metrics.
+     */
+    public Snapshot snapshot() {
+        final long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = latencies[i].sum();
+        }
+        final long dequeued = this.dequeued.get();
+        final long enqueued = arrivals.count.get() - firstSequence;
+        final long discarded = backpressure == null ? 0 : backpressure.getDropped() + backpressure.getSpilled();
+        return new Snapshot(id, System.nanoTime(), enqueued, dequeued, Math.max(0, enqueued - discarded - dequeued),
+            waitNanos.sum(), processingNanos.sum(), histogram);
+    }
+
+    /**
+     * The time spent by a reader's thread, outside of the reader, i.e. processing, or inside it, i.e. waiting.
+     * An unsuccessful poll is followed by a wait, hence the time until the next read is counted as waiting.
+     */
+    private final class Reads {
+
+        private long lastEnd = System.nanoTime();
+
+        private boolean isLastSuccessful;
+
+        private long start() {
+            final long start = System.nanoTime();
+            (isLastSuccessful ? processingNanos : waitNanos).add(start - lastEnd);
+            return start;
+        }
+
+        private long end(long start, boolean isSuccessful) {
+            final long end = System.nanoTime();
+            waitNanos.add(end - start);
+            lastEnd = end;
+            isLastSuccessful = isSuccessful;
+            return end;
+        }
+    }
+
+    /**
+     * The sequence of inputs written to an exchange, with the timestamp of every sampled one.
+     */
+    static final class Arrivals {
+
+        private static final int TIMESTAMPS = 1024;
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLongArray timestamps = new AtomicLongArray(TIMESTAMPS);
+
+        void record() {
+            final long sequence = count.getAndIncrement();
+            if ((sequence & SAMPLING_MASK) == 0) {
+                timestamps.lazySet(index(sequence), System.nanoTime());
+            }
+        }
+
+        void record(int inputs) {
+            final long first = count.getAndAdd(inputs);
+            final long now = System.nanoTime();
+            for (long sequence = (first + SAMPLING_MASK) & ~SAMPLING_MASK; sequence < first + inputs; sequence += SAMPLING_INTERVAL) {
+                timestamps.lazySet(index(sequence), now);
+            }
+        }
+
+        /**
+         * @return the timestamp of the sampled input or {@link Long#MIN_VALUE}, if it has been overwritten by a later one.
+         */
+        private long timestampOf(long sequence) {
+            final long timestamp = timestamps.get(index(sequence));
+            return count.get() - sequence > (long) TIMESTAMPS * SAMPLING_INTERVAL ? Long.MIN_VALUE : timestamp;
+        }
+
+        private static int index(long sequence) {
+            return (int) ((sequence / SAMPLING_INTERVAL) & (TIMESTAMPS - 1));
+        }
+    }
+
+    /**
+     * An immutable snapshot of the metrics of a fork.
+     */
+    @Getter
+    @ToString
+    public static final class Snapshot {
+
+        private final String id;
+
+        /**
+         * The {@link System#nanoTime()} of the snapshot.
+         */
+        private final long nanoTime;
+
+        private final long enqueued;
+
+        private final long dequeued;
+
+        private final long depth;
+
+        private final long waitNanos;
+
+        private final long processingNanos;
+
+        /**
+         * The count of latencies in [2^i, 2^(i + 1)) nanos at index 'i'.
+         */
+        private final long[] latencyHistogram;
+
+        Snapshot(String id, long nanoTime, long enqueued, long dequeued, long depth, long waitNanos, long processingNanos,
+                 long[] latencyHistogram) {
+            this.id = id;
+            this.nanoTime = nanoTime;
+            this.enqueued = enqueued;
+            this.dequeued = dequeued;
+            this.depth = depth;
+            this.waitNanos = waitNanos;
+            this.processingNanos = processingNanos;
+            this.latencyHistogram = latencyHistogram;
+        }
+
+        /**
+         * @return the share of time spent waiting for inputs, between 0 and 1.
+         */
+        public double getWaitRatio() {
+            final long total = waitNanos + processingNanos;
+            return total == 0 ? 0 : (double) waitNanos / total;
+        }
+
+        public long getLatencyP50Nanos() {
+            return latencyPercentile(0.5);
+        }
+
+        public long getLatencyP99Nanos() {
+            return latencyPercentile(0.99);
+        }
+
+        public long getLatencyP999Nanos() {
+            return latencyPercentile(0.999);
+        }
+
+        /**
+         * @param percentile between 0 and 1.
+         * @return the upper bound of the latency at the given percentile, or 0 if none were recorded.
+         */
+        public long latencyPercentile(double percentile) {
+            long total = 0;
+            for (long count : latencyHistogram) {
+                total += count;
+            }
+            final long rank = (long) Math.ceil(total * percentile);
+            long cumulative = 0;
+            for (int i = 0; i < latencyHistogram.length; i++) {
+                cumulative += latencyHistogram[i];
+                if (cumulative >= rank && cumulative > 0) {
+                    return i == Long.SIZE - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return the number of inputs enqueued per second, since the given snapshot.
+         */
+        public double enqueueRate(Snapshot previous) {
+            return rate(enqueued - previous.enqueued, previous);
+        }
+
+        /**
+         * @return the number of inputs dequeued per second, since the given snapshot.
+         */
+        public double dequeueRate(Snapshot previous) {
+            return rate(dequeued - previous.dequeued, previous);
+        }
+
+        private double rate(long count, Snapshot previous) {
+            final long elapsed = nanoTime - previous.nanoTime;
+            return elapsed <= 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+    }
+}
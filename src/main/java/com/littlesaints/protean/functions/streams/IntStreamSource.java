@@ -0,0 +1,164 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import lombok.Builder;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <pre>
+ * Function to generate a <b>finite</b> {@link IntStream} from non-compatible sources of int values, without boxing them. e.g. offsets or sensor readings.
+ *
+ * It's the int specialization of {@link StreamSource}, with the same semantics i.e. the application can stop the stream by
+ *
+ * 1. providing a {@link Supplier} {@link #doWhile}. This will be checked before every call to {@link #provider}, to get the next value for the stream.
+ * 2. invoking {@link IntStream#close()}.
+ * 3. providing an {@link IntPredicate} {@link #endOfStream}, to recognize a value from the {@link #provider} that marks the end of the stream.
+ *    The marker itself isn't part of the stream. e.g. -1.
+ *
+ * If {@link #parallel} is set, the stream is parallel and is split into {@link #parallelism} parts, each pulling values from the {@link #provider},
+ * which <b>must</b> be thread-safe. Otherwise, the stream isn't split.
+ *
+ * Usage:
+ *
+ * {@code
+ * IntStreamSource.builder().provider(sensor::read).endOfStream(reading -> reading < 0).build().get().summaryStatistics();
+ * }
+ * </pre>
+ *
+ * @author Varun Anand
+ * @see StreamSource
+ * @since 1.2.4
+ */
+@Builder
+public class IntStreamSource implements Supplier<IntStream>, AutoCloseable {
+
+    private static final IntPredicate NEVER = i -> false;
+
+    private final IntSupplier provider;
+
+    @Builder.Default
+    private final Supplier<Boolean> doWhile = StreamSource.ALWAYS;
+
+    @Builder.Default
+    private final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+
+    @Builder.Default
+    private final boolean parallel = false;
+
+    private final AtomicBoolean isClosing = new AtomicBoolean(false);
+
+    @Builder.Default
+    private final int characteristics = 0;
+
+    @Builder.Default
+    private final IntPredicate endOfStream = NEVER;
+
+    private class _Spliterator implements Spliterator.OfInt {
+
+        /**
+         * The number of splits remaining, shared by all the parts of the stream, or {@code null} if it isn't {@link #parallel}.
+         */
+        private final AtomicInteger splits;
+
+        private _Spliterator(AtomicInteger splits) {
+            this.splits = splits;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (!isDoWhile()) {
+                return false;
+            }
+            final int i = provider.getAsInt();
+            if (isEndOfStream(i)) {
+                close();
+                return false;
+            }
+            action.accept(i);
+            return !isClosing.get();
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            while (isDoWhile()) {
+                final int i = provider.getAsInt();
+                if (isEndOfStream(i)) {
+                    close();
+                    return;
+                }
+                action.accept(i);
+                if (isClosing.get()) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            return splits != null && splits.getAndDecrement() > 0 ? new _Spliterator(splits) : null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return characteristics;
+        }
+    }
+
+    private boolean isDoWhile() {
+        return doWhile == StreamSource.ALWAYS || doWhile.get();
+    }
+
+    private boolean isEndOfStream(int i) {
+        return endOfStream != NEVER && endOfStream.test(i);
+    }
+
+    @Override
+    public void close() {
+        isClosing.set(true);
+    }
+
+    public IntStream get() {
+        Objects.requireNonNull(provider, "provider");
+        if (parallel && parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 !!");
+        }
+        final _Spliterator spliterator = new _Spliterator(parallel ? new AtomicInteger(parallelism - 1) : null);
+        return StreamSupport.intStream(spliterator, parallel).onClose(this::close);
+    }
+
+}
@@ -0,0 +1,383 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import com.littlesaints.protean.functions.maths.Mathematician;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * <pre>
+ * Joins the results of multiple branches, e.g. the forks of a {@link ForkJoin}, into a single stream for one consumer.
+ *
+ * - {@link #unordered(int, int)}: the results are handed over in the order they're produced, through a {@link RingBuffer}.
+ * - {@link #ordered(int, int)}: the results are handed over in the order of the inputs, through a bounded reorder buffer.
+ *   The producer numbers the inputs using {@link #sequence(Object)} and a branch that's too far ahead waits for the slower ones,
+ *   so the buffer holds at most 'capacity' results.
+ *
+ * A branch is a stream processor, created using {@link #branch(Function)} or {@link #orderedBranch(Function)}.
+ * The stream of the join ends, once all the branches complete, i.e. their streams end, e.g. upon {@link ForkJoin#closeAndAwait(long, java.util.concurrent.TimeUnit)}.
+ * A branch that fails without a {@link Supervision} policy to restart it, never completes. The consumer can then {@link #close()} the join.
+ *
+ * {@code null} results are dropped. In the ordered mode, every sequence number must reach a branch exactly once,
+ * e.g. a sequenced input routed to none of the forks stalls the join, once the branches are 'capacity' inputs ahead of it.
+ * The input of a failing mapper is skipped.
+ *
+ * The consumer must run on a different thread than the producer, as the branches wait for the consumer, if the buffer is full.
+ *
+ * Usage:
+ * {@code
+ *     Join<Quote> join = Join.ordered(4, 1024);
+ *     ForkJoin<Join.Sequenced<Order>, ?> forkJoin = ForkJoin.<Join.Sequenced<Order>>ofRingBuffer(1024)
+ *         .forkWorkers(4, join.orderedBranch(pricer::quote));
+ *
+ *     // the producer
+ *     orders.map(join::sequence).forEach(forkJoin);
+ *     forkJoin.closeAndAwait(30, TimeUnit.SECONDS);
+ *
+ *     // the consumer, on another thread
+ *     join.get().forEach(sink);
+ * }
+ * </pre>
+ *
+ * @param <R> the type of results
+ * @author Varun Anand
+ * @see ForkJoin
+ * @since 1.2.4
+ */
+@Log4j2
+public class Join<R> implements Supplier<Stream<R>>, AutoCloseable {
+
+    private static final Object END_OF_STREAM = new Object();
+
+    private static final Object SKIPPED = new Object();
+
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private final int branches;
+
+    private final WaitStrategy waitStrategy;
+
+    private final AtomicInteger completedBranches = new AtomicInteger();
+
+    private final AtomicLong sequences = new AtomicLong();
+
+    /**
+     * The exchange of the unordered mode, or {@code null}.
+     */
+    private final RingBuffer<R> exchange;
+
+    /**
+     * The reorder buffer of the ordered mode, or {@code null}.
+     */
+    private final ReorderBuffer reorderBuffer;
+
+    private final StreamSource<R> source;
+
+    private volatile boolean isCompleted;
+
+    private volatile boolean isClosed;
+
+    private Join(int branches, int capacity, boolean isOrdered, WaitStrategy waitStrategy) {
+        if (branches < 1) {
+            throw new IllegalArgumentException("branches must be >= 1 !!");
+        }
+        RingBuffer.validateCapacity(capacity);
+        this.branches = branches;
+        this.waitStrategy = Objects.requireNonNull(waitStrategy);
+        this.exchange = isOrdered ? null : RingBuffer.of(capacity, waitStrategy);
+        this.reorderBuffer = isOrdered ? new ReorderBuffer(capacity) : null;
+        this.source = StreamSource.<R>builder()
+            .batchProvider(isOrdered ? this::drainOrdered : this::drainUnordered)
+            .endOfStream(t -> t == END_OF_STREAM)
+            .waitStrategy(waitStrategy)
+            .build();
+    }
+
+    /**
+     * Create a join, that hands over the results in the order they're produced.
+     *
+     * @param branches the number of branches to complete, before the stream of the join ends.
+     * @param capacity the maximum number of results waiting for the consumer, which must be a power of 2.
+     * @param <R> the type of results
+     * @return a Join instance
+     */
+    public static <R> Join<R> unordered(int branches, int capacity) {
+        return unordered(branches, capacity, WaitStrategy.DEFAULT);
+    }
+
+    /**
+     * Create a join, that hands over the results in the order they're produced.
+     *
+     * @param branches the number of branches to complete, before the stream of the join ends.
+     * @param capacity the maximum number of results waiting for the consumer, which must be a power of 2.
+     * @param waitStrategy the strategy of the branches to wait for space, and of the consumer to wait for results.
+     * @param <R> the type of results
+     * @return a Join instance
+     */
+    public static <R> Join<R> unordered(int branches, int capacity, WaitStrategy waitStrategy) {
+        return new Join<>(branches, capacity, false, waitStrategy);
+    }
+
+    /**
+     * Create a join, that hands over the results in the order of the inputs, as numbered by {@link #sequence(Object)}.
+     *
+     * @param branches the number of branches to complete, before the stream of the join ends.
+     * @param capacity the size of the reorder buffer, which must be a power of 2.
+     * @param <R> the type of results
+     * @return a Join instance
+     */
+    public static <R> Join<R> ordered(int branches, int capacity) {
+        return ordered(branches, capacity, WaitStrategy.DEFAULT);
+    }
+
+    /**
+     * Create a join, that hands over the results in the order of the inputs, as numbered by {@link #sequence(Object)}.
+     *
+     * @param branches the number of branches to complete, before the stream of the join ends.
+     * @param capacity the size of the reorder buffer, which must be a power of 2.
+     * @param waitStrategy the strategy of the branches to wait for space, and of the consumer to wait for results.
+     * @param <R> the type of results
+     * @return a Join instance
+     */
+    public static <R> Join<R> ordered(int branches, int capacity, WaitStrategy waitStrategy) {
+        return new Join<>(branches, capacity, true, waitStrategy);
+    }
+
+    /**
+     * Number an input with the next sequence number, starting with 0, for an ordered join.
+     * It's thread-safe, but the order of the results is the order of the calls.
+     *
+     * @param t the input
+     * @param <T> the type of input
+     * @return the numbered input
+     */
+    public <T> Sequenced<T> sequence(T t) {
+        return new Sequenced<>(sequences.getAndIncrement(), t);
+    }
+
+    /**
+     * Create a branch of an unordered join, which writes the results of the given pipeline to the join.
+     *
+     * @param pipeline the intermediate operations to apply on the stream of the branch.
+     * @param <T> the type of inputs of the branch
+     * @return the stream processor of the branch, e.g. of a fork.
+     * @throws UnsupportedOperationException if the join is ordered.
+     */
+    public <T> Consumer<Stream<T>> branch(Function<Stream<T>, Stream<R>> pipeline) {
+        if (reorderBuffer != null) {
+            throw new UnsupportedOperationException("An ordered join needs an orderedBranch !!");
+        }
+        return stream -> {
+            pipeline.apply(stream).forEach(this::write);
+            complete();
+        };
+    }
+
+    /**
+     * Create a branch, which writes the result of the given mapper for each numbered input to the join.
+     * It works with an unordered join as well, which ignores the numbers.
+     *
+     * @param mapper the function to map an input to it's result.
+     * @param <T> the type of inputs of the branch
+     * @return the stream processor of the branch, e.g. of a fork.
+     */
+    public <T> Consumer<Stream<Sequenced<T>>> orderedBranch(Function<? super T, ? extends R> mapper) {
+        final Consumer<Sequenced<T>> writer = reorderBuffer == null
+            ? sequenced -> write(mapper.apply(sequenced.value))
+            : sequenced -> {
+                Object result = SKIPPED;
+                try {
+                    result = mapper.apply(sequenced.value);
+                } finally {
+                    reorderBuffer.put(sequenced.sequence, result == null ? SKIPPED : result);
+                }
+            };
+        return stream -> {
+            stream.forEach(writer);
+            complete();
+        };
+    }
+
+    /**
+     * @return the stream of the results. There must be a single consumer.
+     */
+    @Override
+    public Stream<R> get() {
+        return source.get();
+    }
+
+    /**
+     * End the stream of the join and discard the results of the branches from now on.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        source.close();
+    }
+
+    private void write(R r) {
+        if (r == null) {
+            return;
+        }
+        for (int tries = 0; !exchange.offer(r) && !isClosed; ) {
+            tries = waitStrategy.idle(tries);
+        }
+    }
+
+    private void complete() {
+        if (completedBranches.incrementAndGet() == branches) {
+            if (exchange == null) {
+                isCompleted = true;
+            } else {
+                for (int tries = 0; !exchange.offer(endOfStream()) && !isClosed; ) {
+                    tries = waitStrategy.idle(tries);
+                }
+            }
+        }
+    }
+
+    private void drainUnordered(List<R> batch) {
+        exchange.drainTo(batch, MAX_BATCH_SIZE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drainOrdered(List<R> batch) {
+        // read before draining, as the results of the branches are written before they complete.
+        final boolean isCompleted = this.isCompleted;
+        if (reorderBuffer.drainTo((List<Object>) batch) == 0 && isCompleted && !reorderBuffer.skipGap()) {
+            batch.add(endOfStream());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private R endOfStream() {
+        return (R) END_OF_STREAM;
+    }
+
+    /**
+     * A buffer of the results of the ordered mode, indexed by their sequence numbers.
+     * The branches write to the slots of their sequence numbers and the consumer reads the slots in order.
+     */
+    private final class ReorderBuffer {
+
+        private final int capacity;
+
+        private final AtomicReferenceArray<Object> slots;
+
+        /**
+         * The sequence number of the next result for the consumer.
+         */
+        private final Sequence next = new Sequence(0);
+
+        private ReorderBuffer(int capacity) {
+            this.capacity = capacity;
+            this.slots = new AtomicReferenceArray<>(capacity);
+        }
+
+        /**
+         * Write a result, waiting while it's sequence number is 'capacity' or more ahead of the consumer.
+         */
+        private void put(long sequence, Object result) {
+            for (int tries = 0; sequence - next.get() >= capacity; ) {
+                if (isClosed) {
+                    return;
+                }
+                tries = waitStrategy.idle(tries);
+            }
+            slots.lazySet(index(sequence), result);
+        }
+
+        /**
+         * Move the results in order, up to the first missing one, to the batch.
+         *
+         * @return the number of slots read, including the skipped ones.
+         */
+        private int drainTo(List<Object> batch) {
+            final long first = next.get();
+            long position = first;
+            for (int index; position - first < MAX_BATCH_SIZE; position++) {
+                final Object result = slots.get(index = index(position));
+                if (result == null) {
+                    break;
+                }
+                slots.lazySet(index, null);
+                if (result != SKIPPED) {
+                    batch.add(result);
+                }
+            }
+            // the slots are freed before the branches can see the new position.
+            next.lazySet(position);
+            return (int) (position - first);
+        }
+
+        /**
+         * Skip the missing result, which the completed branches never wrote, up to the next one.
+         *
+         * @return true, if there's a result left.
+         */
+        private boolean skipGap() {
+            final long position = next.get();
+            for (int i = 1; i < capacity; i++) {
+                if (slots.get(index(position + i)) != null) {
+                    log.warn("Skipping the missing results of sequence numbers {} to {}.", position, position + i - 1);
+                    next.lazySet(position + i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int index(long sequence) {
+            return Mathematician.moduloForPowerOfTwo.applyAsInt((int) sequence, capacity);
+        }
+    }
+
+    /**
+     * An input numbered by {@link #sequence(Object)}.
+     *
+     * @param <T> the type of input
+     */
+    @Getter
+    @ToString
+    public static final class Sequenced<T> {
+
+        private final long sequence;
+
+        private final T value;
+
+        private Sequenced(long sequence, T value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+    }
+}
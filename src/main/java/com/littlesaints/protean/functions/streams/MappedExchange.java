@@ -0,0 +1,543 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * <pre>
+ * A durable exchange, that appends the elements to memory-mapped segment files in a directory, through a {@link Codec}.
+ * The backlog is limited by the disk instead of the heap, and the elements left unread survive a restart of the process.
+ *
+ * - The directory has segment files of a fixed size, named by their first offset, and an 'offset' file with the committed read offset.
+ * - A record is the length of the encoded element, followed by it's bytes. The length is written last, so a record torn by a crash is ignored.
+ * - A read commits the offset of the previous reads, i.e. once the fork's stream asks for the next inputs, having processed the previous ones.
+ *   So upon reopening the directory, the reads resume from the inputs that weren't processed, which may be processed again (at-least-once).
+ *   A {@link #drainTo(Collection, int)} right after a {@link #poll()} doesn't commit, as it completes the batch started by the poll,
+ *   e.g. when a fork waits for the first input of a batch.
+ * - A segment file is deleted, once the committed offset moves past it. It's mapping is released first, but the memory is only unmapped
+ *   once it's garbage collected, so the deletion can fail on some platforms (e.g. Windows). It's then retried upon the next commit,
+ *   and upon reopening the directory, without failing the reads.
+ *
+ * The segment files are written through the page cache, so they survive a crash of the process, but not of the machine, unless {@link #sync()}ed.
+ * The end-of-stream marker of a {@link ForkJoin} isn't persisted, as it only ends the current streams of the forks.
+ *
+ * With competing workers reading the exchange, a read commits the inputs still being processed by the other workers,
+ * which may then be lost upon a crash. A single reader per exchange guarantees at-least-once processing.
+ *
+ * Usage:
+ * {@code
+ *     ForkJoin<String, MappedExchange<String>> forkJoin = ForkJoin.ofMappedExchange(Paths.get("/var/lib/ingest"), MappedExchange.Codec.utf8())
+ *         .fork(stream -> stream.forEach(indexer));
+ * }
+ * Each fork gets a sub-directory numbered in the order the forks are configured, so the forks should be configured in the same order upon a restart.
+ * </pre>
+ *
+ * @param <T> the type of elements
+ * @author Varun Anand
+ * @see ForkJoin#ofMappedExchange(Path, Codec)
+ * @since 1.2.4
+ */
+@Log4j2
+public class MappedExchange<T> implements BoundedExchange<T>, AutoCloseable {
+
+    /**
+     * The default size of a segment file, i.e. 64 MiB.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private static final String OFFSET_FILE = "offset";
+
+    private static final int HEADER_SIZE = Integer.BYTES;
+
+    /**
+     * The header of the unused rest of a segment, when the next record doesn't fit in it.
+     */
+    private static final int END_OF_SEGMENT = -1;
+
+    private final Path directory;
+
+    private final Codec<T> codec;
+
+    private final int segmentSize;
+
+    private final MappedByteBuffer committedOffset;
+
+    /**
+     * The mapped segments being written or read, by their index.
+     */
+    private final Map<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+    /**
+     * The write offsets of the end-of-stream markers not read yet.
+     */
+    private final Deque<Long> endOfStreams = new ArrayDeque<>();
+
+    private long writeOffset;
+
+    private long readOffset;
+
+    /**
+     * Whether the last read was a {@link #poll()}, which starts a batch that a {@link #drainTo(Collection, int)} may complete.
+     */
+    private boolean isPolled;
+
+    private boolean isClosed;
+
+    /**
+     * Whether a segment file, that was read, couldn't be deleted and should be retried.
+     */
+    private boolean isDeletionPending;
+
+    private MappedExchange(Path directory, Codec<T> codec, int segmentSize) throws IOException {
+        if (segmentSize < 2 * HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be >= 8 !!");
+        }
+        this.directory = directory;
+        this.codec = codec;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.committedOffset = map(directory.resolve(OFFSET_FILE), Long.BYTES);
+        final TreeSet<Long> indices = new TreeSet<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .forEach(file -> indices.add(indexOf(file)));
+        }
+        this.readOffset = indices.isEmpty() ? committedOffset.getLong(0)
+            : Math.max(committedOffset.getLong(0), indices.first() * segmentSize);
+        this.writeOffset = indices.isEmpty() ? readOffset : Math.max(readOffset, recoverWriteOffset(indices.last()));
+        deleteSegmentsBefore(indexOf(readOffset));
+    }
+
+    /**
+     * Open the exchange in the given directory, resuming from it's committed offset, with segments of {@link #DEFAULT_SEGMENT_SIZE}.
+     *
+     * @param directory the directory of the exchange, which is created if absent.
+     * @param codec the codec of the elements.
+     * @param <T> the type of elements
+     * @return a MappedExchange instance
+     * @throws UncheckedIOException if the directory can't be opened.
+     */
+    public static <T> MappedExchange<T> open(Path directory, Codec<T> codec) {
+        return open(directory, codec, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open the exchange in the given directory, resuming from it's committed offset.
+     *
+     * @param directory the directory of the exchange, which is created if absent.
+     * @param codec the codec of the elements.
+     * @param segmentSize the size of a segment file in bytes, which must be the same every time the directory is opened.
+     * @param <T> the type of elements
+     * @return a MappedExchange instance
+     * @throws UncheckedIOException if the directory can't be opened.
+     */
+    public static <T> MappedExchange<T> open(Path directory, Codec<T> codec, int segmentSize) {
+        try {
+            return new MappedExchange<>(directory, codec, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Create a supplier of exchanges for the forks of a {@link ForkJoin}, which opens the sub-directories '0', '1' ... of the given directory.
+     *
+     * @param directory the parent directory of the exchanges.
+     * @param codec the codec of the elements.
+     * @param segmentSize the size of a segment file in bytes.
+     * @param <T> the type of elements
+     * @return a supplier of exchanges
+     */
+    public static <T> Supplier<MappedExchange<T>> provider(Path directory, Codec<T> codec, int segmentSize) {
+        final AtomicInteger forks = new AtomicInteger();
+        return () -> open(directory.resolve(String.valueOf(forks.getAndIncrement())), codec, segmentSize);
+    }
+
+    /**
+     * Append an element. It never waits, as the exchange is bounded by the disk.
+     *
+     * @param t the element, or the end-of-stream marker of a {@link ForkJoin}.
+     * @throws IllegalArgumentException if the encoded element doesn't fit in a segment.
+     * @throws IllegalStateException if the exchange is closed.
+     */
+    public synchronized void put(T t) {
+        if (isClosed) {
+            throw new IllegalStateException("MappedExchange is closed !!");
+        }
+        if (t == ForkJoin.END_OF_STREAM) {
+            endOfStreams.add(writeOffset);
+            return;
+        }
+        final byte[] bytes = codec.encode(t);
+        if (bytes.length > segmentSize - HEADER_SIZE) {
+            throw new IllegalArgumentException("the encoded element must be <= segmentSize - 4 bytes !!");
+        }
+        int position = positionOf(writeOffset);
+        if (position + HEADER_SIZE + bytes.length > segmentSize) {
+            if (position + HEADER_SIZE <= segmentSize) {
+                segment(indexOf(writeOffset)).putInt(position, END_OF_SEGMENT);
+            }
+            release(indexOf(writeOffset));
+            writeOffset = (indexOf(writeOffset) + 1) * segmentSize;
+            position = 0;
+        }
+        final MappedByteBuffer segment = segment(indexOf(writeOffset));
+        final ByteBuffer record = segment.duplicate();
+        record.position(position + HEADER_SIZE);
+        record.put(bytes);
+        // the length is written last and is off by one, so that a zero marks the end of the records.
+        segment.putInt(position, bytes.length + 1);
+        writeOffset += HEADER_SIZE + bytes.length;
+    }
+
+    /**
+     * Same as {@link #put(Object)}.
+     *
+     * @return true
+     */
+    @Override
+    public boolean offer(T t) {
+        put(t);
+        return true;
+    }
+
+    /**
+     * Read the next element, committing the previous reads.
+     *
+     * @return the element or {@code null}, if the exchange is empty or closed.
+     */
+    @Override
+    public synchronized T poll() {
+        if (isClosed) {
+            return null;
+        }
+        commit();
+        final T t = read();
+        isPolled = t != null;
+        return t;
+    }
+
+    /**
+     * Read the next elements, committing the previous reads, unless it follows a {@link #poll()}.
+     * An end-of-stream marker is only read on it's own, so that the elements before it are committed.
+     */
+    @Override
+    public synchronized int drainTo(Collection<? super T> collection, int maxElements) {
+        if (isClosed) {
+            return 0;
+        }
+        if (!isPolled) {
+            commit();
+        }
+        isPolled = false;
+        int count = 0;
+        for (T t; count < maxElements && (count == 0 || !isEndOfStreamNext()) && (t = read()) != null; ) {
+            collection.add(t);
+            count++;
+            if (t == ForkJoin.END_OF_STREAM) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read the next element, waiting for one if the exchange is empty.
+     *
+     * @return the element or {@code null}, if the exchange is closed or the thread is interrupted while waiting.
+     */
+    public T take() {
+        T t;
+        for (int tries = 0; (t = poll()) == null; ) {
+            if (isClosed() || Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            tries = WaitStrategy.DEFAULT.idle(tries);
+        }
+        return t;
+    }
+
+    /**
+     * Create a reader for a fork of a {@link ForkJoin}, which waits for the elements and closes the exchange along with the fork's stream.
+     *
+     * @return a reader of the exchange.
+     */
+    public Reader reader() {
+        return new Reader();
+    }
+
+    /**
+     * @return true, if there's no element to read.
+     */
+    public synchronized boolean isEmpty() {
+        return readOffset == writeOffset && endOfStreams.isEmpty();
+    }
+
+    /**
+     * @return the offset of the next element to read.
+     */
+    public synchronized long getReadOffset() {
+        return readOffset;
+    }
+
+    /**
+     * @return the offset of the next element to write.
+     */
+    public synchronized long getWriteOffset() {
+        return writeOffset;
+    }
+
+    /**
+     * @return the offset, from which the reads would resume upon reopening the exchange.
+     */
+    public synchronized long getCommittedOffset() {
+        return committedOffset.getLong(0);
+    }
+
+    /**
+     * Flush the mapped segments and the committed offset to the disk, to survive a crash of the machine.
+     */
+    public synchronized void sync() {
+        segments.values().forEach(MappedByteBuffer::force);
+        committedOffset.force();
+    }
+
+    /**
+     * Flush to the disk and release the segments. The elements left unread are read upon reopening the exchange.
+     */
+    @Override
+    public synchronized void close() {
+        if (!isClosed) {
+            isClosed = true;
+            sync();
+            segments.clear();
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return isClosed;
+    }
+
+    private boolean isEndOfStreamNext() {
+        return !endOfStreams.isEmpty() && endOfStreams.peek() <= readOffset;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T read() {
+        while (true) {
+            if (isEndOfStreamNext()) {
+                endOfStreams.poll();
+                return (T) ForkJoin.END_OF_STREAM;
+            }
+            if (readOffset == writeOffset) {
+                return null;
+            }
+            final int position = positionOf(readOffset);
+            final int header = position + HEADER_SIZE > segmentSize ? END_OF_SEGMENT : segment(indexOf(readOffset)).getInt(position);
+            if (header == END_OF_SEGMENT) {
+                readOffset = (indexOf(readOffset) + 1) * segmentSize;
+                continue;
+            }
+            final ByteBuffer record = segment(indexOf(readOffset)).duplicate();
+            record.position(position + HEADER_SIZE);
+            final byte[] bytes = new byte[header - 1];
+            record.get(bytes);
+            readOffset += HEADER_SIZE + bytes.length;
+            return codec.decode(bytes);
+        }
+    }
+
+    private void commit() {
+        final long committed = committedOffset.getLong(0);
+        if (committed != readOffset) {
+            committedOffset.putLong(0, readOffset);
+            if (indexOf(readOffset) > indexOf(committed) || isDeletionPending) {
+                deleteSegmentsBefore(indexOf(readOffset));
+            }
+        }
+    }
+
+    /**
+     * Scan the records of the last segment, up to the first one that wasn't completely written.
+     */
+    private long recoverWriteOffset(long index) throws IOException {
+        final MappedByteBuffer segment = segment(index);
+        int position = 0;
+        while (position + HEADER_SIZE <= segmentSize) {
+            final int header = segment.getInt(position);
+            if (header == END_OF_SEGMENT) {
+                return (index + 1) * segmentSize;
+            }
+            if (header <= 0 || position + HEADER_SIZE + header - 1 > segmentSize) {
+                break;
+            }
+            position += HEADER_SIZE + header - 1;
+        }
+        return index * segmentSize + position;
+    }
+
+    /**
+     * <pre>
+     * Delete the segment files before the given index, after releasing their mappings.
+     * A failure is logged, instead of failing the read that committed, and the deletion is retried upon the next commit.
+     * </pre>
+     */
+    private void deleteSegmentsBefore(long index) {
+        segments.keySet().removeIf(i -> i < index);
+        isDeletionPending = false;
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .filter(file -> indexOf(file) < index)
+                .forEach(file -> {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        log.warn("Error deleting the segment file: {}. It will be retried.", file, e);
+                        isDeletionPending = true;
+                    }
+                });
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Error listing the segment files in: {}. It will be retried.", directory, e);
+            isDeletionPending = true;
+        }
+    }
+
+    /**
+     * Release the mapping of a segment, which the writer moved past, unless it's still being read.
+     */
+    private void release(long index) {
+        if (indexOf(readOffset) != index) {
+            segments.remove(index);
+        }
+    }
+
+    private MappedByteBuffer segment(long index) {
+        return segments.computeIfAbsent(index, i -> {
+            try {
+                return map(directory.resolve(String.format("%020d%s", i * segmentSize, SEGMENT_SUFFIX)), segmentSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private long indexOf(Path file) {
+        final String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())) / segmentSize;
+    }
+
+    private long indexOf(long offset) {
+        return offset / segmentSize;
+    }
+
+    private int positionOf(long offset) {
+        return (int) (offset % segmentSize);
+    }
+
+    private static MappedByteBuffer map(Path file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * The reader of a fork, which closes the exchange along with the fork's stream.
+     */
+    public final class Reader implements Supplier<T>, AutoCloseable {
+
+        private Reader() {
+        }
+
+        @Override
+        public T get() {
+            return take();
+        }
+
+        @Override
+        public void close() {
+            MappedExchange.this.close();
+        }
+    }
+
+    /**
+     * Encodes the elements to bytes and back.
+     *
+     * @param <T> the type of elements
+     */
+    public interface Codec<T> {
+
+        byte[] encode(T t);
+
+        T decode(byte[] bytes);
+
+        /**
+         * Create a codec from the given functions.
+         *
+         * @param encoder the function to encode an element.
+         * @param decoder the function to decode an element.
+         * @param <T> the type of elements
+         * @return a Codec instance
+         */
+        static <T> Codec<T> of(Function<T, byte[]> encoder, Function<byte[], T> decoder) {
+            return new Codec<T>() {
+                @Override
+                public byte[] encode(T t) {
+                    return encoder.apply(t);
+                }
+
+                @Override
+                public T decode(byte[] bytes) {
+                    return decoder.apply(bytes);
+                }
+            };
+        }
+
+        /**
+         * @return a codec of strings, as UTF-8 bytes.
+         */
+        static Codec<String> utf8() {
+            return of(s -> s.getBytes(StandardCharsets.UTF_8), bytes -> new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+}
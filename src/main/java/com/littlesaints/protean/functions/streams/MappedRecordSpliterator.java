@@ -0,0 +1,187 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ * The spliterator of the records in a range of a file, as framed by a {@link RecordFramer}.
+ *
+ * The file is read through memory mapped windows, so the records are slices of the mapped windows i.e. they're not copied.
+ * The range is split on a frame boundary, hence the records can be processed in parallel.
+ * </pre>
+ *
+ * @author Varun Anand
+ * @see StreamSource#ofMappedFile(java.nio.file.Path, RecordFramer)
+ * @since 1.2.4
+ */
+final class MappedRecordSpliterator implements Spliterator<ByteBuffer> {
+
+    static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    /**
+     * The ranges smaller than this aren't split, as the cost of a parallel task would exceed the cost of processing the range.
+     */
+    static final int MIN_SPLIT_SIZE = 4 << 10;
+
+    private final FileChannel channel;
+
+    private final RecordFramer framer;
+
+    private final int windowSize;
+
+    private final long size;
+
+    private final long end;
+
+    private long position;
+
+    private MappedByteBuffer window;
+
+    private long windowStart;
+
+    MappedRecordSpliterator(FileChannel channel, RecordFramer framer, int windowSize, long size, long position, long end) {
+        this.channel = channel;
+        this.framer = framer;
+        this.windowSize = windowSize;
+        this.size = size;
+        this.position = position;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super ByteBuffer> action) {
+        if (position >= end) {
+            return false;
+        }
+        final int length = frameAt(position);
+        if (length < 0) {
+            // a truncated frame at the end of the file isn't a record.
+            position = end;
+            return false;
+        }
+        final int offset = (int) (position - windowStart);
+        position += length;
+        action.accept(framer.record(window, offset, length));
+        return true;
+    }
+
+    @Override
+    public Spliterator<ByteBuffer> trySplit() {
+        final long remaining = end - position;
+        if (remaining < MIN_SPLIT_SIZE) {
+            return null;
+        }
+        final long middle = position + remaining / 2;
+        final long boundary = framer.isSelfSynchronizing() ? synchronize(middle) : walk(middle);
+        if (boundary <= position || boundary >= end) {
+            return null;
+        }
+        final Spliterator<ByteBuffer> prefix = new MappedRecordSpliterator(channel, framer, windowSize, size, position, boundary);
+        position = boundary;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - position;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * @return the length of the frame at the given position of the file, mapping a window starting at it, if the current one doesn't contain it whole.
+     * Or -1, if it's a truncated frame at the end of the file.
+     */
+    private int frameAt(long at) {
+        if (window == null || at < windowStart || at >= windowStart + window.limit()) {
+            map(at);
+        }
+        int length = framer.frameLength(window, (int) (at - windowStart), isEndOfInput());
+        if (length < 0 && at > windowStart) {
+            map(at);
+            length = framer.frameLength(window, 0, isEndOfInput());
+        }
+        if (length < 0 && !isEndOfInput()) {
+            throw new IllegalStateException("The record at " + at + " is larger than the window size: " + windowSize + " !!");
+        }
+        return length;
+    }
+
+    /**
+     * @return the position of the first frame at or after the given position, found by the self-synchronizing framer, or -1 if there's none in a window.
+     */
+    private long synchronize(long at) {
+        map(at - 1);
+        final int offset = framer.nextFrame(window, 0);
+        return offset < 0 ? -1 : windowStart + offset;
+    }
+
+    /**
+     * @return the position of the first frame at or after the given position, found by walking the frames from the start of the range.
+     */
+    private long walk(long at) {
+        long next = position;
+        while (next < at) {
+            final int length = frameAt(next);
+            if (length < 0) {
+                return -1;
+            }
+            next += length;
+        }
+        return next;
+    }
+
+    private boolean isEndOfInput() {
+        return windowStart + window.limit() == size;
+    }
+
+    private void map(long at) {
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(windowSize, size - at));
+            windowStart = at;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return a read-only slice of the buffer, sharing it's bytes.
+     */
+    static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        final ByteBuffer slice = buffer.asReadOnlyBuffer();
+        // cast for the Java 8 runtime, where ByteBuffer doesn't override the Buffer methods.
+        ((Buffer) slice).limit(offset + length);
+        ((Buffer) slice).position(offset);
+        return slice.slice();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * <pre>
+ * A provider for a {@link StreamSource}, merging the elements polled from many providers, e.g. the partitions of a message broker,
+ * so that a single stream (and thread) can consume all of them.
+ *
+ * The providers are polled i.e. a {@code null} element means that the provider has none available yet, and they should never block.
+ *
+ * Fairness:
+ *
+ * The providers are polled in a round-robin order. A provider with a weight of 'w' can provide up to 'w' consecutive elements, before the next one is polled.
+ *
+ * Backoff:
+ *
+ * A provider with no element available is skipped in the next rounds, so that idle providers don't cost a poll per round.
+ * The number of rounds skipped is doubled upon every consecutive empty poll, up to {@link Builder#maxBackoff(int)}, and reset upon an element.
+ *
+ * If no provider has an element available in a round, {@code null} is returned.
+ * Hence, the {@link StreamSource} should be built with a {@link WaitStrategy}, to wait before polling again.
+ *
+ * It's NOT thread-safe, as it's meant to be the provider of a single stream.
+ *
+ * Usage:
+ *
+ * {@code
+ * MergedProvider.Builder<Record> builder = MergedProvider.builder();
+ * partitions.forEach(partition -> builder.provider(partition::poll));
+ * StreamSource.<Record>builder().provider(builder.provider(priority::poll, 4).build()).waitStrategy(WaitStrategy.DEFAULT).build().get()
+ *     .forEach(this::process);
+ * }
+ * </pre>
+ *
+ * @param <T> the type of elements
+ * @author Varun Anand
+ * @see StreamSource
+ * @since 1.2.4
+ */
+public final class MergedProvider<T> implements Supplier<T> {
+
+    private static final int DEFAULT_MAX_BACKOFF = 64;
+
+    private final Supplier<T>[] providers;
+
+    private final int[] weights;
+
+    /**
+     * The number of rounds a provider is skipped after it's latest empty poll.
+     */
+    private final int[] backoffs;
+
+    /**
+     * The number of rounds a provider is yet to be skipped.
+     */
+    private final int[] skips;
+
+    private final int maxBackoff;
+
+    private int current;
+
+    /**
+     * The number of consecutive elements provided by the current provider.
+     */
+    private int provided;
+
+    private MergedProvider(List<Supplier<T>> providers, List<Integer> weights, int maxBackoff) {
+        this.providers = providers.toArray(Router.newArray(Supplier.class, providers.size()));
+        this.weights = weights.stream().mapToInt(Integer::intValue).toArray();
+        this.backoffs = new int[this.providers.length];
+        this.skips = new int[this.providers.length];
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * @return a builder of a MergedProvider.
+     */
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * @return the next element of the providers, in a round-robin order, or {@code null} if none of them has one available.
+     */
+    @Override
+    public T get() {
+        for (int visits = 0; visits < providers.length; visits++) {
+            final int i = current;
+            if (skips[i] > 0) {
+                skips[i]--;
+                next();
+                continue;
+            }
+            final T t = providers[i].get();
+            if (t == null) {
+                backoffs[i] = Math.min(backoffs[i] == 0 ? 1 : backoffs[i] << 1, maxBackoff);
+                skips[i] = backoffs[i];
+                next();
+                continue;
+            }
+            backoffs[i] = 0;
+            if (++provided == weights[i]) {
+                next();
+            }
+            return t;
+        }
+        return null;
+    }
+
+    private void next() {
+        provided = 0;
+        current = current + 1 == providers.length ? 0 : current + 1;
+    }
+
+    /**
+     * The builder of a {@link MergedProvider}.
+     *
+     * @param <T> the type of elements
+     */
+    public static final class Builder<T> {
+
+        private final List<Supplier<T>> providers = new ArrayList<>();
+
+        private final List<Integer> weights = new ArrayList<>();
+
+        private int maxBackoff = DEFAULT_MAX_BACKOFF;
+
+        private Builder() {
+        }
+
+        /**
+         * Add a provider, with a weight of 1.
+         *
+         * @param provider the provider, which returns {@code null} if it has no element available.
+         * @return this builder
+         */
+        public Builder<T> provider(Supplier<T> provider) {
+            return provider(provider, 1);
+        }
+
+        /**
+         * Add a provider, that can provide up to 'weight' consecutive elements in a round.
+         *
+         * @param provider the provider, which returns {@code null} if it has no element available.
+         * @param weight the weight of the provider.
+         * @return this builder
+         */
+        public Builder<T> provider(Supplier<T> provider, int weight) {
+            if (weight < 1) {
+                throw new IllegalArgumentException("weight must be >= 1 !!");
+            }
+            providers.add(Objects.requireNonNull(provider));
+            weights.add(weight);
+            return this;
+        }
+
+        /**
+         * Set the maximum number of rounds an idle provider is skipped. 0 disables the backoff. The default is 64.
+         *
+         * @param maxBackoff the maximum number of rounds.
+         * @return this builder
+         */
+        public Builder<T> maxBackoff(int maxBackoff) {
+            if (maxBackoff < 0) {
+                throw new IllegalArgumentException("maxBackoff must be >= 0 !!");
+            }
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * @return the MergedProvider of the providers added.
+         */
+        public MergedProvider<T> build() {
+            if (providers.isEmpty()) {
+                throw new IllegalArgumentException("providers must be >= 1 !!");
+            }
+            return new MergedProvider<>(providers, weights, maxBackoff);
+        }
+    }
+}
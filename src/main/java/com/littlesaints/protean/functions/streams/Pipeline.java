@@ -0,0 +1,531 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * <pre>
+ * A multi-stage topology of streams, declared as a DAG of named stages, instead of nesting {@link ForkJoin} instances by hand.
+ *
+ * - A stage reads the outputs of it's upstream stage(s) and it's outputs are read by every downstream stage.
+ * - A stage that isn't fused has a {@link ForkJoin} with an {@link Exchange} and 'parallelism' workers, all running on a shared executor.
+ * - A stateless stage, i.e. {@link Node#map}, {@link Node#filter}, {@link Node#flatMap} or {@link Node#sink}, is fused into it's upstream stage,
+ *   i.e. runs on the upstream's threads without an exchange in between, if:
+ *     - it's the only downstream stage of it's upstream, which isn't the source.
+ *     - it has a single upstream stage.
+ *     - it's parallelism and exchange aren't configured.
+ * - {@link Node#stage(String, Function)} declares a stage with any intermediate operations, e.g. stateful ones, which is never fused.
+ * - {@link #metrics()} reports the throughput of every stage, including the fused ones.
+ *
+ * Usage:
+ * {@code
+ *     Pipeline.Builder<String> builder = Pipeline.builder();
+ *     Pipeline.Node<Order> orders = builder.source()
+ *         .map("parse", Order::parse).parallelism(4)
+ *         .filter("valid", Order::isValid);                      // fused into 'parse'
+ *     orders.sink("store", repository::save).parallelism(2)
+ *         .exchange(Pipeline.Exchange.ringBuffer(1024));
+ *     orders.filter("large", order -> order.getAmount() > 10_000)
+ *         .sink("alert", alerts::send);                           // fused into 'large'
+ *
+ *     try (Pipeline<String> pipeline = builder.build()) {
+ *         lines.forEach(pipeline);
+ *         pipeline.closeAndAwait(30, TimeUnit.SECONDS);
+ *     }
+ * }
+ * </pre>
+ *
+ * @param <T> the type of inputs
+ * @author Varun Anand
+ * @see ForkJoin
+ * @since 1.2.4
+ */
+@Log4j2
+public class Pipeline<T> implements Consumer<T>, AutoCloseable {
+
+    private final Map<String, Stage> stages;
+
+    /**
+     * The stages with a {@link ForkJoin}, along with the stages fused into them, in topological order.
+     */
+    private final List<Group> groups;
+
+    private final Consumer<Object> source;
+
+    private final ExecutorService executor;
+
+    private final boolean isExecutorOwned;
+
+    private final long startNanos = System.nanoTime();
+
+    private Pipeline(Builder<T> builder) {
+        this.stages = builder.stages;
+        this.executor = builder.executor == null ? Executors.newCachedThreadPool(ThreadFactories.platform("pipeline-", true))
+            : builder.executor;
+        this.isExecutorOwned = builder.executor == null;
+        final List<Group> groups = new ArrayList<>();
+        final Map<Stage, Group> groupsByHead = new LinkedHashMap<>();
+        for (Stage stage : stages.values()) {
+            if (!stage.isFused()) {
+                final Group group = new Group(stage);
+                groups.add(group);
+                groupsByHead.put(stage, group);
+            }
+        }
+        this.groups = Collections.unmodifiableList(groups);
+        // the downstream stages are started first, so that the outputs of a stage have somewhere to go.
+        for (int i = groups.size() - 1; i >= 0; i--) {
+            groups.get(i).start(groupsByHead);
+        }
+        this.source = outputOf(builder.source, groupsByHead);
+    }
+
+    /**
+     * @param <T> the type of inputs
+     * @return a builder of a pipeline
+     */
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Pass an input to the stages downstream of the source.
+     */
+    @Override
+    public void accept(T t) {
+        source.accept(t);
+    }
+
+    /**
+     * @return the metrics of every stage, by it's name, in the order the stages were declared.
+     */
+    public Map<String, StageMetrics> metrics() {
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        final Map<String, StageMetrics> metrics = new LinkedHashMap<>();
+        stages.values().forEach(stage -> metrics.put(stage.name, new StageMetrics(stage.name,
+            stage.isFused() ? stage.upstreams.get(0).groupHead().name : null, stage.processed.sum(), elapsedNanos)));
+        return metrics;
+    }
+
+    /**
+     * <pre>
+     * Stop accepting inputs and wait for every stage to process the inputs already accepted, in topological order.
+     * Then, it {@link #close()}s.
+     * </pre>
+     *
+     * @param timeout the maximum time to wait for all the stages.
+     * @param unit the unit of the timeout.
+     * @return true, if all the stages completed in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean closeAndAwait(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (Group group : groups) {
+                if (!group.forkJoin.closeAndAwait(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    log.warn("Stage {} didn't complete in time.", group.head.name);
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Stop every stage immediately, discarding the inputs still in their exchanges.
+     * The executor is shut down, unless it was provided to the {@link Builder}.
+     */
+    @Override
+    public void close() {
+        groups.forEach(group -> group.forkJoin.close());
+        if (isExecutorOwned) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the consumer of the outputs of a stage, which writes them to the exchanges of it's downstream stages.
+     */
+    private Consumer<Object> outputOf(Stage stage, Map<Stage, Group> groupsByHead) {
+        if (stage.sink != null) {
+            return stage.sink;
+        }
+        final List<Consumer<Object>> writers = new ArrayList<>();
+        stage.downstreams.stream().filter(groupsByHead::containsKey).forEach(downstream -> writers.add(groupsByHead.get(downstream).forkJoin));
+        if (writers.size() == 1) {
+            return writers.get(0);
+        }
+        return t -> writers.forEach(writer -> writer.accept(t));
+    }
+
+    /**
+     * A stage with a {@link ForkJoin}, followed by the chain of the stages fused into it.
+     */
+    private final class Group {
+
+        private final Stage head;
+
+        private final List<Stage> stages = new ArrayList<>();
+
+        private ForkJoin<Object, ?> forkJoin;
+
+        private Group(Stage head) {
+            this.head = head;
+            for (Stage stage = head; stage != null; stage = stage.fusedDownstream()) {
+                stages.add(stage);
+            }
+        }
+
+        private void start(Map<Stage, Group> groupsByHead) {
+            final Consumer<Object> output = outputOf(stages.get(stages.size() - 1), groupsByHead);
+            final Consumer<Stream<Object>> processor = stream -> {
+                Stream<Object> outputs = stream;
+                for (Stage stage : stages) {
+                    outputs = stage.operations.apply(outputs.peek(t -> stage.processed.increment()));
+                }
+                outputs.forEach(output);
+            };
+            forkJoin = head.exchange.create(executor);
+            if (head.parallelism == 1) {
+                forkJoin.fork(processor);
+            } else {
+                forkJoin.forkWorkers(head.parallelism, processor);
+            }
+        }
+    }
+
+    /**
+     * A stage of the DAG.
+     */
+    private static final class Stage {
+
+        private final String name;
+
+        private final Function<Stream<Object>, Stream<Object>> operations;
+
+        private final boolean isStateless;
+
+        private final Consumer<Object> sink;
+
+        private final List<Stage> upstreams;
+
+        private final List<Stage> downstreams = new ArrayList<>();
+
+        private final LongAdder processed = new LongAdder();
+
+        private int parallelism = 1;
+
+        private Exchange exchange = Exchange.blockingQueue();
+
+        private boolean isConfigured;
+
+        private Stage(String name, Function<Stream<Object>, Stream<Object>> operations, boolean isStateless, Consumer<Object> sink,
+                      List<Stage> upstreams) {
+            this.name = name;
+            this.operations = operations;
+            this.isStateless = isStateless;
+            this.sink = sink;
+            this.upstreams = upstreams;
+        }
+
+        private boolean isSource() {
+            return upstreams.isEmpty();
+        }
+
+        private boolean isFused() {
+            if (!isStateless || isConfigured || upstreams.size() != 1) {
+                return false;
+            }
+            final Stage upstream = upstreams.get(0);
+            return !upstream.isSource() && upstream.downstreams.size() == 1;
+        }
+
+        private Stage fusedDownstream() {
+            return downstreams.size() == 1 && downstreams.get(0).isFused() ? downstreams.get(0) : null;
+        }
+
+        private Stage groupHead() {
+            return isFused() ? upstreams.get(0).groupHead() : this;
+        }
+    }
+
+    /**
+     * Declares the stages of a {@link Pipeline}.
+     *
+     * @param <T> the type of inputs
+     */
+    public static final class Builder<T> {
+
+        private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+        private final Stage source = new Stage("source", Function.identity(), false, null, Collections.emptyList());
+
+        private ExecutorService executor;
+
+        private Builder() {
+        }
+
+        /**
+         * @return the node of the inputs of the pipeline.
+         */
+        public Node<T> source() {
+            return new Node<>(this, source);
+        }
+
+        /**
+         * Run the stages on the given executor, which is NOT shut down upon {@link Pipeline#close()}.
+         * By default, the pipeline creates a cached thread pool of daemon threads.
+         *
+         * @param executor the shared executor of the stages.
+         * @return this builder
+         */
+        public Builder<T> executor(ExecutorService executor) {
+            this.executor = Objects.requireNonNull(executor);
+            return this;
+        }
+
+        /**
+         * Declare a stage that reads the outputs of all the given stages.
+         *
+         * @param name the unique name of the stage.
+         * @param upstreams the upstream stages.
+         * @param <O> the type of outputs
+         * @return the node of the stage
+         */
+        @SafeVarargs
+        public final <O> Node<O> merge(String name, Node<? extends O>... upstreams) {
+            if (upstreams.length < 1) {
+                throw new IllegalArgumentException("upstreams must be >= 1 !!");
+            }
+            final List<Stage> stages = new ArrayList<>();
+            for (Node<? extends O> upstream : upstreams) {
+                stages.add(upstream.stage);
+            }
+            return new Node<>(this, add(name, Function.identity(), false, null, stages));
+        }
+
+        /**
+         * Start the stages.
+         *
+         * @return the pipeline
+         */
+        public Pipeline<T> build() {
+            return new Pipeline<>(this);
+        }
+
+        private Stage add(String name, Function<Stream<Object>, Stream<Object>> operations, boolean isStateless, Consumer<Object> sink,
+                          List<Stage> upstreams) {
+            if (stages.containsKey(Objects.requireNonNull(name)) || source.name.equals(name)) {
+                throw new IllegalArgumentException("stage name must be unique !!");
+            }
+            for (Stage upstream : upstreams) {
+                if (upstream.sink != null) {
+                    throw new IllegalStateException("A sink can't have downstream stages !!");
+                }
+            }
+            final Stage stage = new Stage(name, operations, isStateless, sink, upstreams);
+            upstreams.forEach(upstream -> upstream.downstreams.add(stage));
+            stages.put(name, stage);
+            return stage;
+        }
+    }
+
+    /**
+     * The outputs of a stage, to declare the downstream stages and configure the stage.
+     *
+     * @param <O> the type of outputs
+     */
+    public static final class Node<O> {
+
+        private final Builder<?> builder;
+
+        private final Stage stage;
+
+        private Node(Builder<?> builder, Stage stage) {
+            this.builder = builder;
+            this.stage = stage;
+        }
+
+        /**
+         * Declare a stateless stage, that maps every output of this stage.
+         */
+        @SuppressWarnings("unchecked")
+        public <R> Node<R> map(String name, Function<? super O, ? extends R> mapper) {
+            return downstream(name, s -> s.map(t -> mapper.apply((O) t)), true, null);
+        }
+
+        /**
+         * Declare a stateless stage, that filters the outputs of this stage.
+         */
+        @SuppressWarnings("unchecked")
+        public Node<O> filter(String name, Predicate<? super O> predicate) {
+            return downstream(name, s -> s.filter(t -> predicate.test((O) t)), true, null);
+        }
+
+        /**
+         * Declare a stateless stage, that maps every output of this stage to zero or more outputs.
+         */
+        @SuppressWarnings("unchecked")
+        public <R> Node<R> flatMap(String name, Function<? super O, ? extends Stream<? extends R>> mapper) {
+            return downstream(name, s -> s.flatMap(t -> mapper.apply((O) t)), true, null);
+        }
+
+        /**
+         * Declare a stage with any intermediate operations on the stream of the outputs of this stage, which is never fused.
+         * With a parallelism above 1, every worker applies the operations on it's own share of the outputs.
+         */
+        @SuppressWarnings("unchecked")
+        public <R> Node<R> stage(String name, Function<Stream<O>, Stream<R>> operations) {
+            return downstream(name, s -> (Stream<Object>) operations.apply((Stream<O>) s), false, null);
+        }
+
+        /**
+         * Declare a stateless stage, that consumes the outputs of this stage. It can't have downstream stages.
+         */
+        @SuppressWarnings("unchecked")
+        public Node<O> sink(String name, Consumer<? super O> consumer) {
+            return downstream(name, Function.identity(), true, t -> consumer.accept((O) t));
+        }
+
+        /**
+         * Run this stage on the given number of competing workers, instead of fusing it.
+         *
+         * @param parallelism the number of workers.
+         * @return this node
+         */
+        public Node<O> parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism must be >= 1 !!");
+            }
+            configurable().parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Read the inputs of this stage through the given exchange, instead of fusing it.
+         *
+         * @param exchange the exchange.
+         * @return this node
+         */
+        public Node<O> exchange(Exchange exchange) {
+            configurable().exchange = Objects.requireNonNull(exchange);
+            return this;
+        }
+
+        private Stage configurable() {
+            if (stage.isSource()) {
+                throw new UnsupportedOperationException("The source can't be configured !!");
+            }
+            stage.isConfigured = true;
+            return stage;
+        }
+
+        private <R> Node<R> downstream(String name, Function<Stream<Object>, Stream<Object>> operations, boolean isStateless,
+                                       Consumer<Object> sink) {
+            return new Node<>(builder, builder.add(name, operations, isStateless, sink, Collections.singletonList(stage)));
+        }
+    }
+
+    /**
+     * The type of the exchange of a stage, which creates it's {@link ForkJoin}.
+     */
+    @FunctionalInterface
+    public interface Exchange {
+
+        ForkJoin<Object, ?> create(ExecutorService executor);
+
+        /**
+         * @return an unbounded {@link java.util.concurrent.BlockingQueue}, the default.
+         */
+        static Exchange blockingQueue() {
+            return ForkJoin::newInstance;
+        }
+
+        /**
+         * @param capacity the capacity, which must be a power of 2.
+         * @return a bounded {@link RingBuffer}
+         */
+        static Exchange ringBuffer(int capacity) {
+            RingBuffer.validateCapacity(capacity);
+            return executor -> ForkJoin.<Object, RingBuffer<Object>>of(() -> RingBuffer.of(capacity), q -> q::take, q -> q::put, executor);
+        }
+    }
+
+    /**
+     * The throughput of a stage, since the pipeline was started.
+     */
+    @Getter
+    @ToString
+    public static final class StageMetrics {
+
+        private final String name;
+
+        /**
+         * The name of the stage, on whose threads this stage is fused, or {@code null}.
+         */
+        private final String fusedInto;
+
+        /**
+         * The number of inputs processed by the stage.
+         */
+        private final long processed;
+
+        private final long elapsedNanos;
+
+        StageMetrics(String name, String fusedInto, long processed, long elapsedNanos) {
+            this.name = name;
+            this.fusedInto = fusedInto;
+            this.processed = processed;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public boolean isFused() {
+            return fusedInto != null;
+        }
+
+        /**
+         * @return the inputs processed per second.
+         */
+        public double getThroughput() {
+            return elapsedNanos <= 0 ? 0 : processed * 1e9 / elapsedNanos;
+        }
+    }
+}
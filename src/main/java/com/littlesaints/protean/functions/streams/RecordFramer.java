@@ -0,0 +1,147 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <pre>
+ * Finds the records in the bytes of a file, for {@link StreamSource#ofMappedFile(java.nio.file.Path, RecordFramer)}.
+ *
+ * A frame is a record along with it's framing bytes, e.g. a length prefix or a delimiter.
+ * The framer is given a window of the file, which may end in the middle of a frame. It's then given a window starting at the same frame, if any.
+ *
+ * If the framer is self-synchronizing, i.e. it can find the next frame from an arbitrary offset like a delimiter,
+ * the file is split in parallel streams by looking up the frame at the middle of the range to split.
+ * Otherwise, the frames are walked from the start of the range to the middle.
+ * </pre>
+ *
+ * @author Varun Anand
+ * @see StreamSource#ofMappedFile(java.nio.file.Path, RecordFramer)
+ * @since 1.2.4
+ */
+public interface RecordFramer {
+
+    /**
+     * @param buffer the window of the file, whose limit is the end of the window.
+     * @param offset the offset of the frame in the buffer.
+     * @param isEndOfInput true, if the end of the window is the end of the file.
+     * @return the length of the frame starting at the offset, or -1 if the window doesn't contain the whole frame.
+     */
+    int frameLength(ByteBuffer buffer, int offset, boolean isEndOfInput);
+
+    /**
+     * @param buffer the window of the file.
+     * @param offset the offset of the frame in the buffer.
+     * @param frameLength the length of the frame.
+     * @return the record in the frame, as a slice of the buffer i.e. without copying the bytes.
+     */
+    ByteBuffer record(ByteBuffer buffer, int offset, int frameLength);
+
+    /**
+     * @return true, if {@link #nextFrame(ByteBuffer, int)} can find a frame from an arbitrary offset.
+     */
+    default boolean isSelfSynchronizing() {
+        return false;
+    }
+
+    /**
+     * @param buffer the window of the file.
+     * @param offset an arbitrary offset in the buffer.
+     * @return the offset of the first frame that starts after the offset, or -1 if the window doesn't contain one.
+     */
+    default int nextFrame(ByteBuffer buffer, int offset) {
+        throw new UnsupportedOperationException("The framer isn't self-synchronizing !!");
+    }
+
+    /**
+     * @return a framer of records prefixed by their length, as a 4 byte big endian int.
+     */
+    static RecordFramer lengthPrefixed() {
+        return new RecordFramer() {
+            @Override
+            public int frameLength(ByteBuffer buffer, int offset, boolean isEndOfInput) {
+                if (buffer.limit() - offset < Integer.BYTES) {
+                    return -1;
+                }
+                final int length = buffer.getInt(offset);
+                if (length < 0) {
+                    throw new IllegalStateException("Invalid record length: " + length + " !!");
+                }
+                final long frameLength = (long) Integer.BYTES + length;
+                return frameLength <= buffer.limit() - offset ? (int) frameLength : -1;
+            }
+
+            @Override
+            public ByteBuffer record(ByteBuffer buffer, int offset, int frameLength) {
+                return MappedRecordSpliterator.slice(buffer, offset + Integer.BYTES, frameLength - Integer.BYTES);
+            }
+        };
+    }
+
+    /**
+     * @return a framer of records terminated by a new line i.e. '\n'. The last record may not be terminated.
+     */
+    static RecordFramer newlineDelimited() {
+        return delimited((byte) '\n');
+    }
+
+    /**
+     * @param delimiter the byte terminating the records.
+     * @return a framer of records terminated by the delimiter. The last record may not be terminated.
+     */
+    static RecordFramer delimited(byte delimiter) {
+        return new RecordFramer() {
+            @Override
+            public int frameLength(ByteBuffer buffer, int offset, boolean isEndOfInput) {
+                final int limit = buffer.limit();
+                for (int i = offset; i < limit; i++) {
+                    if (buffer.get(i) == delimiter) {
+                        return i - offset + 1;
+                    }
+                }
+                return isEndOfInput && limit > offset ? limit - offset : -1;
+            }
+
+            @Override
+            public ByteBuffer record(ByteBuffer buffer, int offset, int frameLength) {
+                final int end = offset + frameLength;
+                return MappedRecordSpliterator.slice(buffer, offset, buffer.get(end - 1) == delimiter ? frameLength - 1 : frameLength);
+            }
+
+            @Override
+            public boolean isSelfSynchronizing() {
+                return true;
+            }
+
+            @Override
+            public int nextFrame(ByteBuffer buffer, int offset) {
+                final int limit = buffer.limit();
+                for (int i = offset; i < limit; i++) {
+                    if (buffer.get(i) == delimiter) {
+                        return i + 1;
+                    }
+                }
+                return -1;
+            }
+        };
+    }
+}
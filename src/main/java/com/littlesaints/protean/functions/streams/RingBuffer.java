@@ -0,0 +1,253 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import com.littlesaints.protean.functions.maths.Mathematician;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <pre>
+ * A bounded, lock-free exchange backed by a preallocated array, whose capacity is a power of 2.
+ * It's an alternative to a {@link java.util.concurrent.BlockingQueue} for the exchange between the source and forked streams of a {@link ForkJoin}.
+ *
+ * - The hand-off doesn't allocate, unlike a linked queue that allocates a node per element.
+ * - The memory is bounded by the capacity, so a slow fork blocks the producer instead of growing the heap.
+ * - The producer and consumer counters are padded to avoid false-sharing.
+ * - Slots are indexed using {@link Mathematician#moduloForPowerOfTwo}.
+ *
+ * It supports multiple producers, e.g. a {@link ForkJoin} subscribed to a parallel stream, and multiple consumers.
+ * {@code null} elements are not permitted.
+ *
+ * Usage:
+ * {@code
+ *     ForkJoin<Integer, RingBuffer<Integer>> forkJoin = ForkJoin.<Integer>ofRingBuffer(1024)
+ *         .fork(stream -> stream.forEach(System.out::println));
+ *
+ *     // or, the equivalent
+ *     ForkJoin<Integer, RingBuffer<Integer>> forkJoin = ForkJoin.<Integer, RingBuffer<Integer>>of(() -> RingBuffer.of(1024),
+ *         q -> q::take, q -> q::put)
+ *         .fork(stream -> stream.forEach(System.out::println));
+ * }
+ * </pre>
+ *
+ * @param <T> the type of elements
+ * @author Varun Anand
+ * @see ForkJoin#ofRingBuffer(int)
+ * @since 1.2.4
+ */
+public class RingBuffer<T> implements BoundedExchange<T> {
+
+    private final int capacity;
+
+    private final WaitStrategy waitStrategy;
+
+    private final Object[] elements;
+
+    /**
+     * The sequence of each slot, which tells whether the slot can be written to or read from, for a position.
+     */
+    private final AtomicLongArray sequences;
+
+    private final Sequence head = new Sequence(0);
+
+    private final Sequence tail = new Sequence(0);
+
+    private RingBuffer(int capacity, WaitStrategy waitStrategy) {
+        validateCapacity(capacity);
+        this.capacity = capacity;
+        this.waitStrategy = Objects.requireNonNull(waitStrategy);
+        this.elements = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.lazySet(i, i);
+        }
+    }
+
+    /**
+     * Create a RingBuffer.
+     *
+     * @param capacity the number of slots, which must be a power of 2.
+     * @param <T> the type of elements
+     * @return a RingBuffer instance
+     */
+    public static <T> RingBuffer<T> of(int capacity) {
+        return new RingBuffer<>(capacity, WaitStrategy.DEFAULT);
+    }
+
+    /**
+     * Create a RingBuffer.
+     *
+     * @param capacity the number of slots, which must be a power of 2.
+     * @param waitStrategy the strategy to wait for a free slot in {@link #put(Object)} or an element in {@link #take()}.
+     * @param <T> the type of elements
+     * @return a RingBuffer instance
+     */
+    public static <T> RingBuffer<T> of(int capacity, WaitStrategy waitStrategy) {
+        return new RingBuffer<>(capacity, waitStrategy);
+    }
+
+    static void validateCapacity(int capacity) {
+        if (capacity < 1 || !Mathematician.isPowerOfTwo.test(capacity)) {
+            throw new IllegalArgumentException("capacity must be a power of 2 !!");
+        }
+    }
+
+    /**
+     * Insert an element, if there's a free slot.
+     *
+     * @param t the element
+     * @return true, if the element was inserted or false, if the buffer is full.
+     */
+    @Override
+    public boolean offer(T t) {
+        Objects.requireNonNull(t);
+        long position = tail.get();
+        while (true) {
+            final int index = index(position);
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[index] = t;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove the oldest element, if any.
+     *
+     * @return the element or {@code null}, if the buffer is empty.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long position = head.get();
+        while (true) {
+            final int index = index(position);
+            final long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    final T t = (T) elements[index];
+                    elements[index] = null;
+                    sequences.lazySet(index, position + capacity);
+                    return t;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * Remove the available elements, up to the given maximum, into the given collection.
+     * The contiguous run of available elements is claimed at once, instead of per element.
+     * </pre>
+     *
+     * @param collection the collection to add the elements to.
+     * @param maxElements the maximum number of elements to remove.
+     * @return the number of elements removed.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super T> collection, int maxElements) {
+        long position = head.get();
+        while (true) {
+            int available = 0;
+            while (available < maxElements && sequences.get(index(position + available)) == position + available + 1) {
+                available++;
+            }
+            if (available == 0) {
+                if (sequences.get(index(position)) - (position + 1) < 0) {
+                    return 0;
+                }
+                position = head.get();
+            } else if (head.compareAndSet(position, position + available)) {
+                for (int i = 0; i < available; i++) {
+                    final int index = index(position + i);
+                    collection.add((T) elements[index]);
+                    elements[index] = null;
+                    sequences.lazySet(index, position + i + capacity);
+                }
+                return available;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Insert an element, waiting for a free slot if the buffer is full.
+     *
+     * @param t the element
+     */
+    public void put(T t) {
+        for (int tries = 0; !offer(t); ) {
+            tries = waitStrategy.idle(tries);
+        }
+    }
+
+    /**
+     * Remove the oldest element, waiting for one if the buffer is empty.
+     *
+     * @return the element or {@code null}, if the thread is interrupted while waiting. The interrupt status is retained.
+     */
+    public T take() {
+        T t;
+        for (int tries = 0; (t = poll()) == null; ) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            tries = waitStrategy.idle(tries);
+        }
+        return t;
+    }
+
+    public int size() {
+        final long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private int index(long position) {
+        return Mathematician.moduloForPowerOfTwo.applyAsInt((int) position, capacity);
+    }
+}
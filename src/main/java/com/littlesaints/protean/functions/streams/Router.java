@@ -0,0 +1,330 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import com.littlesaints.protean.functions.maths.Mathematician;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * <pre>
+ * An immutable routing table of a {@link ForkJoin}, compiled from it's forks.
+ *
+ * - Forks without a predicate are written to unconditionally.
+ * - Forks sharing the same predicate instance, evaluate it once.
+ * - Forks configured with a key are looked up by the extracted key, instead of testing each of them.
+ * - Partitioned forks are selected by the hash of the extracted key.
+ *
+ * Routing an input doesn't allocate. Adding or removing a route creates a new table, leaving this one untouched.
+ * </pre>
+ *
+ * @author Varun Anand
+ * @since 1.2.4
+ */
+final class Router<T> implements Consumer<T> {
+
+    private static final Predicate<Object> ALWAYS = t -> true;
+
+    private static final Router<Object> EMPTY = new Router<>(newArray(Consumer.class, 0), newArray(Predicate.class, 0),
+        newArray(Consumer[].class, 0), newArray(KeyRoute.class, 0), newArray(PartitionRoute.class, 0));
+
+    private final Consumer<T>[] unconditional;
+
+    private final Predicate<T>[] predicates;
+
+    private final Consumer<T>[][] writers;
+
+    private final KeyRoute<T, ?>[] keyRoutes;
+
+    private final PartitionRoute<T>[] partitionRoutes;
+
+    private Router(Consumer<T>[] unconditional, Predicate<T>[] predicates, Consumer<T>[][] writers, KeyRoute<T, ?>[] keyRoutes,
+                   PartitionRoute<T>[] partitionRoutes) {
+        this.unconditional = unconditional;
+        this.predicates = predicates;
+        this.writers = writers;
+        this.keyRoutes = keyRoutes;
+        this.partitionRoutes = partitionRoutes;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Router<T> empty() {
+        return (Router<T>) EMPTY;
+    }
+
+    /**
+     * @return the predicate of forks that match every input.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Predicate<T> always() {
+        return (Predicate<T>) ALWAYS;
+    }
+
+    @Override
+    public void accept(T t) {
+        for (Consumer<T> writer : unconditional) {
+            writer.accept(t);
+        }
+        final Predicate<T>[] predicates = this.predicates;
+        for (int i = 0; i < predicates.length; i++) {
+            if (predicates[i].test(t)) {
+                for (Consumer<T> writer : writers[i]) {
+                    writer.accept(t);
+                }
+            }
+        }
+        for (KeyRoute<T, ?> keyRoute : keyRoutes) {
+            keyRoute.accept(t);
+        }
+        for (PartitionRoute<T> partitionRoute : partitionRoutes) {
+            partitionRoute.accept(t);
+        }
+    }
+
+    /**
+     * @return a new routing table with the given route added.
+     */
+    Router<T> withRoute(Predicate<T> predicate, Consumer<T> writer) {
+        if (predicate == ALWAYS) {
+            return new Router<>(append(unconditional, writer), predicates, writers, keyRoutes, partitionRoutes);
+        }
+        for (int i = 0; i < predicates.length; i++) {
+            if (predicates[i] == predicate) {
+                final Consumer<T>[][] updated = Arrays.copyOf(writers, writers.length);
+                updated[i] = append(writers[i], writer);
+                return new Router<>(unconditional, predicates, updated, keyRoutes, partitionRoutes);
+            }
+        }
+        final Consumer<T>[] newWriters = append(newArray(Consumer.class, 0), writer);
+        return new Router<>(unconditional, append(predicates, predicate), append(writers, newWriters), keyRoutes, partitionRoutes);
+    }
+
+    /**
+     * @return a new routing table with the given route, for inputs whose extracted key equals the given key, added.
+     */
+    @SuppressWarnings("unchecked")
+    <K> Router<T> withKeyRoute(Function<T, K> keyExtractor, K key, Consumer<T> writer) {
+        for (int i = 0; i < keyRoutes.length; i++) {
+            if (keyRoutes[i].keyExtractor == keyExtractor) {
+                final KeyRoute<T, ?>[] updated = Arrays.copyOf(keyRoutes, keyRoutes.length);
+                updated[i] = ((KeyRoute<T, K>) keyRoutes[i]).with(key, writer);
+                return new Router<>(unconditional, predicates, writers, updated, partitionRoutes);
+            }
+        }
+        return new Router<>(unconditional, predicates, writers,
+            append(keyRoutes, new KeyRoute<>(keyExtractor, new HashMap<>()).with(key, writer)), partitionRoutes);
+    }
+
+    /**
+     * @return a new routing table with a route to exactly one of the given writers, selected by the hash of the extracted key, added.
+     */
+    Router<T> withPartitionRoute(Function<T, ?> keyExtractor, Consumer<T>[] writers) {
+        return new Router<>(unconditional, predicates, this.writers, keyRoutes,
+            append(partitionRoutes, new PartitionRoute<>(keyExtractor, writers)));
+    }
+
+    /**
+     * A partition of a partitioned route isn't removed, as it would remap the keys of the others.
+     * Instead, it's writer is replaced by one discarding the inputs, and the route is removed once all of it's partitions are discarded.
+     *
+     * @return a new routing table without the routes to the given writer.
+     */
+    Router<T> without(Consumer<T> writer) {
+        final List<Predicate<T>> remainingPredicates = new ArrayList<>(predicates.length);
+        final List<Consumer<T>[]> remainingWriters = new ArrayList<>(predicates.length);
+        for (int i = 0; i < predicates.length; i++) {
+            final Consumer<T>[] updated = remove(withoutPartition(writers[i], writer), writer);
+            if (updated.length > 0) {
+                remainingPredicates.add(predicates[i]);
+                remainingWriters.add(updated);
+            }
+        }
+        final List<KeyRoute<T, ?>> remainingKeyRoutes = new ArrayList<>(keyRoutes.length);
+        for (KeyRoute<T, ?> keyRoute : keyRoutes) {
+            final KeyRoute<T, ?> updated = keyRoute.without(writer);
+            if (updated.size() > 0) {
+                remainingKeyRoutes.add(updated);
+            }
+        }
+        final List<PartitionRoute<T>> remainingPartitionRoutes = new ArrayList<>(partitionRoutes.length);
+        for (PartitionRoute<T> partitionRoute : partitionRoutes) {
+            final PartitionRoute<T> updated = partitionRoute.without(writer);
+            if (updated != null) {
+                remainingPartitionRoutes.add(updated);
+            }
+        }
+        return new Router<>(remove(withoutPartition(unconditional, writer), writer),
+            remainingPredicates.toArray(newArray(Predicate.class, 0)), remainingWriters.toArray(newArray(Consumer[].class, 0)),
+            remainingKeyRoutes.toArray(newArray(KeyRoute.class, 0)), remainingPartitionRoutes.toArray(newArray(PartitionRoute.class, 0)));
+    }
+
+    /**
+     * @return the given writers, with the partitioned writers (e.g. of a sub-partitioned fork) updated to discard the inputs of the given writer,
+     * and removed once all of their partitions are discarded.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Consumer<T>[] withoutPartition(Consumer<T>[] writers, Consumer<T> writer) {
+        final List<Consumer<T>> updated = new ArrayList<>(writers.length);
+        for (Consumer<T> w : writers) {
+            if (w instanceof PartitionRoute) {
+                final PartitionRoute<T> partitionRoute = ((PartitionRoute<T>) w).without(writer);
+                if (partitionRoute != null) {
+                    updated.add(partitionRoute);
+                }
+            } else {
+                updated.add(w);
+            }
+        }
+        return updated.toArray(newArray(Consumer.class, 0));
+    }
+
+    /**
+     * @return a writer to exactly one of the given writers, selected by the hash of the extracted key.
+     */
+    static <T> Consumer<T> partitioned(Function<T, ?> keyExtractor, Consumer<T>[] writers) {
+        return new PartitionRoute<>(keyExtractor, writers);
+    }
+
+    /**
+     * @return the partition of the given key, among the given number of partitions.
+     */
+    static int partitionOf(Object key, int partitions) {
+        final int hash = Mathematician.mixHash.applyAsInt(Objects.hashCode(key));
+        return Mathematician.isPowerOfTwo.test(partitions)
+            ? Mathematician.moduloForPowerOfTwo.applyAsInt(hash, partitions)
+            : Mathematician.reduceToRange.applyAsInt(hash, partitions);
+    }
+
+    /**
+     * @return the number of routes.
+     */
+    int size() {
+        return unconditional.length
+            + Arrays.stream(writers).mapToInt(w -> w.length).sum()
+            + Arrays.stream(keyRoutes).mapToInt(KeyRoute::size).sum()
+            + Arrays.stream(partitionRoutes).mapToInt(PartitionRoute::size).sum();
+    }
+
+    static <E> E[] append(E[] array, E e) {
+        final E[] updated = Arrays.copyOf(array, array.length + 1);
+        updated[array.length] = e;
+        return updated;
+    }
+
+    private static <E> E[] remove(E[] array, E e) {
+        return Arrays.stream(array).filter(element -> element != e)
+            .toArray(length -> newArray(array.getClass().getComponentType(), length));
+    }
+
+    /**
+     * @return a new array of the given component type, e.g. of a generic type like {@code Consumer<T>}, which can't be created directly.
+     */
+    @SuppressWarnings("unchecked")
+    static <E> E[] newArray(Class<?> componentType, int length) {
+        return (E[]) Array.newInstance(componentType, length);
+    }
+
+    private static final class KeyRoute<T, K> implements Consumer<T> {
+
+        private final Function<T, K> keyExtractor;
+
+        private final Map<K, Consumer<T>[]> writers;
+
+        private KeyRoute(Function<T, K> keyExtractor, Map<K, Consumer<T>[]> writers) {
+            this.keyExtractor = keyExtractor;
+            this.writers = writers;
+        }
+
+        @Override
+        public void accept(T t) {
+            final Consumer<T>[] matches = writers.get(keyExtractor.apply(t));
+            if (matches != null) {
+                for (Consumer<T> writer : matches) {
+                    writer.accept(t);
+                }
+            }
+        }
+
+        private KeyRoute<T, K> with(K key, Consumer<T> writer) {
+            Objects.requireNonNull(key);
+            final Map<K, Consumer<T>[]> updated = new HashMap<>(writers);
+            updated.merge(key, append(newArray(Consumer.class, 0), writer), (current, added) -> append(current, writer));
+            return new KeyRoute<>(keyExtractor, updated);
+        }
+
+        private KeyRoute<T, K> without(Consumer<T> writer) {
+            final Map<K, Consumer<T>[]> updated = new HashMap<>(writers);
+            updated.replaceAll((key, current) -> remove(current, writer));
+            updated.values().removeIf(current -> current.length == 0);
+            return new KeyRoute<>(keyExtractor, updated);
+        }
+
+        private int size() {
+            return writers.values().stream().mapToInt(w -> w.length).sum();
+        }
+    }
+
+    private static final class PartitionRoute<T> implements Consumer<T> {
+
+        private static final Consumer<Object> DISCARD = t -> {};
+
+        private final Function<T, ?> keyExtractor;
+
+        private final Consumer<T>[] writers;
+
+        private PartitionRoute(Function<T, ?> keyExtractor, Consumer<T>[] writers) {
+            this.keyExtractor = keyExtractor;
+            this.writers = writers;
+        }
+
+        @Override
+        public void accept(T t) {
+            writers[partitionOf(keyExtractor.apply(t), writers.length)].accept(t);
+        }
+
+        /**
+         * @return this route, if the given writer isn't one of it's partitions, or a new route with the partition discarding it's inputs,
+         * or {@code null}, if all the partitions are discarded.
+         */
+        @SuppressWarnings("unchecked")
+        private PartitionRoute<T> without(Consumer<T> writer) {
+            if (Arrays.stream(writers).noneMatch(w -> w == writer)) {
+                return this;
+            }
+            final Consumer<T>[] updated = Arrays.stream(writers).map(w -> w == writer ? (Consumer<T>) DISCARD : w)
+                .toArray(length -> newArray(Consumer.class, length));
+            return Arrays.stream(updated).allMatch(w -> w == DISCARD) ? null : new PartitionRoute<>(keyExtractor, updated);
+        }
+
+        private int size() {
+            return (int) Arrays.stream(writers).filter(w -> w != DISCARD).count();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * <pre>
+ * A counter padded on both sides to occupy it's own cache line(s).
+ * It avoids false-sharing between the producer and consumer counters of an exchange, which are updated by different threads.
+ * </pre>
+ *
+ * @author Varun Anand
+ * @since 1.2.4
+ */
+final class Sequence extends SequenceValue {
+
+    @SuppressWarnings("unused")
+    private long p9, p10, p11, p12, p13, p14, p15;
+
+    private static final AtomicLongFieldUpdater<SequenceValue> UPDATER =
+        AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+    Sequence(long initialValue) {
+        UPDATER.lazySet(this, initialValue);
+    }
+
+    long get() {
+        return value;
+    }
+
+    void set(long value) {
+        this.value = value;
+    }
+
+    /**
+     * Ordered write, which is cheaper than a volatile write and sufficient for a single writer.
+     */
+    void lazySet(long value) {
+        UPDATER.lazySet(this, value);
+    }
+
+    boolean compareAndSet(long expected, long value) {
+        return UPDATER.compareAndSet(this, expected, value);
+    }
+
+    long getAndAdd(long delta) {
+        return UPDATER.getAndAdd(this, delta);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
+}
+
+@SuppressWarnings("unused")
+abstract class SequenceLhsPadding {
+    private long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class SequenceValue extends SequenceLhsPadding {
+    protected volatile long value;
+}
@@ -21,12 +21,38 @@
 package com.littlesaints.protean.functions.streams;
 
 import lombok.Builder;
-import lombok.NonNull;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
@@ -43,6 +69,93 @@ import java.util.stream.StreamSupport;
  *
  * 1. providing a {@link Predicate} {@link #doWhile}. This will be checked before every call to {@link #provider}, to get the next element for the stream.
  * 2. invoking {@link Stream#close()}. This feature is not available in streams created by {@link Stream#generate(Supplier)}.
+ * 3. providing a {@link Predicate} {@link #endOfStream}, to recognize an element from the {@link #provider} that marks the end of the stream.
+ *    The marker itself isn't part of the stream. e.g. a 'poison pill' sent by the producer of a queue.
+ *
+ * Instead of a {@link #provider}, the application can provide a {@link #batchProvider}, which adds the next batch of elements to a reusable list.
+ * e.g. {@code batch -> queue.drainTo(batch, 256)}, to pay the synchronization of the source once per batch instead of once per element.
+ * The stream ends upon an empty batch. {@link #doWhile} and {@link Stream#close()} are checked once per batch, by terminal operations like {@link Stream#forEach(Consumer)}.
+ *
+ * If a {@link #waitStrategy} is provided, the {@link #provider} (or {@link #batchProvider}) is polled instead i.e. a {@code null} element (or an empty batch)
+ * means that there's none available yet. The source then waits as per the {@link WaitStrategy}, before trying again.
+ * The stream ends, if it's closed or the thread is interrupted while waiting.
+ * To consume many such providers, e.g. the partitions of a message broker, with a single stream, they can be merged by a {@link MergedProvider}.
+ *
+ * Parallelism:
+ *
+ * By default, the {@link #provider} (or {@link #batchProvider}) isn't required to be thread-safe, hence the stream isn't split
+ * i.e. it's processed by a single thread, even if {@link Stream#parallel()} is invoked.
+ *
+ * If {@link #parallel} is set, the stream is parallel and is split into {@link #parallelism} parts, which the common {@link ForkJoinPool} processes concurrently.
+ * Every part pulls it's own elements (or batches) from the {@link #provider} (or {@link #batchProvider}), which <b>must</b> be thread-safe.
+ * A {@link #batchProvider} is recommended, so that the parts contend on the source once per batch.
+ * The end of the stream is recognized by any part, upon which all the parts stop.
+ * Note that {@link #doWhile} isn't checked atomically with the {@link #provider}, hence it's better to end the stream via the source itself,
+ * e.g. a {@code null} element and {@code endOfStream(Objects::isNull)}, or an empty batch.
+ *
+ * Usage:
+ *
+ * {@code
+ * StreamSource.<Row>builder().batchProvider(batch -> queue.drainTo(batch, 256)).parallel(true).build().get().map(this::parse)...
+ * }
+ *
+ * Read-ahead:
+ *
+ * If the {@link #provider} (or {@link #batchProvider}) does I/O, e.g. a socket read or a poll of a message broker, the stream would be idle during every fetch.
+ * If {@link #readAhead} is set, {@link #fetchers} background threads (created by the {@link #threadFactory}) fetch the elements into a buffer of that capacity,
+ * ahead of the stream. Hence, the latency of the fetches overlaps with the processing of the elements fetched before.
+ * The fetchers check {@link #doWhile}, {@link #endOfStream} and the {@link #waitStrategy}, while the stream ends after consuming all the elements buffered.
+ * If there are more than 1 fetchers, the {@link #provider} (or {@link #batchProvider}) <b>must</b> be thread-safe, and the order of the elements isn't kept.
+ * If the {@link #provider} throws an exception, the fetchers stop and the exception is thrown by the stream, after the elements buffered.
+ * The fetchers stop upon {@link #close()} or {@link Stream#close()}. Hence, a stream that's short-circuited, e.g. by {@link Stream#limit(long)}, should be closed.
+ * Every {@link #get()} starts it's own fetchers and buffer, which end with it's stream. Closing the stream stops only them, so the source can be streamed again.
+ *
+ * {@code
+ * try (Stream<Message> messages = StreamSource.<Message>builder().provider(consumer::receive).readAhead(1024).fetchers(2).build().get()) {
+ *     messages.forEach(this::process);
+ * }
+ * }
+ *
+ * Asynchronous requests:
+ *
+ * If the source is asynchronous, e.g. a client returning a {@link CompletableFuture}, an {@link #asyncProvider} keeps up to {@link #maxOutstanding} requests outstanding,
+ * instead of waiting for every request before sending the next one. The results are streamed in the order of the requests, or in the order of their completion,
+ * if {@link #ordered} is false. {@link #doWhile} is checked before every request, and the requests stop upon a {@code null} {@link CompletionStage}.
+ * A failed request fails the stream, with the cause of the failure. The outstanding requests are abandoned, if the stream is closed.
+ * The {@link #asyncProvider} takes precedence over the {@link #provider}, and the stream isn't split.
+ *
+ * {@code
+ * StreamSource.<Quote>builder().asyncProvider(() -> client.nextQuote()).maxOutstanding(32).build().get().forEach(this::price);
+ * }
+ *
+ * Rate limit and time bounds:
+ *
+ * If a {@link #rateLimit} is set, the elements are pulled at up to that many per second, with bursts of up to {@link #burst} elements,
+ * e.g. to protect a downstream service. The stream waits for the next element by parking, instead of polling a clock.
+ * If a {@link #maxDuration} is set, the stream ends once it's elapsed since {@link #get()}, e.g. for a bounded micro-batch job.
+ * If an {@link #idleTimeout} is set, the stream ends once it's elapsed while waiting for the source, i.e. the time spent processing the elements
+ * or waiting for the {@link #rateLimit} isn't idle time.
+ * The time bounds are checked before pulling an element, and while waiting as per the {@link #waitStrategy}, the read-ahead buffer or the {@link #asyncProvider}.
+ * However, a blocking {@link #provider} isn't interrupted.
+ *
+ * {@code
+ * StreamSource.<Event>builder().provider(queue::poll).waitStrategy(WaitStrategy.DEFAULT)
+ *     .rateLimit(500).burst(50).maxDuration(Duration.ofMinutes(5)).idleTimeout(Duration.ofSeconds(30))
+ *     .build().get().forEach(downstream::send);
+ * }
+ *
+ * Files:
+ *
+ * {@link #ofMappedFile(Path, RecordFramer)} streams the records of a file, as framed by a {@link RecordFramer}, e.g. length-prefixed or newline-delimited.
+ * The file is memory mapped in windows, and the records are slices of the windows, i.e. they're not copied.
+ * The stream can be processed in parallel, as it's split on the boundaries of the records.
+ *
+ * {@code
+ * try (Stream<String> lines = StreamSource.ofMappedFile(Paths.get("events.log"), RecordFramer.newlineDelimited(),
+ *     record -> StandardCharsets.UTF_8.decode(record).toString())) {
+ *     lines.parallel().map(this::parse).forEach(this::replay);
+ * }
+ * }
  * </pre>
  *
  * @author Varun Anand
@@ -51,54 +164,604 @@ import java.util.stream.StreamSupport;
 @Builder
 public class StreamSource<T> implements Supplier<Stream<T>>, AutoCloseable {
 
-    @NonNull
+    static final Supplier<Boolean> ALWAYS = () -> Boolean.TRUE;
+
+    private static final Predicate<Object> NEVER = t -> false;
+
+    /**
+     * The marker of the end of the elements of a read-ahead buffer, or of the requests of an {@link #asyncProvider}.
+     */
+    private static final Object END_OF_SOURCE = new Object();
+
+    private static final long POLL_MILLIS = 100;
+
     private final Supplier<T> provider;
 
+    private final Consumer<List<T>> batchProvider;
+
     @Builder.Default
-    private final Supplier<Boolean> doWhile = () -> Boolean.TRUE;
+    private final Supplier<Boolean> doWhile = ALWAYS;
 
     @Builder.Default
     private final int parallelism = ForkJoinPool.getCommonPoolParallelism();
 
+    @Builder.Default
+    private final boolean parallel = false;
+
     private final AtomicBoolean isClosing = new AtomicBoolean(false);
 
     @Builder.Default
     private final int characteristics = 0;
 
+    @Builder.Default
+    private final Predicate<T> endOfStream = never();
+
+    private final WaitStrategy waitStrategy;
+
+    @Builder.Default
+    private final int readAhead = 0;
+
+    @Builder.Default
+    private final int fetchers = 1;
+
+    @Builder.Default
+    private final ThreadFactory threadFactory = ThreadFactories.platform("stream-source-fetcher-", true);
+
+    private final Supplier<? extends CompletionStage<T>> asyncProvider;
+
+    @Builder.Default
+    private final int maxOutstanding = 16;
+
+    @Builder.Default
+    private final boolean ordered = true;
+
+    @Builder.Default
+    private final double rateLimit = 0;
+
+    @Builder.Default
+    private final int burst = 1;
+
+    private final Duration maxDuration;
+
+    private final Duration idleTimeout;
+
+    private final AtomicLong startNanos = new AtomicLong();
+
+    private final AtomicLong lastElementNanos = new AtomicLong();
+
     private class _Spliterator implements Spliterator<T> {
 
-        private final Predicate<Consumer<? super T>> advanceAction = action -> {
-            if (doWhile.get()) {
-                action.accept(provider.get());
-                return !isClosing.get();
+        private final List<T> batch = batchProvider == null ? null : new ArrayList<>();
+
+        private int next;
+
+        /**
+         * The number of splits remaining, shared by all the parts of the stream, or {@code null} if it isn't {@link #parallel}.
+         */
+        private final AtomicInteger splits;
+
+        private _Spliterator(AtomicInteger splits) {
+            this.splits = splits;
+        }
+
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (batch == null) {
+                return advance(action);
+            }
+            if (next == batch.size() && !nextBatch()) {
+                return false;
+            }
+            final T t = batch.get(next++);
+            if (isEndOfStream(t)) {
+                endOfBatches();
+                return false;
+            }
+            action.accept(t);
+            return !isClosing.get();
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (batch == null) {
+                if (waitStrategy != null) {
+                    while (advance(action)) ;
+                    return;
+                }
+                while (isDoWhile()) {
+                    final T t = provider.get();
+                    if (isEndOfStream(t)) {
+                        close();
+                        return;
+                    }
+                    action.accept(t);
+                    if (isClosing.get()) {
+                        return;
+                    }
+                }
+                return;
+            }
+            do {
+                final List<T> batch = this.batch;
+                while (next < batch.size()) {
+                    final T t = batch.get(next++);
+                    if (isEndOfStream(t)) {
+                        endOfBatches();
+                        return;
+                    }
+                    action.accept(t);
+                }
+            } while (!isClosing.get() && nextBatch());
+        }
+
+        private boolean advance(Consumer<? super T> action) {
+            if (!isDoWhile()) {
+                return false;
+            }
+            final T t = waitStrategy == null ? provider.get() : poll();
+            if (t == null && waitStrategy != null || isEndOfStream(t)) {
+                close();
+                return false;
+            }
+            action.accept(t);
+            return !isClosing.get();
+        }
+
+        private boolean nextBatch() {
+            batch.clear();
+            next = 0;
+            return !isClosing.get() && isDoWhile() && fill(batch);
+        }
+
+        private void endOfBatches() {
+            next = batch.size();
+            close();
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            return splits != null && splits.getAndDecrement() > 0 ? new _Spliterator(splits) : null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return characteristics;
+        }
+    }
+
+    /**
+     * The buffer filled by the fetchers ahead of the stream, which is the {@link #batchProvider} of the stream's own {@link StreamSource}.
+     */
+    private class ReadAhead implements Consumer<List<T>> {
+
+        private final BlockingQueue<Object> buffer = new ArrayBlockingQueue<>(readAhead);
+
+        private final AtomicBoolean isFetched = new AtomicBoolean(false);
+
+        /**
+         * Whether the stream of this buffer is closed, which stops it's fetchers, but not the fetchers of another {@link #get()}.
+         */
+        private final AtomicBoolean isStreamClosed = new AtomicBoolean(false);
+
+        private final AtomicInteger activeFetchers = new AtomicInteger(fetchers);
+
+        private volatile RuntimeException failure;
+
+        private ReadAhead() {
+            for (int i = 0; i < fetchers; i++) {
+                threadFactory.newThread(this::fetch).start();
+            }
+        }
+
+        private void fetch() {
+            try {
+                final List<T> batch = batchProvider == null ? null : new ArrayList<>();
+                while (!isFetched.get() && !isClosed() && fetchNext(batch)) ;
+            } catch (RuntimeException e) {
+                failure = e;
+                isFetched.set(true);
+            } finally {
+                if (activeFetchers.decrementAndGet() == 0) {
+                    offer(END_OF_SOURCE);
+                }
+            }
+        }
+
+        /**
+         * @return true, if the next element (or batch) was fetched and buffered.
+         */
+        private boolean fetchNext(List<T> batch) {
+            if (!isDoWhile()) {
+                return endOfFetch();
+            }
+            if (batch == null) {
+                final T t = waitStrategy == null ? provider.get() : poll();
+                return t == null && waitStrategy != null || isEndOfStream(t) ? endOfFetch() : offer(t);
+            }
+            batch.clear();
+            if (!fill(batch)) {
+                return endOfFetch();
+            }
+            for (T t : batch) {
+                if (isEndOfStream(t)) {
+                    return endOfFetch();
+                }
+                if (!offer(t)) {
+                    return false;
+                }
             }
+            return true;
+        }
+
+        private boolean endOfFetch() {
+            isFetched.set(true);
             return false;
-        };
+        }
+
+        /**
+         * @return true, if the element was buffered, or false if closed or interrupted while waiting for space.
+         */
+        private boolean offer(Object t) {
+            try {
+                while (!buffer.offer(t, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (isClosed()) {
+                        return false;
+                    }
+                }
+                markActive();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private boolean isClosed() {
+            return isStreamClosed.get() || isClosedOrElapsed();
+        }
+
+        private void closeStream() {
+            isStreamClosed.set(true);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void accept(List<T> batch) {
+            try {
+                Object t;
+                while ((t = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    if (isStopped()) {
+                        return;
+                    }
+                }
+                batch.add((T) t);
+                buffer.drainTo((Collection<Object>) batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private boolean isEndOfSource(T t) {
+            if (t != END_OF_SOURCE) {
+                return false;
+            }
+            // the marker is put back for the other parts of a parallel stream, which are waiting for the next batch.
+            buffer.offer(END_OF_SOURCE);
+            if (failure != null) {
+                throw failure;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The provider of the results of the {@link #asyncProvider}'s requests, which keeps up to {@link #maxOutstanding} of them outstanding.
+     */
+    private class AsyncProvider implements Supplier<T> {
+
+        /**
+         * The outstanding requests in the order of the requests, if {@link #ordered}.
+         */
+        private final Queue<CompletableFuture<T>> requested = new ArrayDeque<>();
+
+        /**
+         * The completed requests in the order of their completion, if not {@link #ordered}.
+         */
+        private final BlockingQueue<CompletableFuture<T>> completed = new LinkedBlockingQueue<>();
+
+        private int outstanding;
+
+        private boolean isExhausted;
 
-        private int estimatedSize;
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get() {
+            request();
+            if (outstanding == 0) {
+                return (T) END_OF_SOURCE;
+            }
+            final CompletableFuture<T> result;
+            try {
+                result = ordered ? awaitNext() : awaitAny();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return (T) END_OF_SOURCE;
+            }
+            if (result == null) {
+                return (T) END_OF_SOURCE;
+            }
+            outstanding--;
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
 
-        private _Spliterator(int estimatedSize) {
-            this.estimatedSize = estimatedSize;
+        private void request() {
+            while (!isExhausted && outstanding < maxOutstanding && !isClosedOrElapsed()) {
+                final CompletionStage<T> stage = isDoWhile() ? asyncProvider.get() : null;
+                if (stage == null) {
+                    isExhausted = true;
+                    return;
+                }
+                final CompletableFuture<T> future = new CompletableFuture<>();
+                outstanding++;
+                if (ordered) {
+                    requested.add(future);
+                } else {
+                    future.whenComplete((t, e) -> completed.add(future));
+                }
+                stage.whenComplete((t, e) -> {
+                    if (e == null) {
+                        future.complete(t);
+                    } else {
+                        future.completeExceptionally(e);
+                    }
+                });
+            }
         }
 
+        /**
+         * @return the earliest request, once it completes, or {@code null} if closed while waiting.
+         */
+        private CompletableFuture<T> awaitNext() throws InterruptedException {
+            final CompletableFuture<T> next = requested.peek();
+            while (!next.isDone()) {
+                if (isStopped()) {
+                    return null;
+                }
+                try {
+                    next.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException | CancellationException | TimeoutException e) {
+                    // the completion is checked by the loop.
+                }
+            }
+            return requested.poll();
+        }
+
+        /**
+         * @return the next request to complete, or {@code null} if closed while waiting.
+         */
+        private CompletableFuture<T> awaitAny() throws InterruptedException {
+            CompletableFuture<T> next;
+            while ((next = completed.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                if (isStopped()) {
+                    return null;
+                }
+            }
+            return next;
+        }
+    }
+
+    /**
+     * The spliterator enforcing the {@link #rateLimit} and time bounds, upon the spliterator of the stream.
+     */
+    private class _BoundedSpliterator implements Spliterator<T> {
+
+        private final Spliterator<T> spliterator;
+
+        private final TokenBucket tokenBucket;
+
+        private _BoundedSpliterator(Spliterator<T> spliterator, TokenBucket tokenBucket) {
+            this.spliterator = spliterator;
+            this.tokenBucket = tokenBucket;
+        }
+
+        @Override
         public boolean tryAdvance(Consumer<? super T> action) {
-            return advanceAction.test(action);
+            if (isStopped() || tokenBucket != null && !tokenBucket.acquire(StreamSource.this::isClosedOrElapsed)) {
+                close();
+                return false;
+            }
+            if (tokenBucket != null) {
+                // the wait for a token isn't idle time of the source.
+                markActive();
+            }
+            return spliterator.tryAdvance(t -> {
+                action.accept(t);
+                // the processing of an element isn't idle time of the source either.
+                markActive();
+            });
+        }
+
+        /**
+         * <pre>
+         * Without a {@link #rateLimit}, the elements are pulled by the {@link Spliterator#forEachRemaining(Consumer)} of the stream's spliterator,
+         * e.g. a batch at a time, while the time bounds are checked after every element, i.e. before pulling the next one.
+         * The rest of a batch, pulled before the stream was stopped, is skipped as by {@link #tryAdvance(Consumer)}.
+         * With a {@link #rateLimit}, every element waits for a token, so they're pulled one at a time.
+         * </pre>
+         */
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (tokenBucket != null) {
+                while (tryAdvance(action)) ;
+                return;
+            }
+            if (isStopped()) {
+                close();
+                return;
+            }
+            spliterator.forEachRemaining(t -> {
+                if (isClosing.get()) {
+                    return;
+                }
+                action.accept(t);
+                markActive();
+                if (isStopped()) {
+                    close();
+                }
+            });
         }
 
         @Override
         public Spliterator<T> trySplit() {
-            return new _Spliterator(--estimatedSize);
+            final Spliterator<T> split = spliterator.trySplit();
+            return split == null ? null : new _BoundedSpliterator(split, tokenBucket);
         }
 
         @Override
         public long estimateSize() {
-            return estimatedSize;
+            return spliterator.estimateSize();
         }
 
         @Override
         public int characteristics() {
-            return characteristics;
+            return spliterator.characteristics();
+        }
+    }
+
+    /**
+     * @return true, if the source is closed, or a time bound has elapsed. It's checked while waiting for the source.
+     */
+    private boolean isStopped() {
+        return isClosedOrElapsed() || idleTimeout != null && System.nanoTime() - lastElementNanos.get() >= idleTimeout.toNanos();
+    }
+
+    /**
+     * @return true, if the source is closed, or the {@link #maxDuration} has elapsed.
+     * It's checked while waiting for anything but the source, e.g. a token or the consumer of the read-ahead buffer, as it's not idle time.
+     */
+    private boolean isClosedOrElapsed() {
+        return isClosing.get() || maxDuration != null && System.nanoTime() - startNanos.get() >= maxDuration.toNanos();
+    }
+
+    /**
+     * Restart the {@link #idleTimeout}, as the stream isn't waiting for the source.
+     */
+    private void markActive() {
+        if (idleTimeout != null) {
+            lastElementNanos.set(System.nanoTime());
+        }
+    }
+
+    /**
+     * The defaults of {@link #doWhile} and {@link #endOfStream} are skipped, instead of being invoked for every element.
+     */
+    private boolean isDoWhile() {
+        return doWhile == ALWAYS || doWhile.get();
+    }
+
+    private boolean isEndOfStream(T t) {
+        return endOfStream != NEVER && endOfStream.test(t);
+    }
+
+    /**
+     * @return true, if the {@link #batchProvider} added the next batch of elements to the given list, waiting as per the {@link #waitStrategy} for one.
+     */
+    private boolean fill(List<T> batch) {
+        batchProvider.accept(batch);
+        if (waitStrategy != null) {
+            for (int tries = 0; batch.isEmpty(); batchProvider.accept(batch)) {
+                if (isStopped() || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                tries = waitStrategy.idle(tries);
+            }
+        }
+        return !batch.isEmpty();
+    }
+
+    /**
+     * @return the next element from the {@link #provider}, waiting as per the {@link #waitStrategy} for one,
+     * or {@code null} if closed or interrupted while waiting.
+     */
+    private T poll() {
+        T t;
+        for (int tries = 0; (t = provider.get()) == null; ) {
+            if (isStopped() || Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            tries = waitStrategy.idle(tries);
+        }
+        return t;
+    }
+
+    /**
+     * Create a stream of the records in a file, read through memory mapped windows of 64 MB.
+     *
+     * @param file the file.
+     * @param framer the framer of the records in the file.
+     * @return a stream of the records, as read-only slices of the mapped windows. It should be closed, to close the file.
+     * @throws UncheckedIOException if the file can't be opened.
+     * @see #ofMappedFile(Path, RecordFramer, int)
+     */
+    public static Stream<ByteBuffer> ofMappedFile(Path file, RecordFramer framer) {
+        return ofMappedFile(file, framer, MappedRecordSpliterator.DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Create a stream of the records in a file, decoded from the bytes of the records.
+     *
+     * @param file the file.
+     * @param framer the framer of the records in the file.
+     * @param decoder the function to decode a record. The record's buffer shouldn't be retained, unless it's intended to keep the window mapped.
+     * @param <T> the type of decoded records
+     * @return a stream of the decoded records. It should be closed, to close the file.
+     * @throws UncheckedIOException if the file can't be opened.
+     */
+    public static <T> Stream<T> ofMappedFile(Path file, RecordFramer framer, Function<ByteBuffer, T> decoder) {
+        return ofMappedFile(file, framer).map(decoder);
+    }
+
+    /**
+     * Create a stream of the records in a file, read through memory mapped windows of the given size.
+     *
+     * @param file the file.
+     * @param framer the framer of the records in the file.
+     * @param windowSize the size of a mapped window, which must be larger than the largest frame in the file.
+     * @return a stream of the records, as read-only slices of the mapped windows. It should be closed, to close the file.
+     * @throws UncheckedIOException if the file can't be opened.
+     */
+    public static Stream<ByteBuffer> ofMappedFile(Path file, RecordFramer framer, int windowSize) {
+        Objects.requireNonNull(framer, "framer");
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be >= 1 !!");
         }
+        try {
+            final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            final long size = channel.size();
+            return StreamSupport.stream(new MappedRecordSpliterator(channel, framer, windowSize, size, 0, size), false)
+                .onClose(() -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Predicate<T> never() {
+        return (Predicate<T>) NEVER;
     }
 
     @Override
@@ -106,9 +769,83 @@ public class StreamSource<T> implements Supplier<Stream<T>>, AutoCloseable {
         isClosing.set(true);
     }
 
+    /**
+     * @return a builder of a StreamSource, whose {@code build()} validates the configuration.
+     */
+    public static <T> StreamSourceBuilder<T> builder() {
+        return new StreamSourceBuilder<T>() {
+            @Override
+            public StreamSource<T> build() {
+                return super.build().validate();
+            }
+        };
+    }
+
+    /**
+     * @return this source, if it's configured correctly.
+     * @throws NullPointerException if none of {@link #provider}, {@link #batchProvider} or {@link #asyncProvider} is set.
+     * @throws IllegalArgumentException if a numeric setting is out of it's range.
+     */
+    private StreamSource<T> validate() {
+        if (asyncProvider == null && batchProvider == null) {
+            Objects.requireNonNull(provider, "provider");
+        }
+        if (asyncProvider != null && maxOutstanding < 1) {
+            throw new IllegalArgumentException("maxOutstanding must be >= 1 !!");
+        }
+        if (parallel && parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1 !!");
+        }
+        if (readAhead < 0) {
+            throw new IllegalArgumentException("readAhead must be >= 0 !!");
+        }
+        if (readAhead > 0 && fetchers < 1) {
+            throw new IllegalArgumentException("fetchers must be >= 1 !!");
+        }
+        if (rateLimit < 0) {
+            throw new IllegalArgumentException("rateLimit must be >= 0 !!");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be >= 1 !!");
+        }
+        return this;
+    }
+
     public Stream<T> get() {
-        final _Spliterator spliterator = new _Spliterator(parallelism);
-        return StreamSupport.stream(spliterator, false).onClose(this::close);
+        final long now = System.nanoTime();
+        startNanos.set(now);
+        lastElementNanos.set(now);
+        final Stream<T> stream = stream();
+        if (rateLimit == 0 && maxDuration == null && idleTimeout == null) {
+            return stream;
+        }
+        final TokenBucket tokenBucket = rateLimit == 0 ? null : new TokenBucket(rateLimit, burst);
+        return StreamSupport.stream(new _BoundedSpliterator(stream.spliterator(), tokenBucket), stream.isParallel())
+            .onClose(stream::close);
+    }
+
+    private Stream<T> stream() {
+        if (asyncProvider != null) {
+            final StreamSource<T> source = StreamSource.<T>builder()
+                .provider(new AsyncProvider())
+                .endOfStream(t -> t == END_OF_SOURCE || isEndOfStream(t))
+                .characteristics(characteristics)
+                .build();
+            return source.get().onClose(this::close);
+        }
+        if (readAhead > 0) {
+            final ReadAhead buffer = new ReadAhead();
+            final StreamSource<T> source = StreamSource.<T>builder()
+                .batchProvider(buffer)
+                .endOfStream(buffer::isEndOfSource)
+                .parallel(parallel)
+                .parallelism(parallelism)
+                .characteristics(characteristics)
+                .build();
+            return source.get().onClose(buffer::closeStream);
+        }
+        final _Spliterator spliterator = new _Spliterator(parallel ? new AtomicInteger(parallelism - 1) : null);
+        return StreamSupport.stream(spliterator, parallel).onClose(this::close);
     }
 
 }
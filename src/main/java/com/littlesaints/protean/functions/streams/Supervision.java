@@ -0,0 +1,211 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import com.littlesaints.protean.functions.trial.Constants;
+import com.littlesaints.protean.functions.trial.Strategy;
+import com.littlesaints.protean.functions.trial.Trial;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * <pre>
+ * A policy to handle the failure of the stream processor of a {@link ForkJoin} fork, i.e. an exception thrown by it's terminal operation.
+ * Without one, the fork stops and the inputs routed to it pile up in it's exchange.
+ *
+ * - {@link #restart(Strategy)}: restart the processor on a new stream from the same exchange, backing off as per the {@link Strategy}.
+ *   The runs of the processor are a {@link Trial} of the strategy, i.e. the restarts back off exactly like the re-attempts of a trial.
+ *   The fork is removed, once the strategy's tries are exhausted by consecutive failures, i.e. without processing any input in between.
+ *   A failure after processing inputs starts a new trial, i.e. the processor is restarted immediately.
+ * - {@link #deadLetter(Consumer)}: hand the failing input over to a dead-letter consumer and restart immediately, skipping it.
+ * - {@link #remove(Consumer)}: remove the fork from the routing table and close it, discarding the inputs left in it's exchange.
+ *
+ * The policies can be combined using the {@link #builder()}, e.g. to dead-letter the failing input and restart with a backoff.
+ * Every policy has a hook, which is invoked with the {@link Failure} on the fork's thread.
+ *
+ * The failing input is the last one read from the exchange, before the exception.
+ * It's accurate, unless the processor buffers the inputs, e.g. {@link java.util.stream.Stream#sorted()}.
+ * The inputs read by the fork in the same batch after it, are processed by the restarted processor.
+ * The failing input itself is never retried, i.e. a restart skips it, so that a 'poison' input can't fail the processor repeatedly.
+ * If it shouldn't be lost, it can be handed over to the {@link #deadLetter(Consumer)} consumer, e.g. to be re-submitted once fixed.
+ *
+ * Usage:
+ * {@code
+ *     forkJoin.supervision(Supervision.<Order>builder()
+ *             .deadLetters(failure -> deadLetterQueue.add(failure.getInput()))
+ *             .restartStrategy(Strategy.builder().delayBetweenTriesInMillis(100).build())
+ *             .onRemove(failure -> log.error("Fork {} removed.", failure.getForkId(), failure.getCause()))
+ *             .build())
+ *         .fork(stream -> stream.forEach(this::process));
+ * }
+ * </pre>
+ *
+ * @param <T> the type of inputs
+ * @author Varun Anand
+ * @see ForkJoin#supervision(Supervision)
+ * @since 1.2.4
+ */
+@Builder
+public class Supervision<T> {
+
+    /**
+     * The strategy to back off between consecutive restarts. If absent, the fork is removed upon a failure.
+     */
+    private final Strategy restartStrategy;
+
+    /**
+     * The consumer of the failing inputs. If absent, the failing input is discarded.
+     */
+    private final Consumer<Failure<T>> deadLetters;
+
+    @Builder.Default
+    private final Consumer<Failure<T>> onRestart = failure -> {};
+
+    @Builder.Default
+    private final Consumer<Failure<T>> onRemove = failure -> {};
+
+    /**
+     * Restart the processor, backing off as per the given strategy.
+     *
+     * @param strategy the strategy to back off between consecutive restarts.
+     * @param <T> the type of inputs
+     */
+    public static <T> Supervision<T> restart(Strategy strategy) {
+        return restart(strategy, failure -> {});
+    }
+
+    /**
+     * Restart the processor, backing off as per the given strategy.
+     *
+     * @param strategy the strategy to back off between consecutive restarts.
+     * @param onRestart the hook invoked before every restart.
+     * @param <T> the type of inputs
+     */
+    public static <T> Supervision<T> restart(Strategy strategy, Consumer<Failure<T>> onRestart) {
+        strategy.validate();
+        return Supervision.<T>builder().restartStrategy(strategy).onRestart(onRestart).build();
+    }
+
+    /**
+     * Hand the failing input over to the given consumer and restart the processor immediately.
+     *
+     * @param deadLetters the consumer of the failing inputs.
+     * @param <T> the type of inputs
+     */
+    public static <T> Supervision<T> deadLetter(Consumer<Failure<T>> deadLetters) {
+        return Supervision.<T>builder().deadLetters(deadLetters)
+            .restartStrategy(Strategy.builder().maxTriesWithYield(0).maxTriesWithDelay(Constants.UNBOUNDED_TRIES)
+                .delayBetweenTriesInMillis(0).delayThresholdInMillis(0).build())
+            .build();
+    }
+
+    /**
+     * Remove the fork from the routing table and close it.
+     *
+     * @param <T> the type of inputs
+     */
+    public static <T> Supervision<T> remove() {
+        return remove(failure -> {});
+    }
+
+    /**
+     * Remove the fork from the routing table and close it.
+     *
+     * @param onRemove the hook invoked upon removing the fork.
+     * @param <T> the type of inputs
+     */
+    public static <T> Supervision<T> remove(Consumer<Failure<T>> onRemove) {
+        return Supervision.<T>builder().onRemove(onRemove).build();
+    }
+
+    /**
+     * Create the trial of the runs of a fork's stream processor, which restarts it upon a failure as per the {@link #restartStrategy}.
+     * A trial isn't thread-safe, so every reader of a fork has it's own.
+     *
+     * @param run runs the processor on a new stream, resulting in it's failure or {@code null}, if it completed.
+     * @param isConsecutive whether the latest failure is consecutive, i.e. the run didn't process any input before it.
+     * @return the trial, resulting in {@code null}, a failure that isn't consecutive or the one that exhausted the restarts,
+     * or {@code null}, if the processor isn't restarted.
+     */
+    Trial<Failure<T>> restartsOf(Supplier<Failure<T>> run, BooleanSupplier isConsecutive) {
+        if (restartStrategy == null) {
+            return null;
+        }
+        return Trial.of(restartStrategy, run, failure -> failure == null || !isConsecutive.getAsBoolean(), failure -> failure);
+    }
+
+    /**
+     * Hand the failing input over to the {@link #deadLetters}, if any.
+     */
+    void onFailure(Failure<T> failure) {
+        if (deadLetters != null && failure.getInput() != null) {
+            deadLetters.accept(failure);
+        }
+    }
+
+    /**
+     * Invoke the hook, before restarting the processor after the given failure.
+     */
+    void onRestart(Failure<T> failure) {
+        onRestart.accept(failure);
+    }
+
+    /**
+     * Invoke the hook, once the fork is removed from the routing table.
+     */
+    void onRemove(Failure<T> failure) {
+        onRemove.accept(failure);
+    }
+
+    /**
+     * A failure of the stream processor of a fork.
+     */
+    @Getter
+    @ToString
+    public static final class Failure<T> {
+
+        private final String forkId;
+
+        private final Throwable cause;
+
+        /**
+         * The failing input, or {@code null}, if the processor failed without reading one.
+         */
+        private final T input;
+
+        /**
+         * The number of consecutive failures, without processing any input in between, starting with 1.
+         */
+        private final int attempt;
+
+        Failure(String forkId, Throwable cause, T input, int attempt) {
+            this.forkId = forkId;
+            this.cause = cause;
+            this.input = input;
+            this.attempt = attempt;
+        }
+    }
+}
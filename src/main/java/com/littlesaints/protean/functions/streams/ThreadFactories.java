@@ -0,0 +1,175 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <pre>
+ * Factory of {@link ThreadFactory}s for the threads running the forked streams of a {@link ForkJoin}.
+ *
+ * A fork's thread spends most of it's life waiting on it's exchange, so the cost of a fork is mostly the cost of an idle thread.
+ * On JDK 21+, {@link #virtual(String)} creates virtual threads, which makes that cost close to nothing, even with thousands of forks.
+ * On older JDKs, it falls back to {@link #platform(String, boolean)} daemon threads.
+ *
+ * The library is compiled for Java 8, hence the virtual thread API is looked up reflectively, once.
+ * A {@link ForkJoin} runs the virtual threads of a factory with a thread-per-task executor, as they're cheap to create and shouldn't be pooled.
+ *
+ * Usage:
+ * {@code
+ *     ForkJoin<Integer, BlockingQueue<Integer>> forkJoin = ForkJoin.<Integer>newInstance(ThreadFactories.virtual("fork-"))
+ *         .fork(stream -> stream.forEach(System.out::println));
+ * }
+ * </pre>
+ *
+ * @author Varun Anand
+ * @see ForkJoin
+ * @since 1.2.4
+ */
+@Log4j2
+public final class ThreadFactories {
+
+    private static final MethodHandle VIRTUAL_THREAD_FACTORY = lookupVirtualThreadFactory();
+
+    private static final MethodHandle IS_VIRTUAL = lookup(() -> MethodHandles.publicLookup()
+        .findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class)));
+
+    private static final MethodHandle THREAD_PER_TASK_EXECUTOR = lookup(() -> MethodHandles.publicLookup()
+        .findStatic(Executors.class, "newThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class, ThreadFactory.class)));
+
+    private ThreadFactories() {
+    }
+
+    /**
+     * @return true, if the running JVM supports virtual threads i.e. JDK 21+.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Create a factory of virtual threads, if supported by the running JVM, or daemon platform threads otherwise.
+     *
+     * @param namePrefix the prefix of the thread names, that will be suffixed with a counter.
+     * @return the thread factory
+     */
+    public static ThreadFactory virtual(String namePrefix) {
+        if (VIRTUAL_THREAD_FACTORY != null) {
+            try {
+                return (ThreadFactory) VIRTUAL_THREAD_FACTORY.invoke(namePrefix, 0L);
+            } catch (Throwable e) {
+                log.warn("Error creating a virtual thread factory. Falling back to platform threads.", e);
+            }
+        }
+        return platform(namePrefix, true);
+    }
+
+    /**
+     * Create a factory of platform threads.
+     *
+     * @param namePrefix the prefix of the thread names, that will be suffixed with a counter.
+     * @param daemon whether the threads are daemon threads.
+     * @return the thread factory
+     */
+    public static ThreadFactory platform(String namePrefix, boolean daemon) {
+        final AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            final Thread thread = new Thread(r, namePrefix + counter.getAndIncrement());
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+
+    /**
+     * <pre>
+     * Create an executor, that runs every task on a new thread of the given factory.
+     *
+     * If the factory creates virtual threads, it's a thread-per-task executor, i.e. {@code Executors.newThreadPerTaskExecutor(ThreadFactory)},
+     * as pooling virtual threads only adds the overhead of a pool. Otherwise, it's a cached thread pool.
+     * To find out, a thread is created by the factory, but not started, on JDK 21+.
+     * </pre>
+     *
+     * @param threadFactory the factory of threads.
+     * @return the executor
+     */
+    static ExecutorService newExecutor(ThreadFactory threadFactory) {
+        if (THREAD_PER_TASK_EXECUTOR != null && isVirtual(threadFactory)) {
+            try {
+                return (ExecutorService) THREAD_PER_TASK_EXECUTOR.invoke(threadFactory);
+            } catch (Throwable e) {
+                log.warn("Error creating a thread-per-task executor. Falling back to a cached thread pool.", e);
+            }
+        }
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
+    private static boolean isVirtual(ThreadFactory threadFactory) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invoke(threadFactory.newThread(() -> {}));
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static MethodHandle lookup(MethodHandleLookup lookup) {
+        try {
+            return lookup.find();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Virtual threads are not supported by this JVM.");
+            return null;
+        }
+    }
+
+    private static MethodHandle lookupVirtualThreadFactory() {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Class<?> virtualBuilderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            final MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(virtualBuilderClass));
+            final MethodHandle name = lookup.findVirtual(virtualBuilderClass, "name",
+                MethodType.methodType(virtualBuilderClass, String.class, long.class));
+            final MethodHandle factory = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+            // (prefix, start) -> Thread.ofVirtual().name(prefix, start).factory()
+            final MethodHandle namedBuilder = MethodHandles.collectArguments(name, 0, ofVirtual);
+            return MethodHandles.filterReturnValue(namedBuilder, factory.asType(MethodType.methodType(ThreadFactory.class, virtualBuilderClass)));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Virtual threads are not supported by this JVM.");
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface MethodHandleLookup {
+
+        MethodHandle find() throws ReflectiveOperationException;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * <pre>
+ * A token bucket, to limit the rate of elements of a {@link StreamSource}.
+ *
+ * The bucket holds up to 'burst' tokens and is refilled at 'rate' tokens per second.
+ * It's implemented as the theoretical arrival time of the next token, driven by {@link System#nanoTime()},
+ * so a token is acquired without a background refill, and the wait for a token is computed instead of polled.
+ * </pre>
+ *
+ * @author Varun Anand
+ * @see StreamSource
+ * @since 1.2.4
+ */
+final class TokenBucket {
+
+    /**
+     * The maximum time to park at once, to notice a stop while waiting for a token.
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final long interval;
+
+    private final long tolerance;
+
+    /**
+     * The time at which the next token is due, if the bucket was empty.
+     */
+    private long nextTokenNanos = System.nanoTime();
+
+    TokenBucket(double rate, int burst) {
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        this.tolerance = (burst - 1) * interval;
+    }
+
+    /**
+     * Acquire a token, waiting for it if needed.
+     *
+     * @param isStopped checked while waiting, to give up the wait.
+     * @return true, if the token is acquired, or false if stopped or interrupted while waiting.
+     */
+    boolean acquire(BooleanSupplier isStopped) {
+        final long deadline = System.nanoTime() + reserve();
+        for (long wait; (wait = deadline - System.nanoTime()) > 0; ) {
+            if (isStopped.getAsBoolean() || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            LockSupport.parkNanos(Math.min(wait, MAX_PARK_NANOS));
+        }
+        return true;
+    }
+
+    /**
+     * @return the time to wait for the reserved token, which is <= 0 if it's available now.
+     */
+    private synchronized long reserve() {
+        final long now = System.nanoTime();
+        final long next = nextTokenNanos - now > 0 ? nextTokenNanos : now;
+        nextTokenNanos = next + interval;
+        return next - tolerance - now;
+    }
+}
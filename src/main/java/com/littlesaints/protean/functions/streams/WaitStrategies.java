@@ -0,0 +1,87 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Internals of the {@link WaitStrategy}s.
+ *
+ * @author Varun Anand
+ * @since 1.2.4
+ */
+@Log4j2
+final class WaitStrategies {
+
+    private static final MethodHandle ON_SPIN_WAIT = lookupOnSpinWait();
+
+    /**
+     * A bounded park, recognized by {@link #isBlocking(WaitStrategy)} to block on the exchange instead, where supported.
+     */
+    static final WaitStrategy BLOCKING = WaitStrategy.spinYieldPark(0, 0, 1000, 1_000_000);
+
+    private WaitStrategies() {
+    }
+
+    /**
+     * @return true, if the strategy is to block on the exchange.
+     */
+    static boolean isBlocking(WaitStrategy waitStrategy) {
+        return waitStrategy == null || waitStrategy == BLOCKING;
+    }
+
+    /**
+     * Hint the CPU that the thread is spinning, using {@code Thread.onSpinWait()} on JDK 9+.
+     */
+    static void onSpinWait() {
+        if (ON_SPIN_WAIT != null) {
+            try {
+                ON_SPIN_WAIT.invokeExact();
+            } catch (Throwable e) {
+                // it doesn't throw.
+            }
+        }
+    }
+
+    /**
+     * @return the initial value multiplied 'n' times by the multiplier, up to the maximum.
+     */
+    static long backoff(long initial, int multiplier, int n, long maximum) {
+        long value = initial;
+        for (int i = 0; i < n && value < maximum && multiplier > 1; i++) {
+            value = value > maximum / multiplier ? maximum : value * multiplier;
+        }
+        return Math.min(value, maximum);
+    }
+
+    private static MethodHandle lookupOnSpinWait() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Thread.onSpinWait() is not supported by this JVM.");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import com.littlesaints.protean.functions.trial.Constants;
+import com.littlesaints.protean.functions.trial.Strategy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <pre>
+ * Defines how a thread waits for an element of an empty exchange, or for space in a full one, between consecutive tries.
+ * It trades CPU for the latency of a hand-off:
+ *
+ * - {@link #busySpin()}: never gives up the CPU. The lowest latency, but burns a core per waiting thread.
+ * - {@link #spinThenYield(int)}: spins, then yields the CPU to other runnable threads.
+ * - {@link #spinYieldPark(int, int, long, long)}: spins, yields and then parks for a duration doubling up to a maximum.
+ * - {@link #of(Strategy)}: yields and then parks, as per the phases of a {@link Strategy} of a {@link com.littlesaints.protean.functions.trial.Trial}.
+ * - {@link #blocking()}: lets a {@link ForkJoin} block on the exchange, e.g. {@link java.util.concurrent.BlockingQueue#take()}, to be woken up by the producer.
+ *   By itself, it's a bounded park and not a signalled wait, i.e. it parks with a backoff up to a millisecond and is never woken up early.
+ *
+ * Spinning uses {@code Thread.onSpinWait()} on JDK 9+, which is looked up reflectively, as the library is compiled for Java 8.
+ *
+ * Usage:
+ * {@code
+ *     ForkJoin.<Order>ofRingBuffer(1024)
+ *         .waitStrategy(WaitStrategy.spinThenYield(1000))
+ *         .fork(stream -> stream.forEach(matcher));
+ * }
+ * </pre>
+ *
+ * @author Varun Anand
+ * @see ForkJoin#waitStrategy(WaitStrategy)
+ * @see StreamSource
+ * @since 1.2.4
+ */
+@FunctionalInterface
+public interface WaitStrategy {
+
+    /**
+     * Spin 100 times, yield 100 times and then park for a microsecond at a time.
+     */
+    WaitStrategy DEFAULT = spinYieldPark(100, 100, 1000, 1000);
+
+    /**
+     * Wait once.
+     *
+     * @param tries the number of consecutive tries so far, starting with 0.
+     * @return the number of tries, to pass to the next wait.
+     */
+    int idle(int tries);
+
+    /**
+     * Spin, without ever giving up the CPU.
+     */
+    static WaitStrategy busySpin() {
+        return tries -> {
+            WaitStrategies.onSpinWait();
+            return tries;
+        };
+    }
+
+    /**
+     * Spin for the given number of tries and then yield.
+     *
+     * @param spinTries the number of tries to spin for.
+     */
+    static WaitStrategy spinThenYield(int spinTries) {
+        if (spinTries < 0) {
+            throw new IllegalArgumentException("spinTries must be >= 0 !!");
+        }
+        return tries -> {
+            if (tries < spinTries) {
+                WaitStrategies.onSpinWait();
+                return tries + 1;
+            }
+            Thread.yield();
+            return tries;
+        };
+    }
+
+    /**
+     * Spin and yield for the given number of tries and then park, doubling the duration up to the given maximum.
+     *
+     * @param spinTries the number of tries to spin for.
+     * @param yieldTries the number of tries to yield for, after spinning.
+     * @param minParkNanos the initial duration to park for.
+     * @param maxParkNanos the maximum duration to park for.
+     */
+    static WaitStrategy spinYieldPark(int spinTries, int yieldTries, long minParkNanos, long maxParkNanos) {
+        if (spinTries < 0) {
+            throw new IllegalArgumentException("spinTries must be >= 0 !!");
+        }
+        if (yieldTries < 0) {
+            throw new IllegalArgumentException("yieldTries must be >= 0 !!");
+        }
+        if (minParkNanos < 1) {
+            throw new IllegalArgumentException("minParkNanos must be >= 1 !!");
+        }
+        if (minParkNanos > maxParkNanos) {
+            throw new IllegalArgumentException("minParkNanos must be <= maxParkNanos !!");
+        }
+        final int parkTries = spinTries + yieldTries;
+        return tries -> {
+            if (tries < spinTries) {
+                WaitStrategies.onSpinWait();
+                return tries + 1;
+            }
+            if (tries < parkTries) {
+                Thread.yield();
+                return tries + 1;
+            }
+            final long parkNanos = WaitStrategies.backoff(minParkNanos, 2, tries - parkTries, maxParkNanos);
+            LockSupport.parkNanos(parkNanos);
+            return parkNanos < maxParkNanos ? tries + 1 : tries;
+        };
+    }
+
+    /**
+     * <pre>
+     * Yield and then park, as per the given {@link Strategy}.
+     *
+     * - {@link Strategy#getMaxTriesWithYield()}: the number of tries to yield for.
+     * - {@link Strategy#getDelayBetweenTriesInMillis()}: the initial duration to park for.
+     * - {@link Strategy#getTriesUntilDelayIncrease()} and {@link Strategy#getDelayIncreaseMultiplier()}: the backoff of the duration.
+     * - {@link Strategy#getDelayThresholdInMillis()}: the maximum duration to park for.
+     *
+     * The wait is unbounded, hence {@link Strategy#getMaxTriesWithDelay()} is ignored.
+     * </pre>
+     *
+     * @param strategy the strategy
+     */
+    static WaitStrategy of(Strategy strategy) {
+        strategy.validate();
+        final int yieldTries = strategy.getMaxTriesWithYield();
+        final int triesUntilDelayIncrease = strategy.getTriesUntilDelayIncrease();
+        final long minParkNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(strategy.getDelayBetweenTriesInMillis()));
+        final long maxParkNanos = Math.max(minParkNanos, TimeUnit.MILLISECONDS.toNanos(strategy.getDelayThresholdInMillis()));
+        final int multiplier = triesUntilDelayIncrease == Constants.NO_DELAY_INCREASE ? 1 : strategy.getDelayIncreaseMultiplier();
+        final int triesPerIncrease = triesUntilDelayIncrease == Constants.NO_DELAY_INCREASE ? 1 : triesUntilDelayIncrease;
+        return tries -> {
+            if (tries < yieldTries) {
+                Thread.yield();
+                return tries + 1;
+            }
+            final long parkNanos = WaitStrategies.backoff(minParkNanos, multiplier, (tries - yieldTries) / triesPerIncrease, maxParkNanos);
+            LockSupport.parkNanos(parkNanos);
+            return parkNanos < maxParkNanos ? tries + 1 : tries;
+        };
+    }
+
+    /**
+     * <pre>
+     * Block on the exchange, if supported, or park with a backoff up to a millisecond otherwise.
+     *
+     * It's a marker for a {@link ForkJoin} to read its exchange using the exchange's own blocking read, e.g. {@link java.util.concurrent.BlockingQueue#take()}.
+     * Elsewhere, e.g. when given to a {@link RingBuffer} or a {@link StreamSource}, it's a bounded park,
+     * same as {@code spinYieldPark(0, 0, 1000, 1_000_000)}: nothing signals the waiting thread,
+     * so an element arriving during a park is seen only after the park of up to a millisecond ends.
+     * </pre>
+     */
+    static WaitStrategy blocking() {
+        return WaitStrategies.BLOCKING;
+    }
+}
@@ -23,6 +23,9 @@ package com.littlesaints.protean.functions.maths;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
 public class MathematicianTest {
 
     @Test
@@ -43,4 +46,20 @@ public class MathematicianTest {
         Assert.assertFalse(Mathematician.isPowerOfTwo.test(-2));
     }
 
+    @Test
+    public void mixHashTest() {
+        Assert.assertEquals(0, Mathematician.mixHash.applyAsInt(0));
+        Assert.assertNotEquals(Mathematician.mixHash.applyAsInt(1), Mathematician.mixHash.applyAsInt(2));
+        Assert.assertEquals(Mathematician.mixHash.applyAsInt(42), Mathematician.mixHash.applyAsInt(42));
+    }
+
+    @Test
+    public void reduceToRangeTest() {
+        Assert.assertEquals(0, Mathematician.reduceToRange.applyAsInt(0, 3));
+        Assert.assertEquals(2, Mathematician.reduceToRange.applyAsInt(-1, 3));
+        final int[] counts = new int[3];
+        IntStream.range(0, 3000).map(Mathematician.mixHash).forEach(h -> counts[Mathematician.reduceToRange.applyAsInt(h, 3)]++);
+        Arrays.stream(counts).forEach(c -> Assert.assertTrue(c > 900 && c < 1100));
+    }
+
 }
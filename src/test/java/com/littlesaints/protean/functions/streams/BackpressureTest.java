@@ -0,0 +1,219 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class BackpressureTest {
+
+    private static final int CAPACITY = 4;
+
+    @Test(timeout = 5000)
+    public void testDropNewest() throws InterruptedException {
+        final List<Integer> output = Collections.synchronizedList(new ArrayList<>());
+        final Backpressure<Integer> backpressure = Backpressure.dropNewest();
+        runWithSlowFork(backpressure, output);
+        Assert.assertEquals(100 - CAPACITY, backpressure.getDropped());
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), output);
+    }
+
+    @Test(timeout = 5000)
+    public void testDropOldest() throws InterruptedException {
+        final List<Integer> output = Collections.synchronizedList(new ArrayList<>());
+        final Backpressure<Integer> backpressure = Backpressure.dropOldest();
+        runWithSlowFork(backpressure, output);
+        Assert.assertEquals(100 - CAPACITY, backpressure.getDropped());
+        Assert.assertEquals(Arrays.asList(0, 97, 98, 99, 100), output);
+    }
+
+    @Test(timeout = 5000)
+    public void testBlockWithTimeout() throws InterruptedException {
+        final List<Integer> output = Collections.synchronizedList(new ArrayList<>());
+        final Backpressure<Integer> backpressure = Backpressure.block(1, TimeUnit.MILLISECONDS);
+        runWithSlowFork(backpressure, output);
+        Assert.assertEquals(100 - CAPACITY, backpressure.getDropped());
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), output);
+    }
+
+    @Test(timeout = 5000)
+    public void testSpill() throws InterruptedException, IOException {
+        final Path file = Files.createTempFile("spill", ".bin");
+        try {
+            final List<Integer> output = Collections.synchronizedList(new ArrayList<>());
+            final Backpressure<Integer> backpressure = Backpressure.spill(file, i -> ByteBuffer.allocate(4).putInt(i).array());
+            runWithSlowFork(backpressure, output);
+            Assert.assertEquals(0, backpressure.getDropped());
+            Assert.assertEquals(100 - CAPACITY, backpressure.getSpilled());
+            Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), output);
+            try (Stream<Integer> spilled = Backpressure.readSpilled(file, bytes -> ByteBuffer.wrap(bytes).getInt())) {
+                Assert.assertEquals(IntStream.rangeClosed(CAPACITY + 1, 100).boxed().collect(Collectors.toList()),
+                    spilled.collect(Collectors.toList()));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testSample() throws InterruptedException {
+        final RingBuffer<Integer> ringBuffer = RingBuffer.of(CAPACITY);
+        // the third input rejected by the full exchange is the sampled one, after the two dropped ones.
+        final CountDownLatch rejected = new CountDownLatch(3);
+        final BoundedExchange<Integer> exchange = new BoundedExchange<Integer>() {
+            @Override
+            public boolean offer(Integer t) {
+                final boolean isOffered = ringBuffer.offer(t);
+                if (!isOffered) {
+                    rejected.countDown();
+                }
+                return isOffered;
+            }
+
+            @Override
+            public Integer poll() {
+                return ringBuffer.poll();
+            }
+        };
+        final Backpressure<Integer> backpressure = Backpressure.sample(3);
+        final Consumer<Integer> writer = backpressure.writerOf(exchange);
+        IntStream.range(0, CAPACITY + 2).boxed().forEach(writer);
+        Assert.assertEquals(2, backpressure.getDropped());
+        final Thread sampled = new Thread(() -> writer.accept(-1));
+        sampled.start();
+        rejected.await();
+        // it waits for space, as nothing else can end the wait.
+        Assert.assertTrue(sampled.isAlive());
+        Assert.assertEquals(Integer.valueOf(0), exchange.poll());
+        sampled.join();
+        Assert.assertEquals(2, backpressure.getDropped());
+        Assert.assertEquals(CAPACITY, ringBuffer.size());
+    }
+
+    @Test(timeout = 5000)
+    public void testBlockUntilClosed() throws InterruptedException {
+        final Backpressure<Integer> backpressure = Backpressure.block();
+        final Consumer<Integer> writer = backpressure.writerOf(BoundedExchange.of(new ArrayBlockingQueue<>(1)));
+        writer.accept(0);
+        final Thread blocked = new Thread(() -> writer.accept(1));
+        blocked.start();
+        backpressure.close();
+        blocked.join();
+        writer.accept(2);
+        Assert.assertEquals(2, backpressure.getDropped());
+    }
+
+    @Test(timeout = 5000)
+    public void testBlockUntilInterrupted() throws InterruptedException {
+        final Backpressure<Integer> backpressure = Backpressure.sample(1);
+        final Consumer<Integer> writer = backpressure.writerOf(BoundedExchange.of(new ArrayBlockingQueue<>(1)));
+        writer.accept(0);
+        final Thread blocked = new Thread(() -> writer.accept(1));
+        blocked.start();
+        blocked.interrupt();
+        blocked.join();
+        Assert.assertEquals(1, backpressure.getDropped());
+    }
+
+    /**
+     * The end-of-stream marker written by closeAndAwait should be kept, for the fork to end.
+     */
+    @Test
+    public void testDropOldestKeepsEndOfStream() {
+        final BoundedExchange<Object> exchange = BoundedExchange.of(new ArrayBlockingQueue<>(1));
+        final Backpressure<Object> backpressure = Backpressure.dropOldest();
+        exchange.offer(ForkJoin.END_OF_STREAM);
+        backpressure.writerOf(exchange).accept(1);
+        Assert.assertEquals(1, backpressure.getDropped());
+        Assert.assertSame(ForkJoin.END_OF_STREAM, exchange.poll());
+        Assert.assertNull(exchange.poll());
+    }
+
+    /**
+     * A producer waiting for space in the exchange of a fork, whose stream processor failed, should drop the inputs instead.
+     */
+    @Test(timeout = 5000)
+    public void testBlockOnFailedFork() {
+        final Backpressure<Integer> backpressure = Backpressure.block();
+        try (ForkJoin<Integer, BlockingQueue<Integer>> forkJoin = ForkJoin.<Integer>of(() -> new ArrayBlockingQueue<>(CAPACITY))
+            .forkWithBackpressure(s -> s.forEach(i -> {
+                throw new IllegalStateException("failed");
+            }), backpressure)) {
+            IntStream.range(0, 100).boxed().forEach(forkJoin);
+        }
+        Assert.assertTrue(backpressure.getDropped() > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSample() {
+        Backpressure.sample(0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testBroadcast() {
+        try (ForkJoin<Integer, BroadcastBuffer<Integer>> forkJoin = ForkJoin.broadcast(16)) {
+            forkJoin.forkWithBackpressure(s -> s.forEach(i -> {}), Backpressure.dropNewest());
+        }
+    }
+
+    /**
+     * Accept 0, wait for the fork to block processing it, accept 1..100 and then release the fork.
+     */
+    private void runWithSlowFork(Backpressure<Integer> backpressure, List<Integer> output) throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch processed = new CountDownLatch(CAPACITY + 1);
+        try (ForkJoin<Integer, BlockingQueue<Integer>> forkJoin = ForkJoin.<Integer>of(() -> new ArrayBlockingQueue<>(CAPACITY))
+            .forkWithBackpressure(s -> s.forEach(i -> {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                output.add(i);
+                processed.countDown();
+            }), backpressure)) {
+            forkJoin.accept(0);
+            blocked.await();
+            IntStream.rangeClosed(1, 100).boxed().forEach(forkJoin);
+            release.countDown();
+            processed.await();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+public class BroadcastBufferTest {
+
+    @Test
+    public void testSubscribers() {
+        final BroadcastBuffer<Integer> buffer = BroadcastBuffer.of(4);
+        buffer.put(-1);
+        final BroadcastBuffer<Integer>.Cursor first = buffer.subscribe();
+        final BroadcastBuffer<Integer>.Cursor second = buffer.subscribe();
+        Assert.assertEquals(2, buffer.getSubscriberCount());
+        IntStream.range(0, 4).boxed().forEach(buffer::put);
+        Assert.assertEquals(4, first.lag());
+        IntStream.range(0, 4).forEach(i -> Assert.assertEquals(Integer.valueOf(i), first.poll()));
+        Assert.assertNull(first.poll());
+        Assert.assertEquals(Integer.valueOf(0), second.take());
+        second.close();
+        Assert.assertEquals(1, buffer.getSubscriberCount());
+    }
+
+    @Test
+    public void testPutAll() {
+        final BroadcastBuffer<Integer> buffer = BroadcastBuffer.of(4);
+        final BroadcastBuffer<Integer>.Cursor first = buffer.subscribe();
+        final BroadcastBuffer<Integer>.Cursor second = buffer.subscribe();
+        buffer.putAll(Arrays.asList(0, 1, 2));
+        final List<Integer> batch = new ArrayList<>();
+        Assert.assertEquals(3, first.drainTo(batch, 8));
+        Assert.assertEquals(Arrays.asList(0, 1, 2), batch);
+        Assert.assertEquals(Integer.valueOf(0), second.poll());
+        batch.clear();
+        Assert.assertEquals(1, second.drainTo(batch, 1));
+        Assert.assertEquals(Integer.valueOf(2), second.poll());
+        Assert.assertNull(second.poll());
+    }
+
+    @Test(timeout = 5000)
+    public void testOffer() {
+        final BroadcastBuffer<Integer> buffer = BroadcastBuffer.of(2);
+        Assert.assertTrue(buffer.offer(-1, 0, TimeUnit.MILLISECONDS));
+        final BroadcastBuffer<Integer>.Cursor cursor = buffer.subscribe();
+        Assert.assertTrue(buffer.offer(0, 0, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(buffer.offer(1, 0, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(buffer.offer(2, 50, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(Integer.valueOf(0), cursor.poll());
+        Assert.assertTrue(buffer.offer(2, 0, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(Integer.valueOf(1), cursor.poll());
+        Assert.assertEquals(Integer.valueOf(2), cursor.poll());
+        Assert.assertNull(cursor.poll());
+    }
+
+    /**
+     * A subscriber joining while producers publish, with or without other subscribers, should receive every element published after it.
+     * The elements of a producer are numbered, so a subscriber should see them without a gap, from the first one it receives.
+     */
+    @Test(timeout = 20000)
+    public void testSubscribeWhilePublishing() throws InterruptedException {
+        final BroadcastBuffer<Integer> buffer = BroadcastBuffer.of(4);
+        final int producers = 3;
+        final int subscribers = 2;
+        final AtomicBoolean isPublishing = new AtomicBoolean(true);
+        final List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads.add(new Thread(() -> {
+                for (int n = 0; isPublishing.get(); n++) {
+                    buffer.put(producer * 100_000_000 + n);
+                }
+            }));
+        }
+        final LongAdder gaps = new LongAdder();
+        final CountDownLatch done = new CountDownLatch(subscribers);
+        for (int i = 0; i < subscribers; i++) {
+            threads.add(new Thread(() -> {
+                for (int round = 0; round < 300; round++) {
+                    final int[] last = new int[producers];
+                    Arrays.fill(last, -1);
+                    try (BroadcastBuffer<Integer>.Cursor cursor = buffer.subscribe()) {
+                        for (int j = 0; j < 50; j++) {
+                            final int element = cursor.take();
+                            final int producer = element / 100_000_000;
+                            final int n = element % 100_000_000;
+                            if (last[producer] >= 0 && n != last[producer] + 1) {
+                                gaps.increment();
+                            }
+                            last[producer] = n;
+                        }
+                    }
+                }
+                done.countDown();
+            }));
+        }
+        threads.forEach(Thread::start);
+        done.await();
+        isPublishing.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, gaps.intValue());
+    }
+
+    @Test(timeout = 10000)
+    public void testSlowestSubscriberGatesProducers() throws InterruptedException {
+        final BroadcastBuffer<Integer> buffer = BroadcastBuffer.of(8);
+        final int subscribers = 3;
+        final int producers = 2;
+        final int perProducer = 5000;
+        final LongAdder sum = new LongAdder();
+        final CountDownLatch latch = new CountDownLatch(subscribers);
+        IntStream.range(0, subscribers).mapToObj(i -> buffer.subscribe()).forEach(cursor -> new Thread(() -> {
+            for (int i = 0; i < producers * perProducer; i++) {
+                sum.add(cursor.take());
+            }
+            latch.countDown();
+        }).start());
+        IntStream.range(0, producers).forEach(p -> new Thread(() ->
+            IntStream.range(0, perProducer).boxed().forEach(buffer::put)).start());
+        latch.await();
+        Assert.assertEquals((long) subscribers * producers * perProducer * (perProducer - 1) / 2, sum.sum());
+    }
+
+    @Test(timeout = 5000)
+    public void testForkJoin() throws InterruptedException {
+        final AtomicReferenceArray<AtomicInteger> output = new AtomicReferenceArray<>(3);
+        IntStream.range(0, 3).forEach(i -> output.set(i, new AtomicInteger()));
+        final CountDownLatch latch = new CountDownLatch(300);
+        try (ForkJoin<Integer, BroadcastBuffer<Integer>> forkJoin = ForkJoin.<Integer>broadcast(16)
+            .fork(i -> i >= 0 && i < 50, s -> s.forEach(i -> {output.get(0).incrementAndGet(); latch.countDown();}))
+            .fork(i -> i >= 50 && i < 100, s -> s.forEach(i -> {output.get(1).incrementAndGet(); latch.countDown();}))
+            .fork(s -> s.forEach(i -> {output.get(2).incrementAndGet(); latch.countDown();}))) {
+            IntStream.range(-100, 100).boxed().parallel().forEach(forkJoin);
+            latch.await();
+        }
+        Assert.assertEquals(50, output.get(0).get());
+        Assert.assertEquals(50, output.get(1).get());
+        Assert.assertEquals(200, output.get(2).get());
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.DoubleStream;
+
+public class DoubleStreamSourceTest {
+
+    @Test(timeout = 5000)
+    public void testEndOfStream() {
+        final double[] readings = {0.5, 1.5, 2.5, Double.NaN, 3.5};
+        final AtomicInteger next = new AtomicInteger();
+        final DoubleStream source = DoubleStreamSource.builder()
+                .provider(() -> readings[next.getAndIncrement()])
+                .endOfStream(Double::isNaN)
+                .build().get();
+        Assert.assertEquals(1.5, source.average().getAsDouble(), 0);
+        Assert.assertEquals(4, next.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testStreamClose() {
+        final AtomicInteger next = new AtomicInteger();
+        final DoubleStream source = DoubleStreamSource.builder()
+                .provider(() -> next.incrementAndGet() / 2.0)
+                .build().get();
+        source.forEach(d -> {
+            if (d >= 50) {
+                source.close();
+            }
+        });
+        Assert.assertEquals(100, next.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testParallel() {
+        final AtomicInteger next = new AtomicInteger();
+        final DoubleStream source = DoubleStreamSource.builder()
+                .provider(next::incrementAndGet)
+                .endOfStream(d -> d > 1000)
+                .parallel(true)
+                .parallelism(2)
+                .build().get();
+        Assert.assertEquals(1000, source.count());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        DoubleStreamSource.builder().provider(() -> 1).parallel(true).parallelism(-1).build().get();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ForkJoinBatchTest {
+
+    @Test(timeout = 5000)
+    public void testBlockingQueue() throws InterruptedException {
+        testBatches(ForkJoin.newInstance());
+    }
+
+    @Test(timeout = 5000)
+    public void testRingBuffer() throws InterruptedException {
+        testBatches(ForkJoin.ofRingBuffer(16));
+    }
+
+    @Test(timeout = 5000)
+    public void testBroadcast() throws InterruptedException {
+        testBatches(ForkJoin.broadcast(16));
+    }
+
+    /**
+     * Every fork should receive it's matching inputs in order, whether accepted one by one or in batches.
+     */
+    private void testBatches(ForkJoin<Integer, ?> forkJoin) throws InterruptedException {
+        final List<Integer> evens = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> all = Collections.synchronizedList(new ArrayList<>());
+        forkJoin
+            .fork(i -> i % 2 == 0, s -> s.forEach(evens::add))
+            .fork(s -> s.forEach(all::add));
+        forkJoin.acceptAll(IntStream.range(0, 100).boxed().collect(Collectors.toList()));
+        forkJoin.accept(100);
+        forkJoin.acceptAll(Arrays.asList(101, 102, 103));
+        forkJoin.acceptAll(Collections.emptyList());
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(IntStream.range(0, 104).filter(i -> i % 2 == 0).boxed().collect(Collectors.toList()), evens);
+        Assert.assertEquals(IntStream.range(0, 104).boxed().collect(Collectors.toList()), all);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAcceptAllAfterClosing() throws InterruptedException {
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance().fork(s -> s.forEach(i -> {}));
+        Assert.assertTrue(forkJoin.closeAndAwait(1, TimeUnit.SECONDS));
+        forkJoin.acceptAll(Arrays.asList(1, 2));
+    }
+}
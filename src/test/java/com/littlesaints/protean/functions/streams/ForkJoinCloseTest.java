@@ -0,0 +1,169 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class ForkJoinCloseTest {
+
+    @Test(timeout = 5000)
+    public void testBlockingQueue() throws InterruptedException {
+        testCloseAndAwait(ForkJoin.newInstance());
+    }
+
+    @Test(timeout = 5000)
+    public void testRingBuffer() throws InterruptedException {
+        testCloseAndAwait(ForkJoin.ofRingBuffer(8));
+    }
+
+    @Test(timeout = 5000)
+    public void testBroadcast() throws InterruptedException {
+        testCloseAndAwait(ForkJoin.broadcast(8));
+    }
+
+    /**
+     * Every input still in the exchanges when closing, should be processed and the terminal operations should complete.
+     */
+    private void testCloseAndAwait(ForkJoin<Integer, ?> forkJoin) throws InterruptedException {
+        final LongAdder processed = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final LongAdder sum = new LongAdder();
+        forkJoin
+            .fork(i -> i % 2 == 0, s -> {
+                sum.add(s.peek(i -> TestThreads.slowly()).peek(i -> processed.increment()).mapToInt(Integer::intValue).sum());
+                completed.increment();
+            })
+            .fork(s -> {
+                s.forEach(i -> processed.increment());
+                completed.increment();
+            });
+        IntStream.range(0, 100).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(150, processed.intValue());
+        Assert.assertEquals(2, completed.intValue());
+        Assert.assertEquals(IntStream.range(0, 100).filter(i -> i % 2 == 0).sum(), sum.intValue());
+    }
+
+    @Test(timeout = 5000)
+    public void testWorkers() throws InterruptedException {
+        final LongAdder processed = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final ForkJoin<Integer, RingBuffer<Integer>> forkJoin = ForkJoin.<Integer>ofRingBuffer(8)
+            .forkWorkers(3, s -> {
+                s.forEach(i -> {TestThreads.slowly(); processed.increment();});
+                completed.increment();
+            });
+        IntStream.range(0, 50).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(50, processed.intValue());
+        Assert.assertEquals(3, completed.intValue());
+    }
+
+    @Test(timeout = 5000)
+    public void testTimeout() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance()
+            .fork(s -> s.forEach(i -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        forkJoin.accept(1);
+        Assert.assertFalse(forkJoin.closeAndAwait(50, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * A broadcast, whose buffer is kept full by a stalled fork, should time out instead of waiting to write the end-of-stream marker.
+     */
+    @Test(timeout = 5000)
+    public void testBroadcastTimeout() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>broadcast(2)
+            .fork(s -> s.forEach(i -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        forkJoin.accept(0);
+        started.await();
+        IntStream.range(1, 3).boxed().forEach(forkJoin);
+        Assert.assertFalse(forkJoin.closeAndAwait(50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAcceptAfterClosing() throws InterruptedException {
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance().fork(Stream::count);
+        Assert.assertTrue(forkJoin.closeAndAwait(1, TimeUnit.SECONDS));
+        forkJoin.accept(1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAcceptAfterClose() {
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance().fork(Stream::count);
+        forkJoin.close();
+        forkJoin.accept(1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAcceptAllAfterClose() {
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>ofRingBuffer(8).fork(Stream::count);
+        forkJoin.close();
+        forkJoin.acceptAll(Arrays.asList(1, 2));
+    }
+
+    /**
+     * A fork waiting on an empty exchange should stop upon {@link ForkJoin#close()}, instead of holding on to it's thread.
+     */
+    @Test(timeout = 5000)
+    public void testCloseStopsWaitingForks() throws InterruptedException {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final CountDownLatch started = new CountDownLatch(3);
+        final List<ForkJoin<Integer, ?>> forkJoins = Arrays.asList(
+            ForkJoin.<Integer>newInstance(executor).fork(s -> {started.countDown(); s.count();}),
+            ForkJoin.<Integer, RingBuffer<Integer>>of(() -> RingBuffer.of(8), q -> q::take, q -> q::put, executor)
+                .fork(s -> {started.countDown(); s.count();}),
+            ForkJoin.<Integer>broadcast(8, executor).fork(s -> {started.countDown(); s.count();}));
+        try {
+            started.await();
+        } finally {
+            forkJoins.forEach(ForkJoin::close);
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+}
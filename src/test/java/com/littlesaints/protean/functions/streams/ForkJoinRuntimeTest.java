@@ -0,0 +1,186 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class ForkJoinRuntimeTest {
+
+    @Test(timeout = 5000)
+    public void testBlockingQueue() throws InterruptedException {
+        testRemove(ForkJoin.newInstance());
+    }
+
+    @Test(timeout = 5000)
+    public void testRingBuffer() throws InterruptedException {
+        testRemove(ForkJoin.ofRingBuffer(16));
+    }
+
+    /**
+     * A removed fork should process the inputs routed to it before the removal and no more, while the other forks keep running.
+     */
+    private void testRemove(ForkJoin<Integer, ?> forkJoin) throws InterruptedException {
+        final LongAdder kept = new LongAdder();
+        final LongAdder removed = new LongAdder();
+        final CountDownLatch completed = new CountDownLatch(1);
+        forkJoin.fork(s -> s.forEach(i -> kept.increment()));
+        final ForkJoin<Integer, ?>.Fork fork = forkJoin.addFork(i -> i % 2 == 0, s -> {
+            s.forEach(i -> {
+                TestThreads.slowly();
+                removed.increment();
+            });
+            completed.countDown();
+        });
+        IntStream.range(0, 100).boxed().forEach(forkJoin);
+        Assert.assertTrue(fork.remove(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, completed.getCount());
+        Assert.assertEquals(50, removed.intValue());
+        IntStream.range(0, 100).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(50, removed.intValue());
+        Assert.assertEquals(200, kept.intValue());
+    }
+
+    @Test(timeout = 5000)
+    public void testRemoveWorkers() throws InterruptedException {
+        final LongAdder processed = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.newInstance();
+        final ForkJoin<Integer, ?>.Fork workers = forkJoin.addWorkers(3, i -> true, s -> {
+            s.forEach(i -> {
+                TestThreads.slowly();
+                processed.increment();
+            });
+            completed.increment();
+        });
+        Assert.assertEquals(3, workers.getReaders());
+        IntStream.range(0, 30).boxed().forEach(forkJoin);
+        Assert.assertTrue(workers.remove(5, TimeUnit.SECONDS));
+        Assert.assertEquals(30, processed.intValue());
+        Assert.assertEquals(3, completed.intValue());
+        // inputs without any fork are discarded.
+        forkJoin.accept(1);
+        Assert.assertTrue(forkJoin.closeAndAwait(1, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testRemoveKeyFork() throws InterruptedException {
+        final Function<Integer, Integer> modulo = i -> i % 3;
+        final LongAdder zeros = new LongAdder();
+        final LongAdder ones = new LongAdder();
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance().fork(modulo, 0, s -> s.forEach(i -> zeros.increment()));
+        final ForkJoin<Integer, ?>.Fork fork = forkJoin.addFork(modulo, 1, s -> s.forEach(i -> ones.increment()));
+        IntStream.range(0, 30).boxed().forEach(forkJoin);
+        Assert.assertTrue(fork.remove(5, TimeUnit.SECONDS));
+        IntStream.range(0, 30).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(20, zeros.intValue());
+        Assert.assertEquals(10, ones.intValue());
+    }
+
+    /**
+     * A fork of a broadcast can't be drained on it's own, hence it's closed immediately.
+     */
+    @Test(timeout = 5000)
+    public void testRemoveBroadcast() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>broadcast(8).fork(Stream::count);
+        final ForkJoin<Integer, ?>.Fork fork = forkJoin.addFork(i -> true, s -> {
+            started.countDown();
+            try {
+                s.count();
+            } finally {
+                completed.countDown();
+            }
+        });
+        forkJoin.accept(1);
+        started.await();
+        Assert.assertTrue(fork.remove(1, TimeUnit.SECONDS));
+        completed.await();
+        // the producers shouldn't wait on the removed fork.
+        IntStream.range(0, 100).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testRemoveTwice() throws InterruptedException {
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance().recordMetrics();
+        final ForkJoin<Integer, ?>.Fork fork = forkJoin.addFork(i -> true, Stream::count);
+        Assert.assertEquals(fork.getId(), forkJoin.metrics().keySet().iterator().next());
+        Assert.assertTrue(fork.remove(1, TimeUnit.SECONDS));
+        Assert.assertTrue(fork.remove(1, TimeUnit.SECONDS));
+        Assert.assertTrue(forkJoin.metrics().isEmpty());
+        Assert.assertTrue(forkJoin.closeAndAwait(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Forks added and removed while the inputs are being accepted, should receive a contiguous range of the inputs,
+     * while the other forks receive every input.
+     */
+    @Test(timeout = 10000)
+    public void testAddAndRemoveWhileAccepting() throws InterruptedException {
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.ofRingBuffer(64);
+        final LongAdder all = new LongAdder();
+        forkJoin.fork(s -> s.forEach(i -> all.increment()));
+        final AtomicBoolean isProducing = new AtomicBoolean(true);
+        final LongAdder produced = new LongAdder();
+        final Thread producer = new Thread(() -> {
+            for (int i = 0; isProducing.get(); i++) {
+                forkJoin.accept(i);
+                produced.increment();
+            }
+        });
+        producer.start();
+        final List<List<Integer>> received = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final List<Integer> inputs = new ArrayList<>();
+            received.add(inputs);
+            final CountDownLatch receiving = new CountDownLatch(1);
+            final ForkJoin<Integer, ?>.Fork fork = forkJoin.addFork(t -> true, s -> s.forEach(input -> {
+                inputs.add(input);
+                receiving.countDown();
+            }));
+            receiving.await();
+            Assert.assertTrue(fork.remove(5, TimeUnit.SECONDS));
+        }
+        isProducing.set(false);
+        producer.join();
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(produced.intValue(), all.intValue());
+        for (List<Integer> inputs : received) {
+            for (int i = 1; i < inputs.size(); i++) {
+                Assert.assertEquals(inputs.get(i - 1) + 1, inputs.get(i).intValue());
+            }
+        }
+    }
+}
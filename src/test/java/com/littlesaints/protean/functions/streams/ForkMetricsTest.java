@@ -0,0 +1,195 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class ForkMetricsTest {
+
+    @Test(timeout = 5000)
+    public void testBlockingQueue() throws InterruptedException {
+        testCounts(ForkJoin.newInstance(), 501);
+    }
+
+    @Test(timeout = 5000)
+    public void testRingBuffer() throws InterruptedException {
+        testCounts(ForkJoin.ofRingBuffer(64), 501);
+    }
+
+    /**
+     * Every fork of a broadcast reads every input, before evaluating it's predicate.
+     */
+    @Test(timeout = 5000)
+    public void testBroadcast() throws InterruptedException {
+        testCounts(ForkJoin.broadcast(64), 1002);
+    }
+
+    @Test(timeout = 5000)
+    public void testPolling() throws InterruptedException {
+        testCounts(ForkJoin.<Integer>ofRingBuffer(64).waitStrategy(WaitStrategy.spinThenYield(100)), 501);
+    }
+
+    private void testCounts(ForkJoin<Integer, ?> forkJoin, long evenForkInputs) throws InterruptedException {
+        forkJoin.recordMetrics()
+            .fork(i -> i % 2 == 0, Stream::count)
+            .fork(Stream::count);
+        IntStream.range(0, 1000).boxed().forEach(forkJoin);
+        forkJoin.acceptAll(Arrays.asList(1000, 1001));
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+
+        final List<ForkMetrics.Snapshot> snapshots = new ArrayList<>(forkJoin.metrics().values());
+        Assert.assertEquals(Arrays.asList(forkJoin.getName() + "#0", forkJoin.getName() + "#1"),
+            new ArrayList<>(forkJoin.metrics().keySet()));
+        Assert.assertEquals(evenForkInputs, snapshots.get(0).getEnqueued());
+        Assert.assertEquals(evenForkInputs, snapshots.get(0).getDequeued());
+        for (ForkMetrics.Snapshot snapshot : snapshots) {
+            Assert.assertEquals(0, snapshot.getDepth());
+            Assert.assertTrue(snapshot.getWaitNanos() > 0);
+            Assert.assertTrue(snapshot.getWaitRatio() > 0 && snapshot.getWaitRatio() <= 1);
+            Assert.assertTrue(Arrays.stream(snapshot.getLatencyHistogram()).sum() > 0);
+            Assert.assertTrue(snapshot.getLatencyP50Nanos() > 0);
+            Assert.assertTrue(snapshot.getLatencyP50Nanos() <= snapshot.getLatencyP999Nanos());
+        }
+        Assert.assertEquals(1002, snapshots.get(1).getEnqueued());
+        Assert.assertEquals(1002, snapshots.get(1).getDequeued());
+    }
+
+    /**
+     * The inputs not read yet by the workers should be reported as the depth of the fork.
+     */
+    @Test(timeout = 5000)
+    public void testDepth() throws InterruptedException {
+        final CountDownLatch read = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance().recordMetrics()
+            .forkWorkers(1, s -> s.forEach(i -> {
+                read.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        IntStream.range(0, 10).boxed().forEach(forkJoin);
+        read.await();
+        final ForkMetrics.Snapshot snapshot = forkJoin.metrics().values().iterator().next();
+        Assert.assertEquals(10, snapshot.getEnqueued());
+        Assert.assertEquals(1, snapshot.getDequeued());
+        Assert.assertEquals(9, snapshot.getDepth());
+        release.countDown();
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, forkJoin.metrics().values().iterator().next().getDepth());
+    }
+
+    @Test(timeout = 5000)
+    public void testNotRecording() throws InterruptedException {
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance().fork(Stream::count)
+            .recordMetrics().fork(Stream::count);
+        forkJoin.accept(1);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, forkJoin.metrics().size());
+        Assert.assertTrue(forkJoin.metrics().containsKey(forkJoin.getName() + "#1"));
+    }
+
+    @Test(timeout = 5000)
+    public void testMBean() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance().recordMetrics().fork(Stream::count).registerMBean();
+        final ObjectName objectName = forkJoin.getMBeanName();
+        Assert.assertEquals(ForkJoinMXBean.DOMAIN, objectName.getDomain());
+        Assert.assertEquals(forkJoin.getName(), objectName.getKeyProperty("name"));
+        forkJoin.accept(1);
+        Assert.assertEquals(forkJoin.getName(), server.getAttribute(objectName, "Name"));
+        final CompositeData[] forks = (CompositeData[]) server.getAttribute(objectName, "Forks");
+        Assert.assertEquals(1, forks.length);
+        Assert.assertEquals(forkJoin.getName() + "#0", forks[0].get("id"));
+        Assert.assertEquals(1L, forks[0].get("enqueued"));
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertFalse(server.isRegistered(objectName));
+    }
+
+    @Test(timeout = 5000)
+    public void testMBeansOfSameName() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final List<ForkJoin<Integer, ?>> forkJoins = new ArrayList<>();
+        // the ForkJoins created in the same millisecond share a name.
+        for (int i = 0; i < 100; i++) {
+            forkJoins.add(ForkJoin.<Integer>newInstance().recordMetrics().fork(Stream::count).registerMBean());
+        }
+        Assert.assertEquals(100, forkJoins.stream().map(ForkJoin::getMBeanName).distinct().filter(server::isRegistered).count());
+        for (ForkJoin<Integer, ?> forkJoin : forkJoins) {
+            final ObjectName objectName = forkJoin.getMBeanName();
+            Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+            Assert.assertFalse(server.isRegistered(objectName));
+            Assert.assertNull(forkJoin.getMBeanName());
+        }
+    }
+
+    @Test
+    public void testSnapshot() {
+        final long[] histogram = new long[Long.SIZE];
+        histogram[10] = 98;
+        histogram[20] = 2;
+        final ForkMetrics.Snapshot previous = new ForkMetrics.Snapshot("0", 0, 0, 0, 0, 0, 0, new long[Long.SIZE]);
+        final ForkMetrics.Snapshot snapshot = new ForkMetrics.Snapshot("0", TimeUnit.SECONDS.toNanos(2), 200, 100, 100,
+            TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(3), histogram);
+        Assert.assertEquals(100, snapshot.enqueueRate(previous), 0);
+        Assert.assertEquals(50, snapshot.dequeueRate(previous), 0);
+        Assert.assertEquals(0.25, snapshot.getWaitRatio(), 0);
+        Assert.assertEquals((1 << 11) - 1, snapshot.getLatencyP50Nanos());
+        Assert.assertEquals((1 << 21) - 1, snapshot.getLatencyP99Nanos());
+        Assert.assertEquals(0, previous.getLatencyP99Nanos());
+    }
+
+    @Test
+    public void testBucketOf() {
+        Assert.assertEquals(0, ForkMetrics.bucketOf(-1));
+        Assert.assertEquals(0, ForkMetrics.bucketOf(1));
+        Assert.assertEquals(1, ForkMetrics.bucketOf(2));
+        Assert.assertEquals(1, ForkMetrics.bucketOf(3));
+        Assert.assertEquals(10, ForkMetrics.bucketOf(1024));
+        Assert.assertEquals(62, ForkMetrics.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testMetricsKeys() {
+        try (ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance().recordMetrics()
+            .forkPartitions(3, i -> i, Stream::count)) {
+            final Map<String, ForkMetrics.Snapshot> metrics = forkJoin.metrics();
+            Assert.assertEquals(3, metrics.size());
+            metrics.forEach((key, snapshot) -> Assert.assertEquals(key, snapshot.getId()));
+        }
+    }
+}
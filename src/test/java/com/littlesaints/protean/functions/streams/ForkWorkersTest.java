@@ -0,0 +1,170 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ForkWorkersTest {
+
+    @Test(timeout = 5000)
+    public void testWorkers() throws InterruptedException {
+        final Map<Integer, LongAdder> processed = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> threads = new ConcurrentHashMap<>();
+        final AtomicBoolean isSlowWorkerBlocked = new AtomicBoolean();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(999);
+        try (ForkJoin<Integer, BlockingQueue<Integer>> forkJoin = ForkJoin.<Integer>newInstance()
+            .forkWorkers(4, s -> s.forEach(i -> {
+                threads.computeIfAbsent(Thread.currentThread().getName(), t -> new LongAdder()).increment();
+                if (isSlowWorkerBlocked.compareAndSet(false, true)) {
+                    try {
+                        // the other workers should process the remaining inputs meanwhile.
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                processed.computeIfAbsent(i, k -> new LongAdder()).increment();
+                latch.countDown();
+            }))) {
+            IntStream.range(0, 1000).boxed().forEach(forkJoin);
+            latch.await();
+            release.countDown();
+        }
+        Assert.assertTrue(processed.size() >= 999);
+        processed.values().forEach(count -> Assert.assertEquals(1, count.intValue()));
+        Assert.assertTrue(threads.size() > 1);
+    }
+
+    @Test(timeout = 5000)
+    public void testWorkersWithRingBuffer() throws InterruptedException {
+        final LongAdder sum = new LongAdder();
+        final LongAdder others = new LongAdder();
+        final CountDownLatch latch = new CountDownLatch(1000 + 500);
+        try (ForkJoin<Integer, RingBuffer<Integer>> forkJoin = ForkJoin.<Integer>ofRingBuffer(16)
+            .forkWorkers(3, i -> i % 2 == 0, s -> s.forEach(i -> {sum.add(i); latch.countDown();}))
+            .fork(s -> s.forEach(i -> {others.increment(); latch.countDown();}))) {
+            IntStream.range(0, 1000).boxed().parallel().forEach(forkJoin);
+            latch.await();
+        }
+        Assert.assertEquals(IntStream.range(0, 1000).filter(i -> i % 2 == 0).sum(), sum.intValue());
+        Assert.assertEquals(1000, others.intValue());
+    }
+
+    @Test(timeout = 5000)
+    public void testParallelFork() throws InterruptedException {
+        final Map<Integer, LongAdder> processed = new ConcurrentHashMap<>();
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final LongAdder others = new LongAdder();
+        final CountDownLatch latch = new CountDownLatch(3);
+        final ForkJoin<Integer, BlockingQueue<Integer>> forkJoin = ForkJoin.<Integer>newInstance()
+            .fork(i -> i % 2 == 0, s -> s.forEach(i -> {
+                if (threads.add(Thread.currentThread().getName())) {
+                    latch.countDown();
+                }
+                try {
+                    // every thread waits for the others, so that a single thread doesn't drain the exchange.
+                    latch.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                processed.computeIfAbsent(i, k -> new LongAdder()).increment();
+            }), 3)
+            .fork(s -> s.forEach(i -> others.increment()));
+        IntStream.range(0, 1000).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(IntStream.range(0, 1000).filter(i -> i % 2 == 0).boxed().collect(Collectors.toSet()), processed.keySet());
+        processed.values().forEach(count -> Assert.assertEquals(1, count.intValue()));
+        Assert.assertEquals(3, threads.size());
+        Assert.assertEquals(1000, others.intValue());
+    }
+
+    /**
+     * The inputs with the same key should be processed by the same thread, in the order they're accepted.
+     */
+    @Test(timeout = 5000)
+    public void testParallelForkByKey() throws InterruptedException {
+        final Map<Integer, List<Integer>> processed = new ConcurrentHashMap<>();
+        final Map<Integer, String> threads = new ConcurrentHashMap<>();
+        final LongAdder mismatches = new LongAdder();
+        try (ForkJoin<Integer, RingBuffer<Integer>> forkJoin = ForkJoin.<Integer>ofRingBuffer(16)
+            .fork(i -> i >= 0, s -> s.forEach(i -> {
+                final String thread = Thread.currentThread().getName();
+                if (!thread.equals(threads.computeIfAbsent(i % 10, k -> thread))) {
+                    mismatches.increment();
+                }
+                processed.computeIfAbsent(i % 10, k -> new CopyOnWriteArrayList<>()).add(i);
+            }), 4, i -> i % 10)) {
+            IntStream.range(0, 1000).boxed().forEach(forkJoin);
+            Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(0, mismatches.intValue());
+        Assert.assertTrue(threads.values().stream().distinct().count() > 1);
+        processed.forEach((key, inputs) -> Assert.assertEquals(
+            IntStream.range(0, 100).map(i -> i * 10 + key).boxed().collect(Collectors.toList()), inputs));
+    }
+
+    /**
+     * A parallel fork of a broadcast should see only it's matching inputs, sub-partitioned among it's threads.
+     */
+    @Test(timeout = 5000)
+    public void testBroadcastParallelForkByKey() throws InterruptedException {
+        final Map<Integer, List<Integer>> processed = new ConcurrentHashMap<>();
+        final LongAdder all = new LongAdder();
+        final ForkJoin<Integer, BroadcastBuffer<Integer>> forkJoin = ForkJoin.<Integer>broadcast(16)
+            .fork(i -> i % 2 == 0, s -> s.forEach(i -> processed.computeIfAbsent(i % 4, k -> new CopyOnWriteArrayList<>()).add(i)),
+                2, i -> i % 4)
+            .fork(s -> s.forEach(i -> all.increment()));
+        IntStream.range(0, 100).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(100, all.intValue());
+        Assert.assertEquals(IntStream.range(0, 25).map(i -> i * 4).boxed().collect(Collectors.toList()), processed.get(0));
+        Assert.assertEquals(IntStream.range(0, 25).map(i -> i * 4 + 2).boxed().collect(Collectors.toList()), processed.get(2));
+        Assert.assertEquals(2, processed.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        ForkJoin.<Integer>newInstance().fork(i -> true, s -> s.forEach(i -> {}), 0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testBroadcastWorkers() {
+        try (ForkJoin<Integer, BroadcastBuffer<Integer>> forkJoin = ForkJoin.broadcast(16)) {
+            forkJoin.forkWorkers(2, s -> s.forEach(i -> {}));
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+public class IntStreamSourceTest {
+
+    @Test(timeout = 5000)
+    public void testStreamComplete() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final int limit = 100;
+        final IntStream source = IntStreamSource.builder()
+                .provider(atomicInteger::incrementAndGet)
+                .doWhile(() -> atomicInteger.get() < limit)
+                .build().get();
+        Assert.assertEquals(IntStream.rangeClosed(1, limit).sum(), source.sum());
+        Assert.assertEquals(limit, atomicInteger.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testEndOfStream() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final IntStream source = IntStreamSource.builder()
+                .provider(() -> atomicInteger.incrementAndGet() % 5)
+                .endOfStream(i -> i == 0)
+                .build().get();
+        Assert.assertArrayEquals(new int[]{1, 2, 3, 4}, source.toArray());
+        Assert.assertEquals(5, atomicInteger.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testStreamClose() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final IntStream source = IntStreamSource.builder()
+                .provider(atomicInteger::incrementAndGet)
+                .build().get();
+        source.forEach(i -> {
+            if (i == 100) {
+                source.close();
+            }
+        });
+        Assert.assertEquals(100, atomicInteger.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testTryAdvance() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final Spliterator.OfInt spliterator = IntStreamSource.builder()
+                .provider(atomicInteger::incrementAndGet)
+                .endOfStream(i -> i > 3)
+                .build().get().spliterator();
+        final int[] values = new int[3];
+        for (int i = 0; i < 3; i++) {
+            final int index = i;
+            Assert.assertTrue(spliterator.tryAdvance((int value) -> values[index] = value));
+        }
+        Assert.assertFalse(spliterator.tryAdvance((int value) -> Assert.fail()));
+        Assert.assertEquals(Arrays.toString(new int[]{1, 2, 3}), Arrays.toString(values));
+        Assert.assertNull(spliterator.trySplit());
+    }
+
+    @Test(timeout = 5000)
+    public void testParallel() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final int limit = 1000;
+        final Set<Integer> values = ConcurrentHashMap.newKeySet();
+        final IntStream source = IntStreamSource.builder()
+                .provider(atomicInteger::incrementAndGet)
+                .endOfStream(i -> i > limit)
+                .parallel(true)
+                .parallelism(4)
+                .build().get();
+        Assert.assertTrue(source.isParallel());
+        source.forEach(i -> Assert.assertTrue(values.add(i)));
+        Assert.assertEquals(limit, values.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        IntStreamSource.builder().provider(() -> 1).parallel(true).parallelism(0).build().get();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNoProvider() {
+        IntStreamSource.builder().build().get();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class JoinTest {
+
+    private final ExecutorService consumers = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        consumers.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void testUnordered() throws Exception {
+        final Join<Integer> join = Join.unordered(3, 64);
+        final Future<List<Integer>> results = consume(join);
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>ofRingBuffer(64)
+            .forkWorkers(3, join.branch(s -> s.map(i -> i * 2)));
+        IntStream.range(0, 10000).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(IntStream.range(0, 10000).map(i -> i * 2).boxed().collect(Collectors.toList()),
+            results.get().stream().sorted().collect(Collectors.toList()));
+    }
+
+    /**
+     * The results of the workers should be in the order of the inputs, while the reorder buffer is smaller than the inputs.
+     */
+    @Test(timeout = 10000)
+    public void testOrderedWorkers() throws Exception {
+        final Join<String> join = Join.ordered(4, 8);
+        final Future<List<String>> results = consume(join);
+        final ForkJoin<Join.Sequenced<Integer>, ?> forkJoin = ForkJoin.<Join.Sequenced<Integer>>newInstance()
+            .forkWorkers(4, join.orderedBranch(i -> {
+                if (i % 100 == 0) {
+                    Thread.yield();
+                }
+                return String.valueOf(i);
+            }));
+        IntStream.range(0, 5000).boxed().map(join::sequence).forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(IntStream.range(0, 5000).mapToObj(String::valueOf).collect(Collectors.toList()), results.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testOrderedForks() throws Exception {
+        final Join<Integer> join = Join.ordered(2, 16);
+        final Future<List<Integer>> results = consume(join);
+        final ForkJoin<Join.Sequenced<Integer>, ?> forkJoin = ForkJoin.<Join.Sequenced<Integer>>ofRingBuffer(16)
+            .fork(s -> s.getValue() % 2 == 0, join.orderedBranch(i -> i))
+            .fork(s -> s.getValue() % 2 != 0, join.orderedBranch(i -> -i));
+        IntStream.range(0, 1000).boxed().map(join::sequence).forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(IntStream.range(0, 1000).map(i -> i % 2 == 0 ? i : -i).boxed().collect(Collectors.toList()),
+            results.get());
+    }
+
+    /**
+     * The null results and the inputs of a failing mapper should be skipped, without stalling the join.
+     */
+    @Test(timeout = 10000)
+    public void testOrderedSkips() throws Exception {
+        final Join<Integer> join = Join.ordered(1, 4);
+        final Future<List<Integer>> results = consume(join);
+        final ForkJoin<Join.Sequenced<Integer>, ?> forkJoin = ForkJoin.<Join.Sequenced<Integer>>newInstance()
+            .supervision(Supervision.deadLetter(failure -> {}))
+            .fork(join.orderedBranch(i -> {
+                if (i % 3 == 0) {
+                    throw new IllegalArgumentException();
+                }
+                return i % 3 == 1 ? i : null;
+            }));
+        IntStream.range(0, 30).boxed().map(join::sequence).forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(IntStream.range(0, 30).filter(i -> i % 3 == 1).boxed().collect(Collectors.toList()), results.get());
+    }
+
+    /**
+     * A sequence number that never reaches a branch should be skipped, once the branches complete.
+     */
+    @Test(timeout = 10000)
+    public void testOrderedGap() throws Exception {
+        final Join<Integer> join = Join.ordered(1, 16);
+        final Future<List<Integer>> results = consume(join);
+        final ForkJoin<Join.Sequenced<Integer>, ?> forkJoin = ForkJoin.<Join.Sequenced<Integer>>newInstance()
+            .fork(join.orderedBranch(i -> i));
+        IntStream.range(0, 10).boxed().map(join::sequence).filter(s -> s.getSequence() != 3).forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 4, 5, 6, 7, 8, 9), results.get());
+    }
+
+    /**
+     * The branches shouldn't wait for a closed join.
+     */
+    @Test(timeout = 10000)
+    public void testClose() throws Exception {
+        final Join<Integer> unordered = Join.unordered(1, 2);
+        final Join<Integer> ordered = Join.ordered(1, 2);
+        unordered.close();
+        ordered.close();
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance().fork(unordered.branch(s -> s));
+        final ForkJoin<Join.Sequenced<Integer>, ?> sequenced = ForkJoin.<Join.Sequenced<Integer>>newInstance()
+            .fork(ordered.orderedBranch(i -> i));
+        IntStream.range(0, 100).boxed().forEach(forkJoin);
+        IntStream.range(0, 100).boxed().map(ordered::sequence).forEach(sequenced);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertTrue(sequenced.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, unordered.get().count());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testBranchOfOrdered() {
+        Join.<Integer>ordered(1, 2).<Integer>branch(s -> s);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        Join.unordered(1, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBranches() {
+        Join.ordered(0, 2);
+    }
+
+    private <R> Future<List<R>> consume(Join<R> join) {
+        return consumers.submit(() -> join.get().collect(Collectors.toList()));
+    }
+}
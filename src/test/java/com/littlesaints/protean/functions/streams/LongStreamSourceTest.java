@@ -0,0 +1,69 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+public class LongStreamSourceTest {
+
+    @Test(timeout = 5000)
+    public void testStreamComplete() {
+        final AtomicLong atomicLong = new AtomicLong(Integer.MAX_VALUE);
+        final long limit = Integer.MAX_VALUE + 100L;
+        final LongStream source = LongStreamSource.builder()
+                .provider(atomicLong::incrementAndGet)
+                .doWhile(() -> atomicLong.get() < limit)
+                .build().get();
+        Assert.assertArrayEquals(LongStream.rangeClosed(Integer.MAX_VALUE + 1L, limit).toArray(), source.toArray());
+    }
+
+    @Test(timeout = 5000)
+    public void testEndOfStream() {
+        final AtomicLong atomicLong = new AtomicLong();
+        final LongStream source = LongStreamSource.builder()
+                .provider(atomicLong::incrementAndGet)
+                .endOfStream(l -> l > 100)
+                .build().get();
+        Assert.assertEquals(100, source.count());
+        Assert.assertEquals(101, atomicLong.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testParallel() {
+        final AtomicLong atomicLong = new AtomicLong();
+        final LongStream source = LongStreamSource.builder()
+                .provider(atomicLong::incrementAndGet)
+                .endOfStream(l -> l > 1000)
+                .parallel(true)
+                .parallelism(3)
+                .build().get();
+        Assert.assertEquals(LongStream.rangeClosed(1, 1000).sum(), source.sum());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNoProvider() {
+        LongStreamSource.builder().build().get();
+    }
+}
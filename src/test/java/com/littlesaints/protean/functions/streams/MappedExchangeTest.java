@@ -0,0 +1,237 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class MappedExchangeTest {
+
+    private static final MappedExchange.Codec<String> CODEC = MappedExchange.Codec.utf8();
+
+    private Path folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    /**
+     * The records should be read in order, across segments which don't fit a whole number of records.
+     */
+    @Test
+    public void testSegments() throws IOException {
+        final Path directory = folder;
+        final List<String> inputs = IntStream.range(0, 100).mapToObj(i -> "input-" + i).collect(Collectors.toList());
+        final List<String> outputs = new ArrayList<>();
+        try (MappedExchange<String> exchange = MappedExchange.open(directory, CODEC, 30)) {
+            inputs.forEach(exchange::put);
+            exchange.put("");
+            Assert.assertFalse(exchange.isEmpty());
+            Assert.assertEquals(100, exchange.drainTo(outputs, 100));
+            outputs.add(exchange.poll());
+            Assert.assertNull(exchange.poll());
+            Assert.assertTrue(exchange.isEmpty());
+            Assert.assertEquals(exchange.getWriteOffset(), exchange.getCommittedOffset());
+        }
+        final List<String> expected = new ArrayList<>(inputs);
+        expected.add("");
+        Assert.assertEquals(expected, outputs);
+        // the segments read are deleted.
+        try (Stream<Path> files = Files.list(directory)) {
+            Assert.assertTrue(files.count() <= 2);
+        }
+    }
+
+    /**
+     * A segment file that can't be deleted, e.g. while it's still mapped on Windows, shouldn't fail the reads and should be deleted upon a later commit.
+     */
+    @Test
+    public void testUndeletableSegment() throws IOException {
+        final Path directory = folder;
+        final Path segment = directory.resolve(String.format("%020d.segment", 0));
+        final Path blocker = segment.resolve("blocker");
+        try (MappedExchange<String> exchange = MappedExchange.open(directory, CODEC, 30)) {
+            IntStream.range(0, 10).mapToObj(i -> "input-" + i).forEach(exchange::put);
+            // the mapping remains readable, but a non-empty directory in place of the file can't be deleted.
+            Files.delete(segment);
+            Files.createDirectories(segment);
+            Files.createFile(blocker);
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals("input-" + i, exchange.poll());
+            }
+            Assert.assertTrue(exchange.getCommittedOffset() >= 30);
+            Assert.assertTrue(Files.exists(segment));
+            Files.delete(blocker);
+            Assert.assertEquals("input-5", exchange.poll());
+            Assert.assertFalse(Files.exists(segment));
+        }
+    }
+
+    /**
+     * Upon reopening, the reads should resume from the last element read, as it may not have been processed, and the writes should append.
+     */
+    @Test
+    public void testResume() {
+        final Path directory = folder;
+        try (MappedExchange<String> exchange = MappedExchange.open(directory, CODEC, 64)) {
+            IntStream.range(0, 10).mapToObj(String::valueOf).forEach(exchange::put);
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(String.valueOf(i), exchange.take());
+            }
+        }
+        final List<String> outputs = new ArrayList<>();
+        try (MappedExchange<String> exchange = MappedExchange.open(directory, CODEC, 64)) {
+            exchange.put("10");
+            exchange.drainTo(outputs, Integer.MAX_VALUE);
+            Assert.assertNull(exchange.poll());
+        }
+        Assert.assertEquals(Arrays.asList("4", "5", "6", "7", "8", "9", "10"), outputs);
+        try (MappedExchange<String> exchange = MappedExchange.open(directory, CODEC, 64)) {
+            Assert.assertTrue(exchange.isEmpty());
+        }
+    }
+
+    /**
+     * A record, whose length wasn't written due to a crash, should be ignored and overwritten.
+     */
+    @Test
+    public void testTornRecord() throws IOException {
+        final Path directory = folder;
+        try (MappedExchange<String> exchange = MappedExchange.open(directory, CODEC, 64)) {
+            exchange.put("a");
+            exchange.put("b");
+        }
+        final Path segment = directory.resolve(String.format("%020d.segment", 0));
+        final byte[] bytes = Files.readAllBytes(segment);
+        Arrays.fill(bytes, 5, 9, (byte) 0);
+        Files.write(segment, bytes);
+        try (MappedExchange<String> exchange = MappedExchange.open(directory, CODEC, 64)) {
+            exchange.put("c");
+            Assert.assertEquals("a", exchange.poll());
+            Assert.assertEquals("c", exchange.poll());
+            Assert.assertNull(exchange.poll());
+        }
+    }
+
+    @Test
+    public void testEndOfStream() {
+        final MappedExchange.Codec<Object> codec = MappedExchange.Codec.of(o -> CODEC.encode((String) o), CODEC::decode);
+        try (MappedExchange<Object> exchange = MappedExchange.open(folder, codec, 64)) {
+            exchange.put("a");
+            exchange.put(ForkJoin.END_OF_STREAM);
+            exchange.put("b");
+            final List<Object> batch = new ArrayList<>();
+            Assert.assertEquals(1, exchange.drainTo(batch, 10));
+            Assert.assertEquals(1, exchange.drainTo(batch, 10));
+            Assert.assertSame(ForkJoin.END_OF_STREAM, batch.get(1));
+            Assert.assertEquals("b", exchange.take());
+        }
+    }
+
+    @Test
+    public void testForkJoin() throws InterruptedException {
+        final Path directory = folder;
+        final List<String> processed = new CopyOnWriteArrayList<>();
+        final ForkJoin<String, MappedExchange<String>> forkJoin = ForkJoin.ofMappedExchange(directory, CODEC, 256)
+            .fork(s -> s.forEach(processed::add));
+        IntStream.range(0, 100).mapToObj(String::valueOf).forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(100, processed.size());
+        // the processed inputs aren't processed again upon a restart.
+        try (MappedExchange<String> exchange = MappedExchange.open(directory.resolve("0"), CODEC, 256)) {
+            Assert.assertTrue(exchange.isEmpty());
+        }
+    }
+
+    /**
+     * The inputs not processed by a fork, e.g. due to a crash, should be processed by the fork upon a restart.
+     */
+    @Test(timeout = 5000)
+    public void testForkJoinRestart() throws InterruptedException {
+        final Path directory = folder;
+        final CountDownLatch stuck = new CountDownLatch(1);
+        final ForkJoin<String, MappedExchange<String>> crashing = ForkJoin.ofMappedExchange(directory, CODEC, 256)
+            .fork(s -> s.forEach(i -> {
+                if ("5".equals(i)) {
+                    stuck.countDown();
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+        IntStream.range(0, 10).mapToObj(String::valueOf).forEach(crashing);
+        stuck.await();
+        crashing.close();
+
+        final List<String> processed = new CopyOnWriteArrayList<>();
+        final ForkJoin<String, MappedExchange<String>> restarted = ForkJoin.ofMappedExchange(directory, CODEC, 256)
+            .fork(s -> s.forEach(processed::add));
+        restarted.accept("10");
+        Assert.assertTrue(restarted.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("5", "6", "7", "8", "9", "10"), processed.subList(processed.indexOf("5"), processed.size()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testElementTooLarge() {
+        try (MappedExchange<String> exchange = MappedExchange.open(folder, CODEC, 8)) {
+            exchange.put("12345");
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() {
+        final MappedExchange<String> exchange = MappedExchange.open(folder, CODEC, 8);
+        exchange.close();
+        Assert.assertNull(exchange.take());
+        exchange.put("a");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSegmentSize() {
+        MappedExchange.open(folder, CODEC, 4);
+    }
+}
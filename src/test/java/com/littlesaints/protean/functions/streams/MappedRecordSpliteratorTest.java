@@ -0,0 +1,159 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class MappedRecordSpliteratorTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile(getClass().getSimpleName(), ".records");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * The lines should be read across windows, including the last line without a new line.
+     */
+    @Test(timeout = 5000)
+    public void testNewlineDelimited() throws IOException {
+        final List<String> lines = IntStream.range(0, 10000).mapToObj(i -> "line-" + i).collect(Collectors.toList());
+        Files.write(file, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        try (Stream<String> records = StreamSource.ofMappedFile(file, RecordFramer.newlineDelimited(), 256)
+            .map(MappedRecordSpliteratorTest::decode)) {
+            Assert.assertEquals(lines, records.collect(Collectors.toList()));
+        }
+        try (Stream<String> records = StreamSource.ofMappedFile(file, RecordFramer.newlineDelimited(), MappedRecordSpliteratorTest::decode)) {
+            Assert.assertEquals(lines, records.parallel().collect(Collectors.toList()));
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testLengthPrefixed() throws IOException {
+        final List<String> records = writeLengthPrefixed(5000);
+        try (Stream<ByteBuffer> stream = StreamSource.ofMappedFile(file, RecordFramer.lengthPrefixed(), 128)) {
+            Assert.assertEquals(records, stream.parallel().map(MappedRecordSpliteratorTest::decode).collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * The splits should cover the file, without splitting a record.
+     */
+    @Test(timeout = 5000)
+    public void testSplit() throws IOException {
+        final List<String> records = writeLengthPrefixed(1000);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final Spliterator<ByteBuffer> suffix = new MappedRecordSpliterator(channel, RecordFramer.lengthPrefixed(), 1024,
+                channel.size(), 0, channel.size());
+            final Spliterator<ByteBuffer> prefix = suffix.trySplit();
+            Assert.assertNotNull(prefix);
+            final List<String> prefixRecords = new ArrayList<>();
+            final List<String> suffixRecords = new ArrayList<>();
+            prefix.forEachRemaining(record -> prefixRecords.add(decode(record)));
+            suffix.forEachRemaining(record -> suffixRecords.add(decode(record)));
+            Assert.assertFalse(prefixRecords.isEmpty());
+            Assert.assertFalse(suffixRecords.isEmpty());
+            prefixRecords.addAll(suffixRecords);
+            Assert.assertEquals(records, prefixRecords);
+        }
+    }
+
+    /**
+     * The records should be read-only slices of the mapped file.
+     */
+    @Test
+    public void testZeroCopy() throws IOException {
+        Files.write(file, "a\nb\n".getBytes(StandardCharsets.UTF_8));
+        try (Stream<ByteBuffer> stream = StreamSource.ofMappedFile(file, RecordFramer.newlineDelimited())) {
+            stream.forEach(record -> {
+                Assert.assertTrue(record.isDirect());
+                Assert.assertTrue(record.isReadOnly());
+                Assert.assertEquals(1, record.remaining());
+            });
+        }
+    }
+
+    /**
+     * A truncated record at the end of the file, e.g. due to a crash of the writer, should be ignored.
+     */
+    @Test
+    public void testTruncatedRecord() throws IOException {
+        final List<String> records = writeLengthPrefixed(10);
+        Files.write(file, new byte[]{0, 0, 0, 10, 'x'}, StandardOpenOption.APPEND);
+        try (Stream<ByteBuffer> stream = StreamSource.ofMappedFile(file, RecordFramer.lengthPrefixed())) {
+            Assert.assertEquals(records, stream.map(MappedRecordSpliteratorTest::decode).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testEmptyFile() {
+        try (Stream<ByteBuffer> stream = StreamSource.ofMappedFile(file, RecordFramer.newlineDelimited())) {
+            Assert.assertEquals(0, stream.count());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRecordLargerThanWindow() throws IOException {
+        Files.write(file, "0123456789\n".getBytes(StandardCharsets.UTF_8));
+        try (Stream<ByteBuffer> stream = StreamSource.ofMappedFile(file, RecordFramer.newlineDelimited(), 8)) {
+            stream.count();
+        }
+    }
+
+    private List<String> writeLengthPrefixed(int count) throws IOException {
+        final List<String> records = IntStream.range(0, count).mapToObj(i -> "record-" + i).collect(Collectors.toList());
+        final ByteBuffer buffer = ByteBuffer.allocate(count * 32);
+        records.forEach(record -> {
+            final byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length).put(bytes);
+        });
+        Files.write(file, Arrays.copyOf(buffer.array(), buffer.position()));
+        return records;
+    }
+
+    private static String decode(ByteBuffer record) {
+        return StandardCharsets.UTF_8.decode(record).toString();
+    }
+}
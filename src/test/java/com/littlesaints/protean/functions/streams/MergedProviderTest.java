@@ -0,0 +1,133 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class MergedProviderTest {
+
+    @Test
+    public void testRoundRobin() {
+        final MergedProvider<String> provider = MergedProvider.<String>builder()
+            .provider(queue("a1", "a2", "a3")::poll)
+            .provider(queue("b1")::poll)
+            .provider(queue("c1", "c2")::poll)
+            .maxBackoff(0)
+            .build();
+        Assert.assertEquals(Arrays.asList("a1", "b1", "c1", "a2", "c2", "a3"), drain(provider));
+    }
+
+    @Test
+    public void testWeighted() {
+        final MergedProvider<String> provider = MergedProvider.<String>builder()
+            .provider(queue("a1", "a2", "a3", "a4", "a5", "a6")::poll, 3)
+            .provider(queue("b1", "b2", "b3")::poll)
+            .build();
+        Assert.assertEquals(Arrays.asList("a1", "a2", "a3", "b1", "a4", "a5", "a6", "b2", "b3"), drain(provider));
+    }
+
+    /**
+     * An idle provider should be polled less often, the longer it stays idle, and as often as the others again, once it has elements.
+     */
+    @Test
+    public void testBackoff() {
+        final LongAdder idlePolls = new LongAdder();
+        final Queue<Integer> idle = new ArrayDeque<>();
+        final Queue<Integer> busy = new ArrayDeque<>();
+        IntStream.range(0, 1000).forEach(busy::add);
+        final MergedProvider<Integer> provider = MergedProvider.<Integer>builder()
+            .provider(() -> {
+                idlePolls.increment();
+                return idle.poll();
+            })
+            .provider(busy::poll)
+            .maxBackoff(8)
+            .build();
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertNotNull(provider.get());
+        }
+        Assert.assertTrue(idlePolls.intValue() < 150);
+        idle.add(-1);
+        // the idle provider is polled within the max backoff.
+        Assert.assertEquals(-1, IntStream.range(0, 10).mapToObj(i -> provider.get()).filter(i -> i != null && i < 0).findFirst().orElse(0)
+            .intValue());
+    }
+
+    @Test
+    public void testNoneAvailable() {
+        final MergedProvider<Integer> provider = MergedProvider.<Integer>builder()
+            .provider(() -> null)
+            .provider(() -> null)
+            .build();
+        Assert.assertNull(provider.get());
+        Assert.assertNull(provider.get());
+    }
+
+    /**
+     * A single stream should consume the partitions filled by many producers.
+     */
+    @Test(timeout = 5000)
+    public void testStreamSource() throws InterruptedException {
+        final int partitions = 16;
+        final MergedProvider.Builder<Integer> builder = MergedProvider.builder();
+        final List<Queue<Integer>> queues = IntStream.range(0, partitions).mapToObj(i -> new ConcurrentLinkedQueue<Integer>())
+            .collect(Collectors.toList());
+        queues.forEach(queue -> builder.provider(queue::poll));
+        final Thread producer = new Thread(() -> IntStream.range(0, 10000).forEach(i -> queues.get(i % partitions).add(i)));
+        producer.start();
+        try (Stream<Integer> source = StreamSource.<Integer>builder()
+            .provider(builder.build())
+            .waitStrategy(WaitStrategy.DEFAULT)
+            .build().get()) {
+            Assert.assertEquals(IntStream.range(0, 10000).sum(), source.limit(10000).mapToInt(Integer::intValue).sum());
+        }
+        producer.join();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoProviders() {
+        MergedProvider.builder().build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWeight() {
+        MergedProvider.<Integer>builder().provider(() -> 1, 0);
+    }
+
+    private static Queue<String> queue(String... elements) {
+        return new ArrayDeque<>(Arrays.asList(elements));
+    }
+
+    private static <T> List<T> drain(MergedProvider<T> provider) {
+        return Stream.generate(provider).limit(100).filter(t -> t != null).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class PipelineTest {
+
+    /**
+     * The stateless stages following a stage should be fused into it, and counted on their own.
+     */
+    @Test(timeout = 5000)
+    public void testFusion() throws InterruptedException {
+        final List<Integer> outputs = new CopyOnWriteArrayList<>();
+        final Pipeline.Builder<String> builder = Pipeline.builder();
+        builder.source()
+            .map("parse", Integer::valueOf).parallelism(2)
+            .filter("even", i -> i % 2 == 0)
+            .map("square", i -> i * i)
+            .sink("collect", outputs::add);
+        final Pipeline<String> pipeline = builder.build();
+        IntStream.range(0, 100).mapToObj(String::valueOf).forEach(pipeline);
+        Assert.assertTrue(pipeline.closeAndAwait(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals(IntStream.range(0, 50).map(i -> 4 * i * i).boxed().collect(Collectors.toList()),
+            outputs.stream().sorted().collect(Collectors.toList()));
+        final Map<String, Pipeline.StageMetrics> metrics = pipeline.metrics();
+        Assert.assertEquals(Arrays.asList("parse", "even", "square", "collect"), new ArrayList<>(metrics.keySet()));
+        Assert.assertFalse(metrics.get("parse").isFused());
+        Assert.assertEquals("parse", metrics.get("even").getFusedInto());
+        Assert.assertEquals("parse", metrics.get("square").getFusedInto());
+        Assert.assertEquals("parse", metrics.get("collect").getFusedInto());
+        Assert.assertEquals(100, metrics.get("parse").getProcessed());
+        Assert.assertEquals(100, metrics.get("even").getProcessed());
+        Assert.assertEquals(50, metrics.get("square").getProcessed());
+        Assert.assertEquals(50, metrics.get("collect").getProcessed());
+        Assert.assertTrue(metrics.get("parse").getThroughput() > 0);
+    }
+
+    /**
+     * Every downstream stage should read every output of a stage, through it's own exchange.
+     */
+    @Test(timeout = 5000)
+    public void testFanOutAndMerge() throws InterruptedException {
+        final LongAdder all = new LongAdder();
+        final List<Integer> merged = new CopyOnWriteArrayList<>();
+        final Pipeline.Builder<Integer> builder = Pipeline.builder();
+        final Pipeline.Node<Integer> numbers = builder.source().map("identity", i -> i);
+        numbers.sink("all", i -> all.increment());
+        final Pipeline.Node<Integer> negatives = numbers.map("negate", i -> -i);
+        final Pipeline.Node<Integer> doubles = numbers.map("double", i -> 2 * i).exchange(Pipeline.Exchange.ringBuffer(16));
+        builder.merge("merge", negatives, doubles).sink("collect", merged::add);
+        final Pipeline<Integer> pipeline = builder.build();
+        IntStream.range(1, 11).boxed().forEach(pipeline);
+        Assert.assertTrue(pipeline.closeAndAwait(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals(10, all.intValue());
+        Assert.assertEquals(IntStream.range(1, 11).flatMap(i -> IntStream.of(-i, 2 * i)).sorted().boxed().collect(Collectors.toList()),
+            merged.stream().sorted().collect(Collectors.toList()));
+        pipeline.metrics().values().stream()
+            .filter(stage -> !"collect".equals(stage.getName()))
+            .forEach(stage -> Assert.assertFalse(stage.getName(), stage.isFused()));
+        Assert.assertEquals("merge", pipeline.metrics().get("collect").getFusedInto());
+    }
+
+    /**
+     * A stateful stage should see all the outputs of it's upstream, which completes before it.
+     */
+    @Test(timeout = 5000)
+    public void testStatefulStage() throws InterruptedException {
+        final List<Integer> outputs = new CopyOnWriteArrayList<>();
+        final Pipeline.Builder<Integer> builder = Pipeline.builder();
+        builder.source()
+            .map("identity", i -> i)
+            .stage("sort", Stream::sorted)
+            .sink("collect", outputs::add);
+        final Pipeline<Integer> pipeline = builder.build();
+        IntStream.range(0, 100).map(i -> 99 - i).boxed().forEach(pipeline);
+        Assert.assertTrue(pipeline.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(IntStream.range(0, 100).boxed().collect(Collectors.toList()), outputs);
+        Assert.assertFalse(pipeline.metrics().get("sort").isFused());
+    }
+
+    @Test(timeout = 5000)
+    public void testSharedExecutor() throws InterruptedException {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final LongAdder outputs = new LongAdder();
+        final Pipeline.Builder<Integer> builder = Pipeline.<Integer>builder().executor(executor);
+        builder.source().sink("count", i -> outputs.increment()).parallelism(3);
+        final Pipeline<Integer> pipeline = builder.build();
+        IntStream.range(0, 100).boxed().forEach(pipeline);
+        Assert.assertTrue(pipeline.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(100, outputs.intValue());
+        Assert.assertFalse(executor.isShutdown());
+        executor.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateName() {
+        final Pipeline.Builder<Integer> builder = Pipeline.builder();
+        builder.source().map("a", i -> i).map("a", i -> i);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDownstreamOfSink() {
+        final Pipeline.Builder<Integer> builder = Pipeline.builder();
+        builder.source().sink("a", i -> {}).map("b", i -> i);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        final Pipeline.Builder<Integer> builder = Pipeline.builder();
+        builder.source().map("a", i -> i).parallelism(0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testConfigureSource() {
+        Pipeline.<Integer>builder().source().parallelism(2);
+    }
+}
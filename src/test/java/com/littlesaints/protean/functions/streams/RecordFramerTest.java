@@ -0,0 +1,72 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class RecordFramerTest {
+
+    @Test
+    public void testLengthPrefixed() {
+        final RecordFramer framer = RecordFramer.lengthPrefixed();
+        final ByteBuffer buffer = ByteBuffer.allocate(16).putInt(3).put("abc".getBytes(StandardCharsets.UTF_8)).putInt(8);
+        buffer.flip();
+        Assert.assertEquals(7, framer.frameLength(buffer, 0, false));
+        Assert.assertEquals("abc", StandardCharsets.UTF_8.decode(framer.record(buffer, 0, 7)).toString());
+        // the second frame isn't complete.
+        Assert.assertEquals(-1, framer.frameLength(buffer, 7, true));
+        Assert.assertEquals(-1, framer.frameLength(buffer, 9, false));
+        Assert.assertFalse(framer.isSelfSynchronizing());
+    }
+
+    @Test
+    public void testDelimited() {
+        final RecordFramer framer = RecordFramer.delimited((byte) ';');
+        final ByteBuffer buffer = ByteBuffer.wrap("ab;;cd".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(3, framer.frameLength(buffer, 0, false));
+        Assert.assertEquals("ab", StandardCharsets.UTF_8.decode(framer.record(buffer, 0, 3)).toString());
+        Assert.assertEquals(1, framer.frameLength(buffer, 3, false));
+        Assert.assertEquals(0, framer.record(buffer, 3, 1).remaining());
+        // the last record isn't delimited.
+        Assert.assertEquals(-1, framer.frameLength(buffer, 4, false));
+        Assert.assertEquals(2, framer.frameLength(buffer, 4, true));
+        Assert.assertEquals("cd", StandardCharsets.UTF_8.decode(framer.record(buffer, 4, 2)).toString());
+        Assert.assertTrue(framer.isSelfSynchronizing());
+        Assert.assertEquals(3, framer.nextFrame(buffer, 1));
+        Assert.assertEquals(-1, framer.nextFrame(buffer, 4));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInvalidLength() {
+        final ByteBuffer buffer = ByteBuffer.allocate(8).putInt(-1);
+        buffer.flip();
+        RecordFramer.lengthPrefixed().frameLength(buffer, 0, false);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testNextFrameNotSupported() {
+        RecordFramer.lengthPrefixed().nextFrame(ByteBuffer.allocate(8), 0);
+    }
+}
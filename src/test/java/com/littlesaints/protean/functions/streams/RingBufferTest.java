@@ -0,0 +1,101 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+public class RingBufferTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        RingBuffer.of(3);
+    }
+
+    @Test
+    public void testOfferPoll() {
+        final RingBuffer<Integer> ringBuffer = RingBuffer.of(4);
+        Assert.assertTrue(ringBuffer.isEmpty());
+        Assert.assertNull(ringBuffer.poll());
+        IntStream.range(0, 4).forEach(i -> Assert.assertTrue(ringBuffer.offer(i)));
+        Assert.assertFalse(ringBuffer.offer(4));
+        Assert.assertEquals(4, ringBuffer.size());
+        IntStream.range(0, 4).forEach(i -> Assert.assertEquals(Integer.valueOf(i), ringBuffer.poll()));
+        Assert.assertNull(ringBuffer.poll());
+        Assert.assertTrue(ringBuffer.offer(5));
+        Assert.assertEquals(Integer.valueOf(5), ringBuffer.take());
+    }
+
+    @Test
+    public void testDrainTo() {
+        final RingBuffer<Integer> ringBuffer = RingBuffer.of(8);
+        final List<Integer> batch = new ArrayList<>();
+        Assert.assertEquals(0, ringBuffer.drainTo(batch, 4));
+        IntStream.range(0, 6).forEach(ringBuffer::put);
+        Assert.assertEquals(4, ringBuffer.drainTo(batch, 4));
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3), batch);
+        IntStream.range(6, 12).forEach(ringBuffer::put);
+        batch.clear();
+        Assert.assertEquals(8, ringBuffer.drainTo(batch, 16));
+        Assert.assertEquals(Arrays.asList(4, 5, 6, 7, 8, 9, 10, 11), batch);
+        Assert.assertTrue(ringBuffer.isEmpty());
+        Assert.assertTrue(ringBuffer.offer(12));
+        Assert.assertEquals(Integer.valueOf(12), ringBuffer.poll());
+    }
+
+    @Test(timeout = 10000)
+    public void testMultipleProducers() throws InterruptedException {
+        final RingBuffer<Integer> ringBuffer = RingBuffer.of(16);
+        final int producers = 4;
+        final int perProducer = 10000;
+        IntStream.range(0, producers).forEach(p -> new Thread(() ->
+            IntStream.range(0, perProducer).forEach(ringBuffer::put)).start());
+        final LongAdder sum = new LongAdder();
+        for (int i = 0; i < producers * perProducer; i++) {
+            sum.add(ringBuffer.take());
+        }
+        Assert.assertEquals((long) producers * perProducer * (perProducer - 1) / 2, sum.sum());
+        Assert.assertTrue(ringBuffer.isEmpty());
+    }
+
+    @Test(timeout = 5000)
+    public void testForkJoin() throws InterruptedException {
+        final LongAdder negatives = new LongAdder();
+        final LongAdder all = new LongAdder();
+        final CountDownLatch latch = new CountDownLatch(300);
+        try (ForkJoin<Integer, RingBuffer<Integer>> forkJoin = ForkJoin.<Integer>ofRingBuffer(8)
+            .fork(i -> i < 0, s -> s.forEach(i -> {negatives.increment(); latch.countDown();}))
+            .fork(s -> s.forEach(i -> {all.increment(); latch.countDown();}))) {
+            IntStream.range(-100, 100).boxed().parallel().forEach(forkJoin);
+            latch.await();
+        }
+        Assert.assertEquals(100, negatives.intValue());
+        Assert.assertEquals(200, all.intValue());
+    }
+
+}
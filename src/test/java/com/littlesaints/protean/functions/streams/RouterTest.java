@@ -0,0 +1,173 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class RouterTest {
+
+    @Test
+    public void testRoutes() {
+        final AtomicIntegerArray output = new AtomicIntegerArray(5);
+        final Predicate<Integer> negative = i -> i < 0;
+        final Function<Integer, Integer> modulo = i -> Math.abs(i % 3);
+        final Predicate<Integer> always = Router.always();
+        final Router<Integer> router = Router.<Integer>empty()
+            .withRoute(always, i -> output.incrementAndGet(0))
+            .withRoute(negative, i -> output.incrementAndGet(1))
+            .withRoute(negative, i -> output.incrementAndGet(2))
+            .withKeyRoute(modulo, 0, i -> output.incrementAndGet(3))
+            .withKeyRoute(modulo, 1, i -> output.incrementAndGet(4));
+        Assert.assertEquals(5, router.size());
+        Assert.assertEquals(0, Router.<Integer>empty().size());
+        IntStream.range(-10, 10).boxed().forEach(router);
+        Assert.assertEquals(20, output.get(0));
+        Assert.assertEquals(10, output.get(1));
+        Assert.assertEquals(10, output.get(2));
+        Assert.assertEquals(7, output.get(3));
+        Assert.assertEquals(7, output.get(4));
+    }
+
+    @Test
+    public void testWithout() {
+        final AtomicIntegerArray output = new AtomicIntegerArray(4);
+        final Predicate<Integer> negative = i -> i < 0;
+        final Function<Integer, Integer> modulo = i -> Math.abs(i % 3);
+        final Consumer<Integer> unconditional = i -> output.incrementAndGet(0);
+        final Consumer<Integer> conditional = i -> output.incrementAndGet(1);
+        final Consumer<Integer> keyed = i -> output.incrementAndGet(2);
+        final Router<Integer> router = Router.<Integer>empty()
+            .withRoute(Router.always(), unconditional)
+            .withRoute(negative, conditional)
+            .withRoute(negative, i -> output.incrementAndGet(3))
+            .withKeyRoute(modulo, 0, keyed);
+        final Router<Integer> removed = router.without(unconditional).without(conditional).without(keyed);
+        Assert.assertEquals(4, router.size());
+        Assert.assertEquals(1, removed.size());
+        Assert.assertEquals(1, removed.without(unconditional).size());
+        IntStream.range(-10, 10).boxed().forEach(removed);
+        Assert.assertEquals(0, output.get(0));
+        Assert.assertEquals(0, output.get(1));
+        Assert.assertEquals(0, output.get(2));
+        Assert.assertEquals(10, output.get(3));
+    }
+
+    /**
+     * A removed partition should discard it's inputs, without remapping the keys of the other partitions.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWithoutPartition() {
+        final AtomicIntegerArray output = new AtomicIntegerArray(4);
+        final Function<Integer, Integer> key = i -> i;
+        final Consumer<Integer>[] partitions = Router.newArray(Consumer.class, 4);
+        for (int p = 0; p < partitions.length; p++) {
+            final int partition = p;
+            partitions[p] = i -> output.incrementAndGet(partition);
+        }
+        final Router<Integer> router = Router.<Integer>empty().withPartitionRoute(key, partitions);
+        final Router<Integer> removed = router.without(partitions[1]);
+        Assert.assertEquals(4, router.size());
+        Assert.assertEquals(3, removed.size());
+        IntStream.range(0, 100).boxed().forEach(removed);
+        for (int p = 0; p < partitions.length; p++) {
+            final int partition = p;
+            final long expected = IntStream.range(0, 100).filter(i -> Router.partitionOf(i, 4) == partition).count();
+            Assert.assertEquals(partition == 1 ? 0 : expected, output.get(partition));
+        }
+        Router<Integer> empty = removed;
+        for (Consumer<Integer> partition : partitions) {
+            empty = empty.without(partition);
+        }
+        Assert.assertEquals(0, empty.size());
+    }
+
+    @Test(timeout = 5000)
+    public void testForkJoinWithKeys() throws InterruptedException {
+        final Function<Integer, Integer> modulo = i -> Math.abs(i % 3);
+        final AtomicIntegerArray output = new AtomicIntegerArray(3);
+        final AtomicInteger all = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(200 + 200 + 134);
+        try (ForkJoin<Integer, BlockingQueue<Integer>> forkJoin = ForkJoin.<Integer>newInstance()
+            .fork(modulo, 0, s -> s.forEach(i -> {output.incrementAndGet(0); latch.countDown();}))
+            .fork(modulo, 1, s -> s.forEach(i -> {output.incrementAndGet(1); latch.countDown();}))
+            .fork(s -> s.forEach(i -> {all.incrementAndGet(); latch.countDown();}))
+            .fork(s -> s.forEach(i -> {output.incrementAndGet(2); latch.countDown();}))) {
+            IntStream.range(-100, 100).boxed().parallel().forEach(forkJoin);
+            latch.await();
+        }
+        Assert.assertEquals(67, output.get(0));
+        Assert.assertEquals(67, output.get(1));
+        Assert.assertEquals(200, output.get(2));
+        Assert.assertEquals(200, all.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testPartitionsPowerOfTwo() throws InterruptedException {
+        testPartitions(4);
+    }
+
+    @Test(timeout = 5000)
+    public void testPartitions() throws InterruptedException {
+        testPartitions(3);
+    }
+
+    private void testPartitions(int partitions) throws InterruptedException {
+        final int keys = 20;
+        final int perKey = 50;
+        final Map<Integer, Set<String>> threadsByKey = new ConcurrentHashMap<>();
+        final Map<Integer, List<Integer>> valuesByKey = new ConcurrentHashMap<>();
+        final CountDownLatch latch = new CountDownLatch(keys * perKey);
+        try (ForkJoin<Integer, BlockingQueue<Integer>> forkJoin = ForkJoin.<Integer>partitioned(partitions, i -> i % keys,
+            s -> s.forEach(i -> {
+                threadsByKey.computeIfAbsent(i % keys, k -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+                valuesByKey.computeIfAbsent(i % keys, k -> Collections.synchronizedList(new ArrayList<>())).add(i);
+                latch.countDown();
+            }))) {
+            IntStream.range(0, keys * perKey).boxed().forEach(forkJoin);
+            latch.await();
+        }
+        Assert.assertEquals(keys, threadsByKey.size());
+        threadsByKey.values().forEach(threads -> Assert.assertEquals(1, threads.size()));
+        Assert.assertEquals(partitions, threadsByKey.values().stream().flatMap(Set::stream).distinct().count());
+        valuesByKey.values().forEach(values -> Assert.assertEquals(values.stream().sorted().collect(Collectors.toList()), values));
+        IntStream.range(0, keys).forEach(key ->
+            Assert.assertTrue(Router.partitionOf(key, partitions) >= 0 && Router.partitionOf(key, partitions) < partitions));
+    }
+
+}
@@ -23,9 +23,24 @@ package com.littlesaints.protean.functions.streams;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public class StreamSourceTest {
@@ -105,4 +120,534 @@ public class StreamSourceTest {
         Assert.assertEquals(limit, atomicInteger.get());
         Assert.assertEquals(limit, count.intValue());
     }
+
+    @Test(timeout = 5000)
+    public void testEndOfStream() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final int limit = 100;
+        final LongAdder count = new LongAdder();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(atomicInteger::incrementAndGet)
+                .endOfStream(n -> n > limit)
+                .build().get();
+        source.forEach(n -> count.increment());
+        Assert.assertEquals(limit + 1, atomicInteger.get());
+        Assert.assertEquals(limit, count.intValue());
+    }
+
+    @Test(timeout = 5000)
+    public void testBatchProvider() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final int limit = 100;
+        final LongAdder count = new LongAdder();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .batchProvider(batch -> IntStream.range(0, 8).filter(i -> atomicInteger.get() < limit)
+                    .forEach(i -> batch.add(atomicInteger.incrementAndGet())))
+                .build().get();
+        source.forEach(n -> count.increment());
+        Assert.assertEquals(limit, atomicInteger.get());
+        Assert.assertEquals(limit, count.intValue());
+    }
+
+    @Test(timeout = 5000)
+    public void testBatchProviderShortCircuit() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .batchProvider(batch -> IntStream.range(0, 8).forEach(i -> batch.add(atomicInteger.incrementAndGet())))
+                .endOfStream(n -> n == 20)
+                .build().get();
+        Assert.assertEquals(Arrays.asList(1, 2, 3), source.limit(3).collect(Collectors.toList()));
+        Assert.assertEquals(8, atomicInteger.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testBatchProviderEndOfStream() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .batchProvider(batch -> IntStream.range(0, 8).forEach(i -> batch.add(atomicInteger.incrementAndGet())))
+                .endOfStream(n -> n == 20)
+                .build().get();
+        Assert.assertEquals(19, source.count());
+        Assert.assertEquals(24, atomicInteger.get());
+    }
+
+    /**
+     * The elements should continue in order, when a traversal by {@link Spliterator#tryAdvance} is followed by {@link Spliterator#forEachRemaining}.
+     */
+    @Test(timeout = 5000)
+    public void testAdvanceThenForEachRemaining() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final List<Integer> elements = new ArrayList<>();
+        final Spliterator<Integer> spliterator = StreamSource.<Integer>builder()
+                .provider(atomicInteger::incrementAndGet)
+                .endOfStream(n -> n > 10)
+                .build().get().spliterator();
+        Assert.assertTrue(spliterator.tryAdvance(elements::add));
+        Assert.assertTrue(spliterator.tryAdvance(elements::add));
+        spliterator.forEachRemaining(elements::add);
+        Assert.assertFalse(spliterator.tryAdvance(elements::add));
+        Assert.assertEquals(IntStream.rangeClosed(1, 10).boxed().collect(Collectors.toList()), elements);
+    }
+
+    /**
+     * The parts of a parallel stream should be processed by more than one thread, and pull every element exactly once.
+     */
+    @Test(timeout = 5000)
+    public void testParallel() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final int limit = 1000;
+        final Set<Integer> elements = ConcurrentHashMap.newKeySet();
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final CountDownLatch latch = new CountDownLatch(2);
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(() -> {
+                    final int n = atomicInteger.incrementAndGet();
+                    return n > limit ? null : n;
+                })
+                .endOfStream(Objects::isNull)
+                .parallel(true)
+                .parallelism(4)
+                .build().get();
+        Assert.assertTrue(source.isParallel());
+        source.forEach(n -> {
+            if (threads.add(Thread.currentThread().getName())) {
+                latch.countDown();
+            }
+            try {
+                // every thread waits for another one, so that a single thread doesn't drain the source.
+                latch.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Assert.assertTrue(elements.add(n));
+        });
+        Assert.assertEquals(limit, elements.size());
+        Assert.assertTrue(threads.size() > 1);
+    }
+
+    @Test(timeout = 5000)
+    public void testParallelBatchProvider() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final int limit = 1000;
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .batchProvider(batch -> {
+                    for (int i = 0, n; i < 16 && (n = atomicInteger.incrementAndGet()) <= limit; i++) {
+                        batch.add(n);
+                    }
+                })
+                .parallel(true)
+                .parallelism(3)
+                .build().get();
+        Assert.assertEquals(IntStream.rangeClosed(1, limit).sum(), source.mapToInt(Integer::intValue).sum());
+    }
+
+    /**
+     * A stream that isn't parallel shouldn't be split, as the provider may not be thread-safe.
+     */
+    @Test
+    public void testNotSplit() {
+        final Spliterator<Integer> spliterator = StreamSource.<Integer>builder()
+                .provider(() -> 1)
+                .parallelism(4)
+                .build().get().spliterator();
+        Assert.assertNull(spliterator.trySplit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        StreamSource.<Integer>builder().provider(() -> 1).parallel(true).parallelism(0).build();
+    }
+
+    /**
+     * The elements should be fetched by the fetchers, ahead of the stream, and every element should be consumed exactly once.
+     */
+    @Test(timeout = 5000)
+    public void testReadAhead() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final int limit = 1000;
+        final Set<String> fetchers = ConcurrentHashMap.newKeySet();
+        final Set<Integer> elements = ConcurrentHashMap.newKeySet();
+        try (Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(() -> {
+                    fetchers.add(Thread.currentThread().getName());
+                    return atomicInteger.incrementAndGet();
+                })
+                .endOfStream(n -> n > limit)
+                .readAhead(16)
+                .fetchers(2)
+                .build().get()) {
+            source.forEach(n -> Assert.assertTrue(elements.add(n)));
+        }
+        Assert.assertEquals(IntStream.rangeClosed(1, limit).boxed().collect(Collectors.toSet()), elements);
+        Assert.assertFalse(fetchers.contains(Thread.currentThread().getName()));
+        fetchers.forEach(name -> Assert.assertTrue(name.startsWith("stream-source-fetcher-")));
+    }
+
+    /**
+     * Every part of a parallel stream should end, once the elements read ahead are consumed.
+     */
+    @Test(timeout = 5000)
+    public void testReadAheadParallel() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final int limit = 1000;
+        final Set<Integer> elements = ConcurrentHashMap.newKeySet();
+        try (Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(atomicInteger::incrementAndGet)
+                .endOfStream(n -> n > limit)
+                .readAhead(16)
+                .parallel(true)
+                .parallelism(4)
+                .build().get()) {
+            Assert.assertTrue(source.isParallel());
+            source.forEach(n -> Assert.assertTrue(elements.add(n)));
+        }
+        Assert.assertEquals(IntStream.rangeClosed(1, limit).boxed().collect(Collectors.toSet()), elements);
+    }
+
+    @Test(timeout = 5000)
+    public void testReadAheadBatchProvider() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final int limit = 100;
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .batchProvider(batch -> IntStream.range(0, 8).forEach(i -> batch.add(atomicInteger.incrementAndGet())))
+                .doWhile(() -> atomicInteger.get() < limit)
+                .readAhead(4)
+                .build().get();
+        Assert.assertEquals(IntStream.rangeClosed(1, 104).boxed().collect(Collectors.toList()), source.collect(Collectors.toList()));
+    }
+
+    /**
+     * The failure of a fetch should be thrown by the stream, after the elements fetched before it.
+     */
+    @Test(timeout = 5000)
+    public void testReadAheadFailure() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final List<Integer> elements = new ArrayList<>();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(() -> {
+                    if (atomicInteger.get() == 10) {
+                        throw new IllegalStateException("fetch failed");
+                    }
+                    return atomicInteger.incrementAndGet();
+                })
+                .readAhead(4)
+                .build().get();
+        try {
+            source.forEach(elements::add);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("fetch failed", e.getMessage());
+        }
+        Assert.assertEquals(IntStream.rangeClosed(1, 10).boxed().collect(Collectors.toList()), elements);
+    }
+
+    /**
+     * The fetchers should stop, upon closing a stream that's short-circuited.
+     */
+    @Test(timeout = 5000)
+    public void testReadAheadClose() throws InterruptedException {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        try (Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(atomicInteger::incrementAndGet)
+                .readAhead(4)
+                .build().get()) {
+            Assert.assertEquals(Arrays.asList(1, 2, 3), source.limit(3).collect(Collectors.toList()));
+        }
+        TimeUnit.MILLISECONDS.sleep(300);
+        final int fetched = atomicInteger.get();
+        TimeUnit.MILLISECONDS.sleep(300);
+        Assert.assertEquals(fetched, atomicInteger.get());
+    }
+
+    /**
+     * Every get() should read ahead for it's own stream, so the source can be streamed again after a stream ends and is closed.
+     */
+    @Test(timeout = 5000)
+    public void testReadAheadStreamAgain() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final StreamSource<Integer> source = StreamSource.<Integer>builder()
+                .provider(atomicInteger::incrementAndGet)
+                .endOfStream(n -> n % 5 == 0)
+                .readAhead(16)
+                .build();
+        try (Stream<Integer> stream = source.get()) {
+            Assert.assertEquals(Arrays.asList(1, 2, 3, 4), stream.collect(Collectors.toList()));
+        }
+        try (Stream<Integer> stream = source.get()) {
+            Assert.assertEquals(Arrays.asList(6, 7, 8, 9), stream.collect(Collectors.toList()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFetchers() {
+        StreamSource.<Integer>builder().provider(() -> 1).readAhead(1).fetchers(0).build();
+    }
+
+    /**
+     * The requests should be outstanding concurrently, while their results are streamed in the order of the requests.
+     */
+    @Test(timeout = 5000)
+    public void testAsyncProvider() {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicInteger maxOutstanding = new AtomicInteger();
+        try {
+            final Stream<Integer> source = StreamSource.<Integer>builder()
+                    .asyncProvider(() -> {
+                        final int request = requests.getAndIncrement();
+                        if (request == 200) {
+                            return null;
+                        }
+                        maxOutstanding.accumulateAndGet(outstanding.incrementAndGet(), Math::max);
+                        return CompletableFuture.supplyAsync(() -> {
+                            // the earlier requests complete later.
+                            sleep(request % 4 == 0 ? 2 : 0);
+                            outstanding.decrementAndGet();
+                            return request;
+                        }, executor);
+                    })
+                    .maxOutstanding(8)
+                    .build().get();
+            Assert.assertEquals(IntStream.range(0, 200).boxed().collect(Collectors.toList()), source.collect(Collectors.toList()));
+            Assert.assertTrue(maxOutstanding.get() > 1);
+            Assert.assertTrue(maxOutstanding.get() <= 8);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testAsyncProviderUnordered() {
+        final AtomicInteger requests = new AtomicInteger();
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .asyncProvider(() -> {
+                    final CompletableFuture<Integer> future = new CompletableFuture<>();
+                    futures.add(future);
+                    if (requests.incrementAndGet() == 4) {
+                        // the requests complete in the reverse order.
+                        new Thread(() -> {
+                            sleep(100);
+                            for (int i = futures.size() - 1; i >= 0; i--) {
+                                futures.get(i).complete(i);
+                            }
+                        }).start();
+                    }
+                    return future;
+                })
+                .doWhile(() -> requests.get() < 4)
+                .maxOutstanding(4)
+                .ordered(false)
+                .build().get();
+        Assert.assertEquals(Arrays.asList(3, 2, 1, 0), source.collect(Collectors.toList()));
+    }
+
+    @Test(timeout = 5000)
+    public void testAsyncProviderFailure() {
+        final AtomicInteger requests = new AtomicInteger();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .asyncProvider(() -> {
+                    final int request = requests.getAndIncrement();
+                    final CompletableFuture<Integer> future = new CompletableFuture<>();
+                    if (request == 3) {
+                        future.completeExceptionally(new IllegalStateException("request failed"));
+                    } else {
+                        future.complete(request);
+                    }
+                    return future;
+                })
+                .build().get();
+        final List<Integer> results = new ArrayList<>();
+        try {
+            source.forEach(results::add);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("request failed", e.getMessage());
+        }
+        Assert.assertEquals(Arrays.asList(0, 1, 2), results);
+    }
+
+    /**
+     * The stream should stop waiting for an outstanding request, once it's closed.
+     */
+    @Test(timeout = 5000)
+    public void testAsyncProviderClose() throws InterruptedException {
+        final StreamSource<Integer> source = StreamSource.<Integer>builder()
+                .asyncProvider(() -> (CompletionStage<Integer>) new CompletableFuture<Integer>())
+                .build();
+        final Thread closer = new Thread(() -> {
+            sleep(200);
+            source.close();
+        });
+        closer.start();
+        Assert.assertEquals(0, source.get().count());
+        closer.join();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxOutstanding() {
+        StreamSource.<Integer>builder().asyncProvider(() -> CompletableFuture.completedFuture(1)).maxOutstanding(0).build();
+    }
+
+    /**
+     * The elements after the burst should be paced at the rate.
+     */
+    @Test(timeout = 5000)
+    public void testRateLimit() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final long start = System.nanoTime();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(atomicInteger::incrementAndGet)
+                .endOfStream(n -> n > 40)
+                .rateLimit(100)
+                .burst(10)
+                .build().get();
+        Assert.assertEquals(40, source.count());
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue(String.valueOf(elapsedMillis), elapsedMillis >= 250);
+    }
+
+    @Test(timeout = 5000)
+    public void testBurst() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final long start = System.nanoTime();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(atomicInteger::incrementAndGet)
+                .rateLimit(0.1)
+                .burst(5)
+                .build().get();
+        Assert.assertEquals(5, source.limit(5).count());
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+
+    @Test(timeout = 5000)
+    public void testMaxDuration() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final long start = System.nanoTime();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(atomicInteger::incrementAndGet)
+                .maxDuration(Duration.ofMillis(200))
+                .build().get();
+        final long count = source.count();
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+        Assert.assertEquals(atomicInteger.get(), count);
+    }
+
+    /**
+     * The max duration should end a stream of batches, pulled a batch at a time by a terminal operation like forEach.
+     */
+    @Test(timeout = 5000)
+    public void testMaxDurationBatchProvider() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final long start = System.nanoTime();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .batchProvider(batch -> batch.add(atomicInteger.incrementAndGet()))
+                .maxDuration(Duration.ofMillis(200))
+                .build().get();
+        final AtomicInteger count = new AtomicInteger();
+        source.forEach(n -> count.incrementAndGet());
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+        Assert.assertEquals(atomicInteger.get(), count.get());
+    }
+
+    /**
+     * The stream should end while waiting for the next element, once the max duration elapses.
+     */
+    @Test(timeout = 5000)
+    public void testMaxDurationWhileWaiting() {
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(() -> null)
+                .waitStrategy(WaitStrategy.DEFAULT)
+                .maxDuration(Duration.ofMillis(200))
+                .build().get();
+        Assert.assertEquals(0, source.count());
+    }
+
+    @Test(timeout = 5000)
+    public void testIdleTimeout() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(() -> atomicInteger.get() < 10 ? atomicInteger.incrementAndGet() : null)
+                .waitStrategy(WaitStrategy.DEFAULT)
+                .idleTimeout(Duration.ofMillis(200))
+                .build().get();
+        Assert.assertEquals(10, source.count());
+    }
+
+    /**
+     * The processing of an element by a consumer slower than the idle timeout isn't idle time of the source.
+     */
+    @Test(timeout = 5000)
+    public void testIdleTimeoutSlowConsumer() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(atomicInteger::incrementAndGet)
+                .endOfStream(n -> n > 5)
+                .idleTimeout(Duration.ofMillis(100))
+                .build().get();
+        Assert.assertEquals(5, source.peek(n -> sleep(200)).count());
+    }
+
+    @Test(timeout = 5000)
+    public void testIdleTimeoutSlowConsumerWithReadAhead() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(atomicInteger::incrementAndGet)
+                .endOfStream(n -> n > 5)
+                .readAhead(2)
+                .idleTimeout(Duration.ofMillis(100))
+                .build().get();
+        Assert.assertEquals(5, source.peek(n -> sleep(200)).count());
+    }
+
+    /**
+     * The wait for a rate limit slower than the idle timeout isn't idle time of the source.
+     */
+    @Test(timeout = 5000)
+    public void testIdleTimeoutRateLimit() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(atomicInteger::incrementAndGet)
+                .endOfStream(n -> n > 4)
+                .rateLimit(5)
+                .idleTimeout(Duration.ofMillis(100))
+                .build().get();
+        Assert.assertEquals(4, source.count());
+    }
+
+    @Test(timeout = 5000)
+    public void testIdleTimeoutWithReadAhead() {
+        final AtomicInteger atomicInteger = new AtomicInteger();
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+                .provider(() -> atomicInteger.get() < 10 ? atomicInteger.incrementAndGet() : null)
+                .waitStrategy(WaitStrategy.DEFAULT)
+                .readAhead(4)
+                .idleTimeout(Duration.ofMillis(200))
+                .build().get();
+        Assert.assertEquals(IntStream.rangeClosed(1, 10).sum(), source.mapToInt(Integer::intValue).sum());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRateLimit() {
+        StreamSource.<Integer>builder().provider(() -> 1).rateLimit(-1).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBurst() {
+        StreamSource.<Integer>builder().provider(() -> 1).rateLimit(1).burst(0).build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNoProvider() {
+        StreamSource.<Integer>builder().build();
+    }
 }
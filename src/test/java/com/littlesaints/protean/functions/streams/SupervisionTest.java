@@ -0,0 +1,229 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import com.littlesaints.protean.functions.trial.Strategy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class SupervisionTest {
+
+    private static final Strategy FAST = Strategy.builder().maxTriesWithYield(2).maxTriesWithDelay(1)
+        .delayBetweenTriesInMillis(1).delayThresholdInMillis(1).build();
+
+    @Test(timeout = 5000)
+    public void testRestartBlockingQueue() throws InterruptedException {
+        testRestart(ForkJoin.newInstance());
+    }
+
+    @Test(timeout = 5000)
+    public void testRestartRingBuffer() throws InterruptedException {
+        testRestart(ForkJoin.ofRingBuffer(128));
+    }
+
+    @Test(timeout = 5000)
+    public void testRestartBroadcast() throws InterruptedException {
+        testRestart(ForkJoin.broadcast(128));
+    }
+
+    /**
+     * The restarted processor should process every input after the failing one, including the rest of it's batch, in order.
+     */
+    private void testRestart(ForkJoin<Integer, ?> forkJoin) throws InterruptedException {
+        final List<Integer> processed = new ArrayList<>();
+        final List<Supervision.Failure<Integer>> restarts = new CopyOnWriteArrayList<>();
+        final AtomicBoolean hasFailed = new AtomicBoolean();
+        forkJoin.supervision(Supervision.restart(FAST, restarts::add))
+            .fork(i -> i % 2 == 0, s -> s.forEach(i -> {
+                if (i == 50 && hasFailed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("failed " + i);
+                }
+                processed.add(i);
+            }));
+        IntStream.range(0, 100).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(IntStream.range(0, 100).filter(i -> i % 2 == 0 && i != 50).boxed().collect(Collectors.toList()), processed);
+        Assert.assertEquals(1, restarts.size());
+        Assert.assertEquals(50, restarts.get(0).getInput().intValue());
+        Assert.assertEquals(1, restarts.get(0).getAttempt());
+        Assert.assertEquals("failed 50", restarts.get(0).getCause().getMessage());
+        Assert.assertEquals(forkJoin.getName() + "#0", restarts.get(0).getForkId());
+    }
+
+    @Test(timeout = 5000)
+    public void testDeadLetter() throws InterruptedException {
+        final List<Integer> deadLetters = new CopyOnWriteArrayList<>();
+        final List<Integer> processed = new ArrayList<>();
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>ofRingBuffer(16)
+            .supervision(Supervision.deadLetter(failure -> deadLetters.add(failure.getInput())))
+            .fork(s -> s.forEach(i -> {
+                if (i % 10 == 0) {
+                    throw new IllegalArgumentException();
+                }
+                processed.add(i);
+            }));
+        IntStream.range(0, 100).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(IntStream.range(0, 10).map(i -> i * 10).boxed().collect(Collectors.toList()), deadLetters);
+        Assert.assertEquals(90, processed.size());
+    }
+
+    @Test(timeout = 5000)
+    public void testDeadLetterWorkers() throws InterruptedException {
+        final LongAdder deadLetters = new LongAdder();
+        final LongAdder processed = new LongAdder();
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance()
+            .supervision(Supervision.deadLetter(failure -> deadLetters.increment()))
+            .forkWorkers(3, s -> s.forEach(i -> {
+                if (i % 3 == 0) {
+                    throw new IllegalArgumentException();
+                }
+                processed.increment();
+            }));
+        IntStream.range(0, 99).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(33, deadLetters.intValue());
+        Assert.assertEquals(66, processed.intValue());
+    }
+
+    /**
+     * Once the restarts are exhausted by consecutive failures, the fork should be removed, while the other forks keep running.
+     */
+    @Test(timeout = 5000)
+    public void testRestartsExhausted() throws InterruptedException {
+        final List<Integer> attempts = new CopyOnWriteArrayList<>();
+        final CountDownLatch removed = new CountDownLatch(1);
+        final LongAdder others = new LongAdder();
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance().recordMetrics()
+            .supervision(Supervision.<Integer>builder().restartStrategy(FAST)
+                .onRestart(failure -> attempts.add(failure.getAttempt()))
+                .onRemove(failure -> {
+                    attempts.add(failure.getAttempt());
+                    removed.countDown();
+                })
+                .build())
+            .fork(s -> s.forEach(i -> {
+                throw new IllegalStateException();
+            }))
+            .fork(s -> s.forEach(i -> others.increment()));
+        IntStream.range(0, 10).boxed().forEach(forkJoin);
+        removed.await();
+        Assert.assertEquals(Collections.singleton(forkJoin.getName() + "#1"), forkJoin.metrics().keySet());
+        IntStream.range(0, 10).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(java.util.Arrays.asList(1, 2, 3, 4), attempts);
+        Assert.assertEquals(20, others.intValue());
+    }
+
+    /**
+     * The restarts should back off like the re-attempts of a trial of the strategy.
+     */
+    @Test(timeout = 5000)
+    public void testRestartBackoff() throws InterruptedException {
+        final CountDownLatch removed = new CountDownLatch(1);
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>newInstance()
+            .supervision(Supervision.<Integer>builder()
+                .restartStrategy(Strategy.builder().maxTriesWithYield(0).maxTriesWithDelay(2)
+                    .delayBetweenTriesInMillis(100).delayThresholdInMillis(100).build())
+                .onRemove(failure -> removed.countDown())
+                .build())
+            .fork(s -> s.forEach(i -> {
+                throw new IllegalStateException();
+            }));
+        final long start = System.nanoTime();
+        IntStream.range(0, 10).boxed().forEach(forkJoin);
+        removed.await();
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testRemove() throws InterruptedException {
+        final CountDownLatch removed = new CountDownLatch(1);
+        final LongAdder processed = new LongAdder();
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>ofRingBuffer(16)
+            .supervision(Supervision.remove(failure -> removed.countDown()))
+            .fork(s -> s.forEach(i -> {
+                if (i == 5) {
+                    throw new IllegalStateException();
+                }
+                processed.increment();
+            }));
+        IntStream.range(0, 10).boxed().forEach(forkJoin);
+        removed.await();
+        // the inputs aren't routed to the removed fork, so the producer isn't blocked by it's full exchange.
+        IntStream.range(0, 100).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(5, processed.intValue());
+    }
+
+    @Test(timeout = 5000)
+    public void testRemovePartition() throws InterruptedException {
+        testRemovePartition((forkJoin, processor) -> forkJoin.forkPartitions(2, i -> i % 2, processor));
+    }
+
+    @Test(timeout = 5000)
+    public void testRemoveParallelForkPartition() throws InterruptedException {
+        testRemovePartition((forkJoin, processor) -> forkJoin.fork(i -> true, processor, 2, i -> i % 2));
+    }
+
+    /**
+     * The inputs of a removed partition should be discarded, while the keys of the other partitions are still routed to them.
+     */
+    private void testRemovePartition(BiConsumer<ForkJoin<Integer, ?>, Consumer<Stream<Integer>>> partitioning)
+        throws InterruptedException {
+        final CountDownLatch removed = new CountDownLatch(1);
+        final LongAdder processed = new LongAdder();
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>ofRingBuffer(16)
+            .supervision(Supervision.remove(failure -> removed.countDown()));
+        partitioning.accept(forkJoin, s -> s.forEach(i -> {
+            if (i % 2 != 0) {
+                throw new IllegalStateException();
+            }
+            processed.increment();
+        }));
+        IntStream.range(0, 10).boxed().forEach(forkJoin);
+        removed.await();
+        // the producer isn't blocked by the full exchange of the removed partition.
+        IntStream.range(0, 100).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        Assert.assertEquals(5 + 50, processed.intValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidStrategy() {
+        Supervision.restart(Strategy.builder().delayBetweenTriesInMillis(-1).build());
+    }
+}
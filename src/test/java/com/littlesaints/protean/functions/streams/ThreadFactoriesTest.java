@@ -0,0 +1,98 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+public class ThreadFactoriesTest {
+
+    @Test
+    public void testPlatform() {
+        final Thread thread = ThreadFactories.platform("test-", true).newThread(() -> {});
+        Assert.assertEquals("test-0", thread.getName());
+        Assert.assertTrue(thread.isDaemon());
+    }
+
+    @Test
+    public void testVirtual() {
+        final Thread thread = ThreadFactories.virtual("test-").newThread(() -> {});
+        Assert.assertEquals("test-0", thread.getName());
+        if (!ThreadFactories.isVirtualThreadSupported()) {
+            Assert.assertTrue(thread.isDaemon());
+        }
+    }
+
+    /**
+     * Virtual threads should run on a thread-per-task executor, instead of a pool.
+     */
+    @Test
+    public void testNewExecutor() {
+        final ExecutorService virtual = ThreadFactories.newExecutor(ThreadFactories.virtual("test-"));
+        final ExecutorService platform = ThreadFactories.newExecutor(ThreadFactories.platform("test-", true));
+        try {
+            Assert.assertNotEquals(ThreadFactories.isVirtualThreadSupported(), virtual instanceof ThreadPoolExecutor);
+            Assert.assertTrue(platform instanceof ThreadPoolExecutor);
+        } finally {
+            virtual.shutdownNow();
+            platform.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testForkJoinWithThreadFactory() throws InterruptedException {
+        final ThreadFactory threadFactory = ThreadFactories.virtual("fork-");
+        final AtomicReference<String> threadName = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(10);
+        try (ForkJoin<Integer, BlockingQueue<Integer>> forkJoin = ForkJoin.<Integer>newInstance(threadFactory)
+            .fork(s -> s.forEach(i -> {
+                threadName.set(Thread.currentThread().getName());
+                latch.countDown();
+            }))) {
+            IntStream.range(0, 10).boxed().forEach(forkJoin);
+            latch.await();
+        }
+        Assert.assertTrue(threadName.get().startsWith("fork-"));
+    }
+
+    @Test(timeout = 5000)
+    public void testForkJoinWithExecutor() throws InterruptedException {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final CountDownLatch latch = new CountDownLatch(10);
+        try (ForkJoin<Integer, BlockingQueue<Integer>> forkJoin = ForkJoin.<Integer>newInstance(executor)
+            .fork(s -> s.forEach(i -> latch.countDown()))) {
+            IntStream.range(0, 10).boxed().forEach(forkJoin);
+            latch.await();
+        }
+        Assert.assertFalse(executor.isShutdown());
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucketTest {
+
+    @Test(timeout = 5000)
+    public void testBurst() {
+        final TokenBucket tokenBucket = new TokenBucket(1, 3);
+        final long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(tokenBucket.acquire(() -> false));
+        }
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+    }
+
+    @Test(timeout = 5000)
+    public void testRate() {
+        final TokenBucket tokenBucket = new TokenBucket(50, 1);
+        final long start = System.nanoTime();
+        for (int i = 0; i < 11; i++) {
+            Assert.assertTrue(tokenBucket.acquire(() -> false));
+        }
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 190);
+    }
+
+    /**
+     * The wait for a token should be given up, once stopped.
+     */
+    @Test(timeout = 5000)
+    public void testStopped() {
+        final TokenBucket tokenBucket = new TokenBucket(0.01, 1);
+        Assert.assertTrue(tokenBucket.acquire(() -> true));
+        Assert.assertFalse(tokenBucket.acquire(() -> true));
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *                     functional-streams
+ *              Copyright (C) 2018 Varun Anand
+ *
+ * This file is part of functional-streams.
+ *
+ * functional-streams is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * functional-streams is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.littlesaints.protean.functions.streams;
+
+import com.littlesaints.protean.functions.trial.Strategy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class WaitStrategyTest {
+
+    @Test
+    public void testBusySpin() {
+        final WaitStrategy waitStrategy = WaitStrategy.busySpin();
+        Assert.assertEquals(0, waitStrategy.idle(0));
+        Assert.assertEquals(7, waitStrategy.idle(7));
+    }
+
+    @Test
+    public void testSpinThenYield() {
+        final WaitStrategy waitStrategy = WaitStrategy.spinThenYield(2);
+        Assert.assertEquals(1, waitStrategy.idle(0));
+        Assert.assertEquals(2, waitStrategy.idle(1));
+        Assert.assertEquals(2, waitStrategy.idle(2));
+    }
+
+    @Test
+    public void testSpinYieldPark() {
+        final WaitStrategy waitStrategy = WaitStrategy.spinYieldPark(1, 1, 1, 4);
+        Assert.assertEquals(1, waitStrategy.idle(0));
+        Assert.assertEquals(2, waitStrategy.idle(1));
+        Assert.assertEquals(3, waitStrategy.idle(2));
+        Assert.assertEquals(4, waitStrategy.idle(3));
+        // the park duration has reached the maximum.
+        Assert.assertEquals(4, waitStrategy.idle(4));
+        Assert.assertEquals(Integer.MAX_VALUE, waitStrategy.idle(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testOfStrategy() {
+        final WaitStrategy waitStrategy = WaitStrategy.of(Strategy.builder()
+            .maxTriesWithYield(1)
+            .delayBetweenTriesInMillis(1)
+            .delayThresholdInMillis(2)
+            .triesUntilDelayIncrease(1)
+            .delayIncreaseMultiplier(2)
+            .build());
+        Assert.assertEquals(1, waitStrategy.idle(0));
+        Assert.assertEquals(2, waitStrategy.idle(1));
+        Assert.assertEquals(2, waitStrategy.idle(2));
+    }
+
+    @Test
+    public void testBackoff() {
+        Assert.assertEquals(1, WaitStrategies.backoff(1, 2, 0, 100));
+        Assert.assertEquals(8, WaitStrategies.backoff(1, 2, 3, 100));
+        Assert.assertEquals(100, WaitStrategies.backoff(1, 2, 62, 100));
+        Assert.assertEquals(Long.MAX_VALUE, WaitStrategies.backoff(3, 2, Integer.MAX_VALUE, Long.MAX_VALUE));
+        Assert.assertEquals(5, WaitStrategies.backoff(5, 1, 10, 100));
+    }
+
+    @Test
+    public void testBlocking() {
+        Assert.assertSame(WaitStrategy.blocking(), WaitStrategy.blocking());
+        Assert.assertTrue(WaitStrategies.isBlocking(WaitStrategy.blocking()));
+        Assert.assertTrue(WaitStrategies.isBlocking(null));
+        Assert.assertFalse(WaitStrategies.isBlocking(WaitStrategy.DEFAULT));
+        // by itself, it's a bounded park.
+        Assert.assertEquals(1, WaitStrategy.blocking().idle(0));
+        Assert.assertEquals(10, WaitStrategy.blocking().idle(10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSpinTries() {
+        WaitStrategy.spinThenYield(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParkNanos() {
+        WaitStrategy.spinYieldPark(1, 1, 10, 1);
+    }
+
+    @Test(timeout = 5000)
+    public void testStreamSource() {
+        final AtomicInteger polls = new AtomicInteger();
+        final int limit = 100;
+        final LongAdder count = new LongAdder();
+        // every other poll finds nothing.
+        final Stream<Integer> source = StreamSource.<Integer>builder()
+            .provider(() -> polls.incrementAndGet() % 2 == 0 ? null : polls.get())
+            .waitStrategy(WaitStrategy.busySpin())
+            .endOfStream(n -> n > 2 * limit)
+            .build().get();
+        source.forEach(n -> count.increment());
+        Assert.assertEquals(limit, count.intValue());
+    }
+
+    @Test(timeout = 5000)
+    public void testForkJoin() throws InterruptedException {
+        testForkJoin(ForkJoin.<Integer>newInstance().waitStrategy(WaitStrategy.busySpin()));
+        testForkJoin(ForkJoin.<Integer>of(() -> new ArrayBlockingQueue<>(8)).waitStrategy(WaitStrategy.spinThenYield(10)));
+        testForkJoin(ForkJoin.<Integer>ofRingBuffer(8).waitStrategy(WaitStrategy.spinYieldPark(10, 10, 1000, 100_000)));
+        testForkJoin(ForkJoin.<Integer>ofRingBuffer(8).waitStrategy(WaitStrategy.blocking()));
+    }
+
+    @Test(timeout = 5000)
+    public void testBroadcast() throws InterruptedException {
+        final ForkJoin<Integer, ?> forkJoin = ForkJoin.<Integer>broadcast(8).waitStrategy(WaitStrategy.of(Strategy.builder()
+            .maxTriesWithYield(10).delayBetweenTriesInMillis(1).delayThresholdInMillis(4).build()));
+        final LongAdder sum = forkAndJoin(forkJoin);
+        Assert.assertEquals(IntStream.range(0, 100).sum() + IntStream.range(0, 100).filter(i -> i % 2 == 0).sum(), sum.intValue());
+    }
+
+    private void testForkJoin(ForkJoin<Integer, ?> forkJoin) throws InterruptedException {
+        final LongAdder workers = new LongAdder();
+        forkJoin.forkWorkers(2, s -> s.forEach(i -> workers.increment()));
+        final LongAdder sum = forkAndJoin(forkJoin);
+        Assert.assertEquals(IntStream.range(0, 100).sum() + IntStream.range(0, 100).filter(i -> i % 2 == 0).sum(), sum.intValue());
+        Assert.assertEquals(100, workers.intValue());
+    }
+
+    private LongAdder forkAndJoin(ForkJoin<Integer, ?> forkJoin) throws InterruptedException {
+        final LongAdder sum = new LongAdder();
+        forkJoin
+            .fork(s -> s.forEach(sum::add))
+            .fork(i -> i % 2 == 0, s -> s.forEach(sum::add));
+        IntStream.range(0, 100).boxed().forEach(forkJoin);
+        Assert.assertTrue(forkJoin.closeAndAwait(5, TimeUnit.SECONDS));
+        return sum;
+    }
+
+    @Test(timeout = 5000)
+    public void testRingBuffer() throws InterruptedException {
+        final RingBuffer<Integer> ringBuffer = RingBuffer.of(2, WaitStrategy.busySpin());
+        final Thread producer = new Thread(() -> IntStream.range(0, 100).forEach(ringBuffer::put));
+        producer.start();
+        final LongAdder sum = new LongAdder();
+        IntStream.range(0, 100).forEach(i -> sum.add(ringBuffer.take()));
+        producer.join();
+        Assert.assertEquals(IntStream.range(0, 100).sum(), sum.intValue());
+    }
+}